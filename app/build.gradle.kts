@@ -7,6 +7,9 @@ plugins {
     application
 
     id("com.github.johnrengelman.shadow") version "8.1.1"
+
+    // Microbenchmarks under src/jmh/java, run with ./gradlew :app:jmh
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 repositories {
@@ -43,6 +46,16 @@ java {
     }
 }
 
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    // Narrow a run down with e.g. ./gradlew :app:jmh -PjmhIncludes=ConnectionSetup
+    if (project.hasProperty("jmhIncludes")) {
+        includes = listOf(project.property("jmhIncludes").toString())
+    }
+}
+
 application {
     // Define the main class for the application.
     mainClass = "com.webserver.core.Server"
@@ -0,0 +1,47 @@
+package com.webserver.core;
+
+import com.webserver.util.ConfigLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-connection setup cost: building the whole runtime for every accepted
+ * socket (what ConnectionHandler used to do) against handing each connection
+ * the shared ServerContext.
+ *
+ * The per-connection variant still leaves out the two network round trips the
+ * old constructor paid on top (DB.listAllApps() and the Azure container check),
+ * so the real difference in production is larger than what this reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectionSetupBenchmark {
+
+    private ServerContext shared;
+    private Socket socket;
+
+    @Setup
+    public void setup() {
+        shared = new ServerContext(new ConfigLoader(), null);
+        socket = new Socket();
+    }
+
+    @Benchmark
+    public ConnectionHandler contextPerConnection() {
+        return new ConnectionHandler(socket, new ServerContext(new ConfigLoader(), null));
+    }
+
+    @Benchmark
+    public ConnectionHandler sharedContext() {
+        return new ConnectionHandler(socket, shared);
+    }
+}
@@ -0,0 +1,139 @@
+package com.webserver.core;
+
+import com.webserver.model.HttpResponse;
+import com.webserver.util.ConfigLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test for a 4-asset tenant page (index.html, script.js, styles.css,
+ * logo.png) served by real ConnectionHandlers over loopback.
+ *
+ * "oneConnectionPerAsset" is the old behaviour (every asset pays a TCP
+ * handshake); "keepAlive" fetches all four over one persistent connection.
+ * Scores are requests/sec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class KeepAliveBenchmark {
+
+    private static final String[] ASSETS = {
+            "/bench/index.html", "/bench/script.js", "/bench/styles.css", "/bench/logo.png"
+    };
+
+    private ServerSocket serverSocket;
+    private ExecutorService pool;
+    private int port;
+
+    @Setup
+    public void setup() throws IOException {
+        ServerContext context = new ServerContext(new ConfigLoader(), null);
+        for (String asset : ASSETS) {
+            byte[] body = new byte[4096];
+            context.getProcessor().addRoute(asset, req -> new HttpResponse.Builder()
+                    .setStatusCode(200)
+                    .addHeader("Content-Type", "application/octet-stream")
+                    .setRawBody(body)
+                    .build());
+        }
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        port = serverSocket.getLocalPort();
+        pool = Executors.newFixedThreadPool(16);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    pool.execute(new ConnectionHandler(socket, context));
+                }
+            } catch (IOException closed) {
+                // benchmark finished
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serverSocket.close();
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public int oneConnectionPerAsset() throws IOException {
+        int bytes = 0;
+        for (String asset : ASSETS) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                bytes += fetch(socket.getOutputStream(), new BufferedInputStream(socket.getInputStream()), asset, true);
+            }
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public int keepAlive() throws IOException {
+        int bytes = 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            for (int i = 0; i < ASSETS.length; i++) {
+                bytes += fetch(out, in, ASSETS[i], i == ASSETS.length - 1);
+            }
+        }
+        return bytes;
+    }
+
+    private static int fetch(OutputStream out, InputStream in, String path, boolean close) throws IOException {
+        String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n"
+                + (close ? "Connection: close\r\n" : "") + "\r\n";
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        // headers up to the blank line, then Content-Length bytes of body
+        StringBuilder line = new StringBuilder();
+        int contentLength = 0;
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                throw new IOException("Connection closed mid-response");
+            }
+            if (c == '\n') {
+                String header = line.toString().trim();
+                if (header.isEmpty()) {
+                    break;
+                }
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+                line.setLength(0);
+            } else {
+                line.append((char) c);
+            }
+        }
+        return in.readNBytes(contentLength).length;
+    }
+}
@@ -0,0 +1,129 @@
+package com.webserver.core;
+
+import com.webserver.model.HttpResponse;
+import com.webserver.util.ConfigLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 5,000 concurrent slow clients against the blocking engine, once per
+ * server.executor mode.
+ *
+ * Each client sends its request line, stalls for 50 ms before sending the
+ * rest of its headers, and the route then blocks for 10 ms (a stand-in for a
+ * JDBC or Azure call). A platform pool of max_threads=10 holds a thread for
+ * the whole stall; virtual threads just park. Score is the wall time to
+ * serve all clients once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class SlowClientBenchmark {
+
+    private static final int CLIENTS = 5000;
+    private static final long CLIENT_STALL_MS = 50;
+    private static final long HANDLER_BLOCK_MS = 10;
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    private ServerSocket serverSocket;
+    private ExecutorService pool;
+    private ExecutorService clients;
+    private int port;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ServerContext context = new ServerContext(new ConfigLoader(), null);
+        context.getProcessor().addRoute("/slow", req -> {
+            try {
+                Thread.sleep(HANDLER_BLOCK_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new HttpResponse.Builder().setStatusCode(200).setBody("ok").build();
+        });
+
+        // same choice Server makes for server.executor
+        pool = "virtual".equals(executor)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(10);
+        clients = Executors.newVirtualThreadPerTaskExecutor();
+
+        serverSocket = new ServerSocket(0, CLIENTS, InetAddress.getLoopbackAddress());
+        port = serverSocket.getLocalPort();
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    pool.execute(new ConnectionHandler(socket, context));
+                }
+            } catch (IOException closed) {
+                // benchmark finished
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        serverSocket.close();
+        pool.shutdownNow();
+        clients.shutdownNow();
+    }
+
+    @Benchmark
+    public int fiveThousandSlowClients() throws Exception {
+        List<Future<Integer>> results = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            results.add(clients.submit(this::slowClient));
+        }
+        int served = 0;
+        for (Future<Integer> result : results) {
+            served += result.get();
+        }
+        return served;
+    }
+
+    private int slowClient() throws IOException, InterruptedException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write("GET /slow HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(CLIENT_STALL_MS);
+            out.write("Host: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            return in.readAllBytes().length > 0 ? 1 : 0;
+        }
+    }
+}
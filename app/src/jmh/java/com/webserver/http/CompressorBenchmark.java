@@ -0,0 +1,89 @@
+package com.webserver.http;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.FileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serving a 100 KB JavaScript file from the webroot to a client that
+ * accepts gzip.
+ *
+ * "identity" is what was sent before: the file as it is. "perRequest" gzips
+ * the file for every response, the naive way to add compression. "cached" is
+ * RequestProcessor with a Compressor, which gzips each file version once.
+ * Run with -prof gc to compare allocation per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CompressorBenchmark {
+
+    private Path webRoot;
+    private Path file;
+    private RequestProcessor plain;
+    private RequestProcessor compressing;
+    private final HttpRequest request = new HttpRequest("GET", "/app.js",
+            Map.of("Accept-Encoding", List.of("gzip, deflate, br")), "", null);
+
+    @Setup
+    public void setup() throws IOException {
+        webRoot = Files.createTempDirectory("webroot");
+        file = webRoot.resolve("app.js");
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; script.length() < 100 * 1024; i++) {
+            script.append("function handler").append(i).append("(event) { return render(event.target, ")
+                    .append(i).append("); }\n");
+        }
+        Files.writeString(file, script);
+        plain = new RequestProcessor(new FileService(webRoot.toString()));
+        compressing = new RequestProcessor(new FileService(webRoot.toString()), null,
+                new Compressor(6, 1024, 32 << 20));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(webRoot);
+    }
+
+    @Benchmark
+    public HttpResponse identity() {
+        return plain.process(request);
+    }
+
+    @Benchmark
+    public byte[] perRequest() throws IOException {
+        HttpResponse response = plain.process(request);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(Files.readAllBytes(response.getBodyFile()));
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public HttpResponse cached() {
+        return compressing.process(request);
+    }
+}
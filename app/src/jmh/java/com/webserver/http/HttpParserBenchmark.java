@@ -0,0 +1,162 @@
+package com.webserver.http;
+
+import com.webserver.model.HttpRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a typical browser GET (15 headers, ~900 bytes) out of a read buffer,
+ * then reading the two headers the server itself looks at.
+ *
+ * "legacy" is the line-at-a-time parser this replaced: a String per line,
+ * split/substring per header and a HashMap of everything. "current" is
+ * HttpParser, which scans the block in place and decodes only what is read.
+ * Run with -prof gc to compare allocation per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HttpParserBenchmark {
+
+    private static final String REQUEST =
+            "GET /app_2002/assets/styles.css?v=3 HTTP/1.1\r\n" +
+            "Host: cloudle.example.com\r\n" +
+            "Connection: keep-alive\r\n" +
+            "sec-ch-ua: \"Chromium\";v=\"124\", \"Google Chrome\";v=\"124\", \"Not-A.Brand\";v=\"99\"\r\n" +
+            "sec-ch-ua-mobile: ?0\r\n" +
+            "sec-ch-ua-platform: \"Windows\"\r\n" +
+            "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+            "(KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36\r\n" +
+            "Accept: text/css,*/*;q=0.1\r\n" +
+            "Sec-Fetch-Site: same-origin\r\n" +
+            "Sec-Fetch-Mode: no-cors\r\n" +
+            "Sec-Fetch-Dest: style\r\n" +
+            "Referer: https://cloudle.example.com/app_2002/index.html\r\n" +
+            "Accept-Encoding: gzip, deflate, br, zstd\r\n" +
+            "Accept-Language: en-GB,en-US;q=0.9,en;q=0.8\r\n" +
+            "Cookie: session=9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08; theme=dark\r\n" +
+            "If-None-Match: \"5d41402abc4b2a76b9719d911017c592\"\r\n" +
+            "\r\n";
+
+    @Param({"heap", "direct"})
+    public String buffer;
+
+    private ByteBuffer input;
+    private final HttpParser parser = new HttpParser();
+
+    @Setup
+    public void setup() {
+        byte[] bytes = REQUEST.getBytes(StandardCharsets.US_ASCII);
+        input = "direct".equals(buffer) ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+        input.put(bytes).flip();
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) throws IOException {
+        HttpRequest request = LegacyParser.parse(input.duplicate());
+        bh.consume(request.getFirstHeader("Connection"));
+        bh.consume(request.getFirstHeader("Host"));
+    }
+
+    @Benchmark
+    public void current(Blackhole bh) throws IOException {
+        HttpRequest request = parser.tryParse(input.duplicate());
+        bh.consume(request.getFirstHeader("Connection"));
+        bh.consume(request.getFirstHeader("Host"));
+    }
+
+    /**
+     * The header parsing HttpParser did before, kept here as the baseline.
+     */
+    static final class LegacyParser {
+
+        static HttpRequest parse(ByteBuffer buffer) throws IOException {
+            int pos = buffer.position();
+            int limit = buffer.limit();
+            int lineEnd = findLineEnd(buffer, pos, limit);
+            String requestLine = decodeLine(buffer, pos, lineEnd);
+            pos = lineEnd + 1;
+
+            List<String> headerLines = new ArrayList<>();
+            while (true) {
+                lineEnd = findLineEnd(buffer, pos, limit);
+                String line = decodeLine(buffer, pos, lineEnd);
+                pos = lineEnd + 1;
+                if (line.isEmpty()) {
+                    break;
+                }
+                headerLines.add(line);
+            }
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3) {
+                throw new IOException("Malformed request line: " + requestLine);
+            }
+            HttpParser.HttpMethod method = HttpParser.HttpMethod.fromString(parts[0]);
+            Map<String, List<String>> headers = new HashMap<>();
+            for (String line : headerLines) {
+                int colonPos = line.indexOf(':');
+                if (colonPos > 0) {
+                    String hdrName = line.substring(0, colonPos).trim();
+                    String hdrValue = line.substring(colonPos + 1).trim();
+                    headers.computeIfAbsent(hdrName, k -> new ArrayList<>()).add(hdrValue);
+                }
+            }
+            int contentLength = 0;
+            for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+                if ("Content-Length".equalsIgnoreCase(e.getKey())) {
+                    contentLength = Integer.parseInt(e.getValue().get(0));
+                    break;
+                }
+            }
+            byte[] body = new byte[contentLength];
+            return new HttpRequest.Builder()
+                    .setMethod(method.toString())
+                    .setPath(parts[1])
+                    .setHttpVersion(parts[2])
+                    .setHeaders(headers)
+                    .setTextBody(new String(body, StandardCharsets.UTF_8))
+                    .setRawBody(body)
+                    .build();
+        }
+
+        private static int findLineEnd(ByteBuffer buffer, int from, int limit) {
+            for (int i = from; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static String decodeLine(ByteBuffer buffer, int start, int end) {
+            int len = end - start;
+            if (len > 0 && buffer.get(end - 1) == '\r') {
+                len--;
+            }
+            byte[] line = new byte[len];
+            buffer.get(start, line);
+            return new String(line, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.webserver.http;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.util.FileService;
+import com.webserver.util.StaticFileCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serving a 4 KB stylesheet from the webroot: RequestProcessor.process and
+ * ResponseWriter.write into a discarding stream.
+ *
+ * "uncached" is a StaticFileCache holding metadata only, as without a
+ * configured cache: every hit checks the file's attributes and the body is
+ * read from the file. "cached" holds the file's bytes and watches the
+ * webroot, so a hit touches neither the file nor its metadata.
+ * Run with -prof gc to compare allocation per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StaticFileCacheBenchmark {
+
+    private Path webRoot;
+    private Path file;
+    private StaticFileCache watched;
+    private RequestProcessor uncached;
+    private RequestProcessor cached;
+    private final ResponseWriter writer = new ResponseWriter();
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private final HttpRequest request = new HttpRequest("GET", "/site.css", Map.of(), "", null);
+
+    @Setup
+    public void setup() throws IOException {
+        webRoot = Files.createTempDirectory("webroot").toAbsolutePath().normalize();
+        file = webRoot.resolve("site.css");
+        Files.writeString(file, "body { margin: 0; padding: 0; font-family: sans-serif; }\n".repeat(70));
+        FileService fileService = new FileService(webRoot.toString());
+        uncached = new RequestProcessor(fileService);
+        watched = new StaticFileCache(fileService, 64 << 20, 1 << 20);
+        watched.watch(webRoot);
+        cached = new RequestProcessor(fileService, watched, null, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        watched.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(webRoot);
+    }
+
+    @Benchmark
+    public long uncached() throws IOException {
+        return writer.write(sink, uncached.process(request), true);
+    }
+
+    @Benchmark
+    public long cached() throws IOException {
+        return writer.write(sink, cached.process(request), true);
+    }
+}
@@ -0,0 +1,379 @@
+package com.webserver.azure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import com.webserver.util.Logger;
+import com.webserver.util.SingleFlight;
+
+/**
+ * AppFileCache - app files from blob storage, kept on local disk.
+ *
+ * App files only change when their app is uploaded again or deleted. When
+ * that goes through this server it calls invalidate(appId); when it goes
+ * through another instance, nothing tells this one. So a file is downloaded
+ * once and then served from disk with no round trip to storage, until its
+ * app is invalidated or, after revalidateMillis, a properties request finds
+ * that its ETag has changed (or that it is gone). /api/refresh drops every
+ * file (invalidateAll).
+ *
+ * A fill writes the blob to a temp file in dir and renames it into place,
+ * so a reader never sees a partial file. The name comes from (appId, path,
+ * ETag), so two versions of a file never share one. Files are kept within
+ * maxBytes, least recently used out first. A blob larger than maxEntryBytes
+ * (or of unknown size) is not copied; its entry only says to stream it from
+ * storage as before.
+ *
+ * Concurrent misses for one file are coalesced (SingleFlight): the first
+ * downloads it, the others wait up to fillWaitMillis for that download and
+ * share its entry, so a cold file that many clients want at once costs one
+ * download rather than one each.
+ *
+ * The index is in memory, so files left in dir by an earlier run are
+ * deleted when the cache is created.
+ */
+public class AppFileCache {
+
+    private static final long DEFAULT_FILL_WAIT_MILLIS = 10_000;
+
+    // what fill() and fileName() create: "2002-<32 hex digits>", "fill-<n>.tmp"
+    private static final Pattern CACHE_FILE = Pattern.compile("\\d+-\\p{XDigit}{32}|fill-\\d+\\.tmp");
+
+    private final BlobStore store;
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long revalidateNanos;
+    // the download (or revalidation) in progress for each key that is being filled
+    private final SingleFlight<String, Entry> fills;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // bumped by every invalidation, so a fill racing one does not cache an old version
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+
+    /**
+     * dir: where the files are kept; created if need be, emptied if not.
+     * maxBytes: total size of the files kept.
+     * maxEntryBytes: largest blob copied to disk.
+     */
+    public AppFileCache(BlobStore store, Path dir, long maxBytes, long maxEntryBytes) throws IOException {
+        this(store, dir, maxBytes, maxEntryBytes, DEFAULT_FILL_WAIT_MILLIS);
+    }
+
+    /** fillWaitMillis: how long a miss waits for another request's download of the same file. */
+    public AppFileCache(BlobStore store, Path dir, long maxBytes, long maxEntryBytes, long fillWaitMillis)
+            throws IOException {
+        this(store, dir, maxBytes, maxEntryBytes, fillWaitMillis, 0);
+    }
+
+    /** revalidateMillis: how long a file is served before storage is asked if it changed; 0 = never. */
+    public AppFileCache(BlobStore store, Path dir, long maxBytes, long maxEntryBytes, long fillWaitMillis,
+                        long revalidateMillis) throws IOException {
+        this.store = store;
+        this.revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+        this.fills = new SingleFlight<>(fillWaitMillis);
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        clear();
+    }
+
+    /** One app file as last downloaded. */
+    public static final class Entry {
+        private final int appId;
+        private final Path file;
+        private final AzureBlobInterface.BlobInfo info;
+        private volatile long lastUsed = System.nanoTime();
+        // when storage last said this is the current version
+        private volatile long checkedAt = System.nanoTime();
+
+        private Entry(int appId, Path file, AzureBlobInterface.BlobInfo info) {
+            this.appId = appId;
+            this.file = file;
+            this.info = info;
+        }
+
+        /** The local copy, or null if the file is to be streamed from storage. */
+        public Path file() {
+            return file;
+        }
+
+        /** Size, ETag and last-modified time of the blob the copy was made from. */
+        public AzureBlobInterface.BlobInfo info() {
+            return info;
+        }
+
+        private long size() {
+            return file != null ? info.size() : 0;
+        }
+    }
+
+    /**
+     * An app file, downloaded first if it is not on disk yet; null if
+     * storage has no such file. An entry without a file() is one to stream
+     * from storage instead. Throws IOException if the download failed, or
+     * another request's download of it took too long to wait for.
+     */
+    public Entry get(int appId, String filePath) throws IOException {
+        String key = key(appId, filePath);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.lastUsed = System.nanoTime();
+            if (fresh(entry)) {
+                hits.increment();
+                return entry;
+            }
+            return fills.run(key, () -> revalidate(key, entry, appId, filePath));
+        }
+        misses.increment();
+        return fills.run(key, () -> load(key, appId, filePath));
+    }
+
+    // Ask storage whether an entry is still the current version, and fill it
+    // again if not; run by one request per key at a time, as load() is
+    private Entry revalidate(String key, Entry entry, int appId, String filePath) throws IOException {
+        if (entries.get(key) != entry || fresh(entry)) {
+            return load(key, appId, filePath); // revalidated, refilled or dropped just before this began
+        }
+        revalidations.increment();
+        AzureBlobInterface.BlobInfo current = store.properties(appId, filePath);
+        if (current != null && current.etag() != null && current.etag().equals(entry.info.etag())) {
+            entry.checkedAt = System.nanoTime();
+            hits.increment();
+            return entry;
+        }
+        // changed or gone, e.g. uploaded again through another instance
+        if (entries.remove(key, entry)) {
+            cachedBytes.addAndGet(-entry.size());
+            deleteQuietly(entry.file);
+        }
+        misses.increment();
+        return load(key, appId, filePath);
+    }
+
+    private boolean fresh(Entry entry) {
+        return revalidateNanos <= 0 || System.nanoTime() - entry.checkedAt < revalidateNanos;
+    }
+
+    // Fill and index one file; run by one request per key at a time
+    private Entry load(String key, int appId, String filePath) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry; // filled by a download that finished just before this one began
+        }
+        long seen = generation.get();
+        Entry filled = fill(appId, filePath);
+        if (filled == null) {
+            return null;
+        }
+        if (generation.get() != seen) {
+            // the app changed while this was downloading: serve nothing from it
+            deleteQuietly(filled.file);
+            return new Entry(appId, null, filled.info);
+        }
+        Entry old = entries.put(key, filled);
+        cachedBytes.addAndGet(filled.size() - (old != null ? old.size() : 0));
+        if (old != null && old.file != null && !old.file.equals(filled.file)) {
+            deleteQuietly(old.file);
+        }
+        if (generation.get() != seen) {
+            // invalidated between the check and the put, so its sweep may have missed this entry
+            if (entries.remove(key, filled)) {
+                cachedBytes.addAndGet(-filled.size());
+                deleteQuietly(filled.file);
+            }
+            return new Entry(appId, null, filled.info);
+        }
+        evict();
+        return filled;
+    }
+
+    /** Forget every file of an app, e.g. because it was uploaded again or deleted. */
+    public void invalidate(int appId) {
+        generation.incrementAndGet();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().appId == appId && entries.remove(e.getKey(), e.getValue())) {
+                cachedBytes.addAndGet(-e.getValue().size());
+                deleteQuietly(e.getValue().file);
+            }
+        }
+    }
+
+    /** Forget every app's files, as any of them may have changed through another instance. */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (entries.remove(e.getKey(), e.getValue())) {
+                cachedBytes.addAndGet(-e.getValue().size());
+                deleteQuietly(e.getValue().file);
+            }
+        }
+    }
+
+    /** Files on disk. */
+    public int getFiles() {
+        int files = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.file != null) {
+                files++;
+            }
+        }
+        return files;
+    }
+
+    /** Bytes on disk. */
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Hits old enough to ask storage whether the file had changed. */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /** Misses that shared another request's download instead of downloading. */
+    public long getCoalesced() {
+        return fills.getCoalesced();
+    }
+
+    /** Misses that gave up waiting for another request's download. */
+    public long getFillTimeouts() {
+        return fills.getTimedOut();
+    }
+
+    /** Files being downloaded right now, e.g. "2002/index.html". */
+    public List<String> getFilling() {
+        return fills.getInFlightKeys();
+    }
+
+    // Download a blob into a temp file and rename that into place
+    private Entry fill(int appId, String filePath) throws IOException {
+        InputStream in = store.download(appId, filePath);
+        if (in == null) {
+            return null;
+        }
+        try (in) {
+            AzureBlobInterface.BlobInfo info = store.infoOf(in);
+            if (info == null || info.size() < 0 || info.size() > maxEntryBytes) {
+                return new Entry(appId, null, info);
+            }
+            Path temp = Files.createTempFile(dir, "fill-", ".tmp");
+            try {
+                long size = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                Path file = dir.resolve(fileName(appId, filePath, info.etag()));
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return new Entry(appId, file, new AzureBlobInterface.BlobInfo(size, info.etag(), info.lastModified()));
+            } catch (IOException e) {
+                deleteQuietly(temp);
+                throw e;
+            }
+        }
+    }
+
+    // Delete the least recently used files until within maxBytes
+    private void evict() {
+        if (cachedBytes.get() <= maxBytes || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, Entry>> byAge = new ArrayList<>();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getValue().file != null) {
+                    byAge.add(e);
+                }
+            }
+            byAge.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+            for (Map.Entry<String, Entry> e : byAge) {
+                if (cachedBytes.get() <= maxBytes) {
+                    break;
+                }
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    cachedBytes.addAndGet(-e.getValue().size());
+                    deleteQuietly(e.getValue().file);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Left over from an earlier run: nothing indexes them any more. Only
+    // files named as this class names them, in case dir holds anything else
+    private void clear() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (CACHE_FILE.matcher(file.getFileName().toString()).matches()) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    // A response still reading the file keeps its bytes: it holds the file open
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Logger.warn("Cannot delete cached app file " + file + ": " + e.getMessage());
+        }
+    }
+
+    // e.g. (2002, "/index.html") -> "2002/index.html"
+    private static String key(int appId, String filePath) {
+        return appId + "/" + (filePath.startsWith("/") ? filePath.substring(1) : filePath);
+    }
+
+    // e.g. "2002-3f2a...": one name per app, path and ETag, safe whatever the path holds
+    private static String fileName(int appId, String filePath, String etag) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(key(appId, filePath).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(etag).getBytes(StandardCharsets.UTF_8));
+            return appId + "-" + HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,48 +1,123 @@
 
 package com.webserver.azure;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import com.azure.core.http.HttpClient;
+import com.azure.core.util.HttpClientOptions;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
 import com.azure.storage.blob.models.BlobStorageException;
 import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.specialized.BlobInputStream;
+import com.webserver.util.ConfigLoader;
 
-public class AzureBlobInterface {
+/**
+ * Process-wide access to the tenant file container.
+ *
+ * There is one instance (see getInstance()), and the BlobServiceClient behind it
+ * is only built on first use, so requests that never touch blobs never pay for it.
+ * All requests share its HTTP pipeline and connection pool (azure.pool_size).
+ */
+public class AzureBlobInterface implements BlobStore {
 
     // private static final Dotenv dotenv = Dotenv.load();
     private static final String CONNECTION_STRING = "DefaultEndpointsProtocol=https;AccountName=cloudleuserfilestorage;AccountKey=REDACTED==;EndpointSuffix=core.windows.net";
     private static final String CONTAINER_NAME = "userfiles";
 
-    private final BlobServiceClient blobServiceClient;
-    private final BlobContainerClient containerClient;
+    private static AzureBlobInterface instance;
 
-    public AzureBlobInterface() {
-        this.blobServiceClient = new BlobServiceClientBuilder()
-                .connectionString(CONNECTION_STRING)
-                .buildClient();
+    private final int poolSize;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile BlobContainerClient containerClient;
+    // not a monitor: the first caller does network I/O while holding it, and
+    // virtual threads blocked in a synchronized block would pin their carrier
+    private final ReentrantLock initLock = new ReentrantLock();
 
-        this.containerClient = blobServiceClient.getBlobContainerClient(CONTAINER_NAME);
+    private AzureBlobInterface(int poolSize) {
+        this.poolSize = poolSize;
+    }
 
-        if (!containerClient.exists()) {
-            containerClient.create();
+    /**
+     * Get the shared instance. Cheap: no client is built and no network call
+     * is made until a blob operation actually runs.
+     */
+    public static synchronized AzureBlobInterface getInstance() {
+        if (instance == null) {
+            instance = new AzureBlobInterface(ConfigLoader.getInstance().getAzurePoolSize());
         }
+        return instance;
+    }
+
+    /**
+     * The container client, built (and the container checked) exactly once.
+     */
+    private BlobContainerClient container() {
+        BlobContainerClient client = containerClient;
+        if (client == null) {
+            initLock.lock();
+            try {
+                client = containerClient;
+                if (client == null) {
+                    HttpClient httpClient = HttpClient.createDefault(new HttpClientOptions()
+                            .setMaximumConnectionPoolSize(poolSize)
+                            .setConnectionIdleTimeout(Duration.ofSeconds(60)));
+
+                    BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
+                            .connectionString(CONNECTION_STRING)
+                            .httpClient(httpClient)
+                            .buildClient();
+
+                    client = blobServiceClient.getBlobContainerClient(CONTAINER_NAME);
+                    if (!client.exists()) {
+                        client.create();
+                    }
+                    containerClient = client;
+                }
+            } finally {
+                initLock.unlock();
+            }
+        }
+        return client;
+    }
+
+    /** Max connections in the shared HTTP pool. */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /** Blob operations currently running, including downloads still being streamed. */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isInitialised() {
+        return containerClient != null;
     }
 
     public List<String> upload(int appID, InputStream zipStream) {
         List<String> fileList = new ArrayList<>();
+        inFlight.incrementAndGet();
         try (ZipInputStream zipFile = new ZipInputStream(zipStream)) {
             ZipEntry zipEntry;
 
@@ -69,7 +144,7 @@ public class AzureBlobInterface {
                 fileList.add(entryName);
 
                 // Create blob client
-                BlobClient blobClient = containerClient.getBlobClient(blobName);
+                BlobClient blobClient = container().getBlobClient(blobName);
 
                 // Get the uncompressed size
                 long uncompressedSize = zipEntry.getSize();
@@ -88,46 +163,126 @@ public class AzureBlobInterface {
             System.err.println("IOException during upload: " + ex.getMessage());
         } catch (Exception ex) {
             System.err.println("Exception during upload: " + ex.getMessage());
+        } finally {
+            inFlight.decrementAndGet();
         }
         return fileList;
     }
 
+    @Override
     public InputStream download(int appID, String filePath) {
+        inFlight.incrementAndGet();
+        // e.g. "2002/index.html"
+        String blobName = blobName(appID, filePath);
         try {
-            // Strip leading slash, if any
-            if (filePath.startsWith("/")) {
-                filePath = filePath.substring(1);
-            }
-            // e.g. "index.html"
-            String blobName = appID + "/" + filePath; // => "2002/index.html"
-
-            BlobClient blobClient = containerClient.getBlobClient(blobName);
-
-            if (!blobClient.exists()) {
+            // one round trip: opening a blob that does not exist fails with 404,
+            // so there is no need to ask exists() first
+            BlobInputStream in = container().getBlobClient(blobName).openInputStream();
+            // still in flight until the caller has finished reading it
+            return new InFlightStream(in, info(in.getProperties()));
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == 404) {
                 System.err.println("File doesn't exist in Azure: " + blobName);
-                return null;
+            } else {
+                System.err.println("Blob storage exception: " + ex.getMessage());
             }
+        } catch (Exception ex) {
+            System.err.println("Exception in download: " + ex.getMessage());
+        }
+        inFlight.decrementAndGet();
+        return null;
+    }
 
-            return blobClient.openInputStream();
+    /**
+     * Download 'count' bytes of an app's blob from 'offset' on, and only
+     * those. With an etag, only if the blob still has it: a blob replaced
+     * since gives null rather than bytes of a different version.
+     */
+    public InputStream download(int appID, String filePath, long offset, long count, String etag) {
+        inFlight.incrementAndGet();
+        try {
+            BlobClient blobClient = container().getBlobClient(blobName(appID, filePath));
+            BlobRequestConditions conditions = etag != null ? new BlobRequestConditions().setIfMatch(etag) : null;
+            return new InFlightStream(blobClient.openInputStream(new BlobRange(offset, count), conditions),
+                    new BlobInfo(count, etag, -1));
         } catch (BlobStorageException ex) {
-            System.err.println("Blob storage exception: " + ex.getMessage());
+            System.err.println("Blob storage exception in ranged download: " + ex.getMessage());
         } catch (Exception ex) {
-            System.err.println("Exception in download: " + ex.getMessage());
+            System.err.println("Exception in ranged download: " + ex.getMessage());
         }
+        inFlight.decrementAndGet();
         return null;
     }
 
+    /**
+     * Size, ETag and last-modified time of an app's blob, from one
+     * properties request (no download), or null if it does not exist.
+     */
+    @Override
+    public BlobInfo properties(int appID, String filePath) {
+        inFlight.incrementAndGet();
+        try {
+            return info(container().getBlobClient(blobName(appID, filePath)).getProperties());
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() != 404) {
+                System.err.println("Blob storage exception reading properties: " + ex.getMessage());
+            }
+        } catch (Exception ex) {
+            System.err.println("Exception reading blob properties: " + ex.getMessage());
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        return null;
+    }
+
+    /** What properties() tells about a blob; lastModified is in ms, -1 if not known. */
+    public record BlobInfo(long size, String etag, long lastModified) {}
+
+    private static BlobInfo info(BlobProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        long modified = properties.getLastModified() != null
+                ? properties.getLastModified().toInstant().toEpochMilli() : -1;
+        return new BlobInfo(properties.getBlobSize(), properties.getETag(), modified);
+    }
+
+    // e.g. (2002, "/index.html") -> "2002/index.html"
+    private static String blobName(int appID, String filePath) {
+        return appID + "/" + (filePath.startsWith("/") ? filePath.substring(1) : filePath);
+    }
+
+    /**
+     * Bytes in a stream opened by download(): the blob's size from the
+     * properties fetched along with it, or the range's; -1 if not known.
+     */
+    public long sizeOf(InputStream download) {
+        BlobInfo info = infoOf(download);
+        return info != null ? info.size() : -1;
+    }
+
+    /**
+     * What is known of the blob behind a stream opened by download(): for
+     * a whole blob its properties as fetched along with it; null if nothing.
+     */
+    @Override
+    public BlobInfo infoOf(InputStream download) {
+        return download instanceof InFlightStream stream ? stream.info : null;
+    }
+
     public int delete(int appID) {
+        inFlight.incrementAndGet();
         try {
             int deletedCount = 0;
             String prefix = appID + "/";  // e.g. "2002/"
 
-            for (BlobItem blobItem : containerClient.listBlobs(
+            BlobContainerClient client = container();
+            for (BlobItem blobItem : client.listBlobs(
                     new ListBlobsOptions().setPrefix(prefix),
                     null
             )) {
                 String blobName = blobItem.getName();
-                containerClient.getBlobClient(blobName).delete();
+                client.getBlobClient(blobName).delete();
                 deletedCount++;
             }
             return deletedCount;
@@ -135,10 +290,33 @@ public class AzureBlobInterface {
             System.err.println("Blob storage exception during deletion: " + ex.getMessage());
         } catch (Exception ex) {
             System.err.println("Exception during deletion: " + ex.getMessage());
+        } finally {
+            inFlight.decrementAndGet();
         }
         return -1;
     }
 
+    /**
+     * Download stream that releases its in-flight slot once, on close.
+     */
+    private class InFlightStream extends FilterInputStream {
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final BlobInfo info;
+
+        InFlightStream(InputStream in, BlobInfo info) {
+            super(in);
+            this.info = info;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+            super.close();
+        }
+    }
+
     public List<String> test_upload(int appID) {
         System.out.println("Testing upload for appID=" + appID);
         // Adjust path if your test file is somewhere else
@@ -0,0 +1,25 @@
+package com.webserver.azure;
+
+import java.io.InputStream;
+
+/**
+ * Where app files are downloaded from: AzureBlobInterface in production, an
+ * in-memory map in tests.
+ */
+public interface BlobStore {
+
+    /**
+     * The whole of an app's file as a stream the caller closes, or null if
+     * there is no such file (or it cannot be read now).
+     */
+    InputStream download(int appID, String filePath);
+
+    /** Size, ETag and last-modified time of the file behind a download() stream, or null. */
+    AzureBlobInterface.BlobInfo infoOf(InputStream download);
+
+    /**
+     * Size, ETag and last-modified time of an app's file without downloading
+     * it, or null if there is no such file (or it cannot be read now).
+     */
+    AzureBlobInterface.BlobInfo properties(int appID, String filePath);
+}
@@ -0,0 +1,167 @@
+package com.webserver.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AdaptiveLimiter - a concurrency limit that follows observed latency.
+ *
+ * Gradient algorithm: keep a short-term and a long-term moving average of the
+ * time RequestProcessor.process takes. While the short-term average stays
+ * within TOLERANCE of the long-term one the server is keeping up, and the
+ * limit grows by about sqrt(limit) per sample; when requests start queueing
+ * inside the server (DB, Azure, CPU), the short-term average rises and the
+ * limit shrinks in proportion. The limit never leaves [min, max].
+ */
+public class AdaptiveLimiter {
+
+    // how much slower than the long-term average requests may get before the limit backs off
+    private static final double TOLERANCE = 1.5;
+    private static final double SHORT_ALPHA = 2.0 / (10 + 1);   // ~10 sample window
+    private static final double LONG_ALPHA = 2.0 / (600 + 1);   // ~600 sample window
+    private static final double SMOOTHING = 0.2;
+    private static final int MAX_HISTORY = 60;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+
+    // Estimator state, only touched under lock (a ReentrantLock so virtual threads don't pin)
+    private final ReentrantLock lock = new ReentrantLock();
+    private double estimatedLimit;
+    private double shortRtt;
+    private double longRtt;
+    private boolean sampled;
+    private final Deque<LimitPoint> history = new ArrayDeque<>();
+    private long lastHistoryTime;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Take a slot if fewer than limit requests are in flight. A caller that
+     * gets true must call release() exactly once.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Free a slot and feed the request's latency into the estimate.
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        lock.lock();
+        try {
+            update(rttNanos, current);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int inFlightAtRelease) {
+        if (!sampled) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+            sampled = true;
+        }
+        shortRtt += (rttNanos - shortRtt) * SHORT_ALPHA;
+        longRtt += (rttNanos - longRtt) * LONG_ALPHA;
+
+        // after a slow spell the long-term average lags far behind; pull it
+        // back so the limit can recover instead of staying at the floor
+        if (longRtt > 2 * shortRtt) {
+            longRtt *= 0.95;
+        }
+
+        // far below the limit we learn nothing about capacity: don't grow on idle
+        if (inFlightAtRelease >= estimatedLimit / 2) {
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+            limit = (int) estimatedLimit;
+        }
+
+        // one history point per second at most
+        long now = System.currentTimeMillis();
+        if (now - lastHistoryTime >= 1000) {
+            lastHistoryTime = now;
+            if (history.size() == MAX_HISTORY) {
+                history.removeFirst();
+            }
+            history.addLast(new LimitPoint(now, limit, inFlightAtRelease, shortRtt / 1_000_000.0));
+        }
+    }
+
+    /** Count a request turned away because no slot came free in time. */
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Recent limit values, oldest first, as rows for the /api/metrics charts.
+     */
+    public List<Map<String, Object>> getHistory() {
+        List<LimitPoint> points;
+        lock.lock();
+        try {
+            points = new ArrayList<>(history);
+        } finally {
+            lock.unlock();
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (LimitPoint p : points) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("time", formatTimestamp(p.timestamp));
+            row.put("limit", p.limit);
+            row.put("inFlight", p.inFlight);
+            row.put("latencyMs", p.latencyMs);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String formatTimestamp(long ts) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(ts);
+        return String.format("%d:%02d:%02d",
+                c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE), c.get(Calendar.SECOND));
+    }
+
+    private record LimitPoint(long timestamp, int limit, int inFlight, double latencyMs) {}
+}
@@ -0,0 +1,193 @@
+package com.webserver.core;
+
+import com.webserver.util.Telemetry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdmissionController - bounds the work waiting for a request thread.
+ *
+ * Callers reserve a queue slot before handing work to the thread pool
+ * (tryEnqueue) and give it back when the work starts (admit). Work is shed
+ * when the queue is already at admission.max_queue_depth, or when it has
+ * waited longer than admission.max_queue_wait_ms by the time a thread picks
+ * it up; either way the client gets a pre-encoded 503 with Retry-After and
+ * nothing is parsed.
+ *
+ * A virtual thread picks work up at once, so with server.executor=virtual
+ * the queue stays empty. What bounds the work then is
+ * admission.max_in_flight: a slot is held from tryEnqueue until the work is
+ * done (finish), and work beyond that many is shed the same way.
+ */
+public class AdmissionController {
+
+    // How long, and for how many bytes, a shed connection is read after its 503
+    static final int LINGER_MILLIS = 1000;
+    static final int LINGER_BYTES = 64 * 1024;
+
+    private final int maxQueueDepth;
+    private final long maxQueueWaitMillis;
+    private final byte[] shedResponse;
+    private final int maxInFlight;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public AdmissionController(int maxQueueDepth, long maxQueueWaitMillis, int retryAfterSeconds) {
+        this(maxQueueDepth, maxQueueWaitMillis, retryAfterSeconds, Integer.MAX_VALUE);
+    }
+
+    /** maxInFlight: work accepted and not yet finished, queued or running. */
+    public AdmissionController(int maxQueueDepth, long maxQueueWaitMillis, int retryAfterSeconds,
+                               int maxInFlight) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxInFlight = maxInFlight;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+
+        String body = "Service Unavailable";
+        this.shedResponse = ("HTTP/1.1 503 Service Unavailable\r\n"
+                + "Retry-After: " + retryAfterSeconds + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n"
+                + body).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reserve a queue slot and an in-flight slot. False (and one more shed)
+     * if either is full; on true the caller must call finish() once the work
+     * is done, or cancel() if it never queues it.
+     */
+    public boolean tryEnqueue() {
+        if (!reserve(inFlight, maxInFlight)) {
+            Telemetry.recordShed();
+            return false;
+        }
+        if (!reserve(queued, maxQueueDepth)) {
+            inFlight.decrementAndGet();
+            Telemetry.recordShed();
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean reserve(AtomicInteger count, int max) {
+        while (true) {
+            int current = count.get();
+            if (current >= max) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back the slots reserved by tryEnqueue() for work that was never queued.
+     */
+    public void cancel() {
+        queued.decrementAndGet();
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Give back the in-flight slot of work that was admitted, or shed by
+     * admit(), once it is done.
+     */
+    public void finish() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Called by the thread that picked the work up: frees its queue slot and
+     * returns false (one more shed) if it sat in the queue too long.
+     */
+    public boolean admit(long enqueuedAtNanos) {
+        queued.decrementAndGet();
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAtNanos);
+        Telemetry.recordQueueWait(waitMillis);
+        if (waitMillis > maxQueueWaitMillis) {
+            Telemetry.recordShed();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Answer 503 on a connection whose request was never read, then close it.
+     */
+    public void shed(Socket socket) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(shedResponse);
+            out.flush();
+            socket.shutdownOutput();
+        } catch (IOException e) {
+            // the client is gone; nothing else to do
+            closeQuietly(socket);
+            return;
+        }
+        // Closing with the request still unread would reset the connection,
+        // which can destroy the 503 before the client reads it. Read and drop
+        // what it sends for a moment first, off the caller's (accept) thread.
+        Thread.ofVirtual().name("shed-linger").start(() -> lingerAndClose(socket));
+    }
+
+    private static void lingerAndClose(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(LINGER_MILLIS);
+            InputStream in = socket.getInputStream();
+            byte[] discard = new byte[4096];
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+            int drained = 0;
+            while (drained < LINGER_BYTES && System.nanoTime() < deadline) {
+                int n = in.read(discard);
+                if (n == -1) {
+                    break; // the client read the 503 and closed
+                }
+                drained += n;
+            }
+        } catch (IOException e) {
+            // timed out, or the client is gone
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignore) {}
+    }
+
+    /** The 503 response, encoded once. Callers must not modify it. */
+    public byte[] getShedResponse() {
+        return shedResponse;
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+
+    /** Work accepted and not yet finished. */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+}
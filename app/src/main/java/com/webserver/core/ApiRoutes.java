@@ -0,0 +1,1427 @@
+package com.webserver.core;
+
+import com.google.gson.GsonBuilder;
+import com.webserver.azure.AppFileCache;
+import com.webserver.azure.AzureBlobInterface;
+import com.webserver.http.ByteRanges;
+import com.webserver.http.Compressor;
+import com.webserver.http.Conditional;
+import com.webserver.http.RequestProcessor;
+import com.webserver.model.Headers;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ApiRoutes - the REST API and per-app file routes.
+ *
+ * One instance is created at boot (see ServerContext) and its handlers are
+ * registered on the shared RequestProcessor, so they must not keep any
+ * per-request state in fields.
+ */
+public class ApiRoutes {
+
+    private final RequestProcessor processor;
+    private final AzureBlobInterface azureInterface;
+    // app files on local disk, read through from azureInterface; null when not used
+    private final AppFileCache appFiles;
+    private final AdmissionController admission;
+    private final AdaptiveLimiter limiter;
+    // appId -> tenantId for every app with routes, so requests can be scheduled per tenant
+    private final Map<Integer, Integer> appTenants = new ConcurrentHashMap<>();
+    // appId -> the file routes registered for it, so a refresh can drop those no longer listed
+    private final Map<Integer, Set<String>> appRoutes = new ConcurrentHashMap<>();
+
+    public ApiRoutes(RequestProcessor processor, AzureBlobInterface azureInterface,
+                     AdmissionController admission, AdaptiveLimiter limiter) {
+        this(processor, azureInterface, null, admission, limiter);
+    }
+
+    public ApiRoutes(RequestProcessor processor, AzureBlobInterface azureInterface, AppFileCache appFiles,
+                     AdmissionController admission, AdaptiveLimiter limiter) {
+        this.processor = processor;
+        this.azureInterface = azureInterface;
+        this.appFiles = appFiles;
+        this.admission = admission;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Register a route for each known file of each app. Called once at boot;
+     * afterwards uploads and deletes keep the table up to date incrementally.
+     */
+    public void registerAppRoutes(List<DB.App> apps) {
+        for (DB.App app : apps) {
+            appTenants.put(app.appId, app.tenantId);
+            String prefix = "/app_" + app.appId;
+            processor.addRoutePrefix(prefix + "/");
+            for (String route : app.routes) {
+                if (route.startsWith(prefix + "/")) {
+                    registerAppFileRoute(app.appId, route.substring(prefix.length()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Register the route serving one file of an app from Azure, e.g. "/app_2002/index.html".
+     * Re-uploading a file that is already routed is a no-op.
+     */
+    public void registerAppFileRoute(int appId, String filePath) {
+        String route = "/app_" + appId + filePath;
+        processor.addRoutePrefix("/app_" + appId + "/");
+        appRoutes.computeIfAbsent(appId, id -> ConcurrentHashMap.newKeySet()).add(route);
+        if (processor.hasRoute(route)) {
+            return;
+        }
+        try {
+            processor.addRoute(route, req -> serveAppFile(req, appId, filePath));
+        } catch (IllegalArgumentException alreadyAdded) {
+            // another connection registered it first
+        }
+    }
+
+    /**
+     * Drop every route belonging to an app, e.g. when the app is deleted.
+     */
+    public void unregisterAppRoutes(DB.App app) {
+        unregisterAppRoutes(app.appId, app.routes);
+    }
+
+    private void unregisterAppRoutes(int appId, Collection<String> routes) {
+        appTenants.remove(appId);
+        invalidateAppFiles(appId);
+        processor.removeRoutePrefix("/app_" + appId + "/");
+        Set<String> stale = new HashSet<>(routes);
+        Set<String> registered = appRoutes.remove(appId);
+        if (registered != null) {
+            stale.addAll(registered);
+        }
+        for (String route : stale) {
+            boolean removed = processor.removeRoute(route);
+            if (removed) {
+                Logger.info("Removed route: " + route);
+            }
+        }
+    }
+
+    /**
+     * Bring the app routes in line with the apps the database lists now, e.g.
+     * after another instance uploaded or deleted some: apps and files it no
+     * longer lists lose their routes, new ones get theirs.
+     */
+    public void syncAppRoutes(List<DB.App> apps) {
+        Map<Integer, DB.App> listed = new HashMap<>();
+        for (DB.App app : apps) {
+            listed.put(app.appId, app);
+        }
+        Set<Integer> known = new HashSet<>(appTenants.keySet());
+        known.addAll(appRoutes.keySet());
+        for (int appId : known) {
+            DB.App app = listed.get(appId);
+            if (app == null) {
+                Logger.info("App " + appId + " is gone, removing its routes");
+                unregisterAppRoutes(appId, List.of());
+                continue;
+            }
+            Set<String> registered = appRoutes.getOrDefault(appId, Set.of());
+            boolean removed = false;
+            for (String route : registered) {
+                if (!app.routes.contains(route) && registered.remove(route)) {
+                    processor.removeRoute(route);
+                    Logger.info("Removed route: " + route);
+                    removed = true;
+                }
+            }
+            if (removed) {
+                invalidateAppFiles(appId);
+            }
+        }
+        registerAppRoutes(apps);
+    }
+
+    /**
+     * The tenant owning an app, or 0 if the app is unknown.
+     */
+    public int tenantOf(int appId) {
+        return appTenants.getOrDefault(appId, 0);
+    }
+
+    /**
+     * Forget the locally cached files of an app whose files have just been
+     * replaced or deleted.
+     */
+    public void invalidateAppFiles(int appId) {
+        if (appFiles != null) {
+            appFiles.invalidate(appId);
+        }
+    }
+
+    private HttpResponse serveAppFile(HttpRequest req, int appId, String filePath) {
+        if ("OPTIONS".equalsIgnoreCase(req.getMethod())) {
+            return createCorsOk();
+        }
+        if (appFiles != null && "GET".equalsIgnoreCase(req.getMethod())) {
+            HttpResponse cached = serveCachedAppFile(req, appId, filePath);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String range = req.getHeader(Headers.RANGE);
+        boolean conditional = req.getHeader(Headers.IF_NONE_MATCH) != null
+            || req.getHeader(Headers.IF_MODIFIED_SINCE) != null;
+        if ("GET".equalsIgnoreCase(req.getMethod()) && (conditional || range != null)) {
+            // the blob's properties only: a revalidation downloads nothing
+            AzureBlobInterface.BlobInfo blob = azureInterface.properties(appId, filePath);
+            if (blob == null) {
+                return appFileNotFound(filePath);
+            }
+            if (Conditional.notModified(req, blob.etag(), blob.lastModified())) {
+                return Conditional.notModifiedResponse(req, blob.etag(), blob.lastModified())
+                    .addHeader("Access-Control-Allow-Origin", "*")
+                    .build();
+            }
+            if (range != null) {
+                HttpResponse partial = serveAppFileRange(req, appId, filePath, range, blob);
+                if (partial != null) {
+                    return partial;
+                }
+            }
+        }
+        InputStream is = azureInterface.download(appId, filePath);
+        if (is == null) {
+            return appFileNotFound(filePath);
+        }
+        // streamed to the client as it downloads; the writer closes it
+        String mime = MimeTypes.getMimeType(filePath);
+        HttpResponse.Builder response = appFileResponse(200)
+            .addHeader("Content-Type", mime)
+            .addHeader(Headers.ACCEPT_RANGES, "bytes")
+            .setBodySource(() -> is, azureInterface.sizeOf(is));
+        addValidators(response, azureInterface.infoOf(is));
+        return response.build();
+    }
+
+    /**
+     * An app file from its local copy, downloaded first if need be:
+     * revalidation and ranges answered with no round trip to storage.
+     * Returns null if the file should be streamed from storage instead.
+     */
+    private HttpResponse serveCachedAppFile(HttpRequest req, int appId, String filePath) {
+        AppFileCache.Entry entry;
+        try {
+            entry = appFiles.get(appId, filePath);
+        } catch (IOException e) {
+            Logger.warn("Cannot cache app file " + appId + filePath + ": " + e.getMessage());
+            return null;
+        }
+        if (entry == null) {
+            return appFileNotFound(filePath);
+        }
+        if (entry.file() == null) {
+            return null;
+        }
+        Path file = entry.file();
+        AzureBlobInterface.BlobInfo blob = entry.info();
+        if (Conditional.notModified(req, blob.etag(), blob.lastModified())) {
+            return Conditional.notModifiedResponse(req, blob.etag(), blob.lastModified())
+                .addHeader("Access-Control-Allow-Origin", "*")
+                .build();
+        }
+        List<ByteRanges.Range> ranges = ByteRanges.parse(req.getHeader(Headers.RANGE), blob.size());
+        if (ranges != null && !ByteRanges.ifRangeMatches(req.getHeader(Headers.IF_RANGE), blob.etag(), blob.lastModified())) {
+            ranges = null;
+        }
+        if (ranges != null && ranges.isEmpty()) {
+            return ByteRanges.notSatisfiable(blob.size())
+                .addHeader("Access-Control-Allow-Origin", "*")
+                .build();
+        }
+        String mime = MimeTypes.getMimeType(filePath);
+        // the whole file compressed, if the client takes it: gzipped once per version, not per
+        // request; without an ETag to key that by, Compressor.encode gzips it as it goes
+        Compressor compressor = processor.getCompressor();
+        boolean negotiated = ranges == null && compressor != null && blob.etag() != null
+                && compressor.cachesGzip(mime, blob.size());
+        if (negotiated) {
+            Compressor.Variant gzip;
+            try {
+                gzip = compressor.encodeFile(req, file, blob.etag());
+            } catch (IOException evicted) {
+                gzip = null;
+            }
+            if (gzip != null) {
+                HttpResponse.Builder encoded = appFileResponse(200)
+                    .addHeader("Content-Type", mime)
+                    .addHeader(Headers.CONTENT_ENCODING, gzip.coding())
+                    .addHeader(Headers.VARY, Headers.ACCEPT_ENCODING)
+                    .setRawBody(gzip.bytes());
+                addValidators(encoded, blob);
+                if (blob.etag() != null) {
+                    encoded.removeHeader(Headers.ETAG).addHeader(Headers.ETAG, "W/" + blob.etag());
+                }
+                return encoded.build();
+            }
+        }
+        HttpResponse.Builder response;
+        if (ranges != null && ranges.size() > 1) {
+            FileChannel channel;
+            try {
+                // opened now and every part read from it: an eviction deleting the file can't cut the body short
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (IOException evicted) {
+                return null;
+            }
+            ByteRanges.Multipart body = new ByteRanges.Multipart(ranges, blob.size(), mime, channel);
+            response = appFileResponse(206)
+                .addHeader("Content-Type", body.contentType())
+                .setBodySource(body, body.length());
+        } else {
+            ByteRanges.Range range = ranges != null ? ranges.get(0) : null;
+            long offset = range != null ? range.start() : 0;
+            long length = range != null ? range.length() : blob.size();
+            InputStream in;
+            try {
+                // opened now: an eviction deleting the file from here on leaves this copy readable
+                in = Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ).position(offset));
+            } catch (IOException evicted) {
+                return null;
+            }
+            response = appFileResponse(range != null ? 206 : 200)
+                .addHeader("Content-Type", mime)
+                .addHeader(Headers.ACCEPT_RANGES, "bytes")
+                .setBodySource(() -> in, length);
+            if (range != null) {
+                response.addHeader(Headers.CONTENT_RANGE, ByteRanges.contentRange(range, blob.size()));
+            }
+            if (negotiated) {
+                // sent as it is on purpose: Compressor.encode leaves it be
+                response.addHeader(Headers.VARY, Headers.ACCEPT_ENCODING);
+            }
+        }
+        addValidators(response, blob);
+        return response.build();
+    }
+
+    // ETag and Last-Modified of an app file, as far as they are known
+    private static void addValidators(HttpResponse.Builder response, AzureBlobInterface.BlobInfo blob) {
+        if (blob != null && blob.etag() != null) {
+            response.addHeader(Headers.ETAG, blob.etag());
+        }
+        if (blob != null && blob.lastModified() >= 0) {
+            response.addHeader(Headers.LAST_MODIFIED, Conditional.httpDate(blob.lastModified()));
+        }
+    }
+
+    /**
+     * The byte ranges of an app file a Range header asks for, downloading
+     * only those bytes. Returns null if the whole file should be sent instead.
+     */
+    private HttpResponse serveAppFileRange(HttpRequest req, int appId, String filePath, String range,
+                                           AzureBlobInterface.BlobInfo blob) {
+        List<ByteRanges.Range> ranges = ByteRanges.parse(range, blob.size());
+        if (ranges == null || !ByteRanges.ifRangeMatches(req.getHeader(Headers.IF_RANGE), blob.etag(), blob.lastModified())) {
+            return null;
+        }
+        if (ranges.isEmpty()) {
+            return ByteRanges.notSatisfiable(blob.size())
+                .addHeader("Access-Control-Allow-Origin", "*")
+                .build();
+        }
+        String mime = MimeTypes.getMimeType(filePath);
+        if (ranges.size() > 1) {
+            // each part downloaded only once the response has been written up to it
+            ByteRanges.Multipart body = new ByteRanges.Multipart(ranges, blob.size(), mime,
+                (start, length) -> azureInterface.download(appId, filePath, start, length, blob.etag()));
+            HttpResponse.Builder response = appFileResponse(206)
+                .addHeader("Content-Type", body.contentType())
+                .setBodySource(body, body.length());
+            addValidators(response, blob);
+            return response.build();
+        }
+        ByteRanges.Range only = ranges.get(0);
+        InputStream is = azureInterface.download(appId, filePath, only.start(), only.length(), blob.etag());
+        if (is == null) {
+            return null; // changed since its properties were read: send it whole
+        }
+        HttpResponse.Builder response = appFileResponse(206)
+            .addHeader("Content-Type", mime)
+            .addHeader(Headers.CONTENT_RANGE, ByteRanges.contentRange(only, blob.size()))
+            .setBodySource(() -> is, only.length());
+        addValidators(response, blob);
+        return response.build();
+    }
+
+    private HttpResponse.Builder appFileResponse(int status) {
+        return new HttpResponse.Builder()
+            .setStatusCode(status)
+            .addHeader("Access-Control-Allow-Origin", "*")
+            .addHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+            .addHeader("Access-Control-Allow-Headers", "Content-Type");
+    }
+
+    private HttpResponse appFileNotFound(String filePath) {
+        return appFileResponse(404)
+            .setBody("File not found in Azure: " + filePath)
+            .build();
+    }
+
+    public void defineRoutes() {
+        // Root route
+        processor.addRoute("/", req -> {
+            if ("OPTIONS".equalsIgnoreCase(req.getMethod())) {
+                return createCorsOk();
+            }
+            return new HttpResponse.Builder()
+                    .setStatusCode(200)
+                    .addHeader("Access-Control-Allow-Origin", "*")
+                    .addHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+                    .addHeader("Access-Control-Allow-Headers", "Content-Type")
+                    .addHeader("Content-Type", "text/plain")
+                    .setBody("Welcome to Cloudle Web Server!")
+                    .build();
+        });
+
+        // Add a route for app-level metrics: e.g. /api/tenants/101/apps/2002/metrics
+        // We'll handle it in handleTenantsRoute with a new method handleTenantAppMetrics
+        processor.addRoute("/api/tenants", this::handleTenantsRoute);
+
+//        // Apps
+        processor.addRoute("/api/apps", this::handleAppsCollection);
+        processor.addRoute("/api/apps/", this::handleAppSubpaths);
+//
+//        // Refresh
+        processor.addRoute("/api/refresh", this::handleRefresh);
+
+        // Metrics
+        processor.addRoute("/api/metrics", this::handleMetrics);
+
+        // Login
+        processor.addRoute("/api/login", this::handleLogin);
+
+        processor.addRoute("/api/tenants/usage", this::handleTenantsUsage);
+
+        processor.addRoute("/api/logs", this::handleLogsRoute);
+
+
+
+        processor.addRoute("/api/users", (request) -> {
+    // 1) If it's CORS preflight
+    if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+        return createCorsOk();
+    }
+
+    // 2) Must be POST
+    if (!"POST".equalsIgnoreCase(request.getMethod())) {
+        return createError(405, "Method Not Allowed");
+    }
+
+    // 3) Parse JSON from the request body
+    Map<String, Object> body = parseJsonMap(request.getTextBody());
+    Double tenantIdDbl = (Double) body.get("tenantId");
+    String username = (String) body.get("username");
+    String role = (String) body.get("role");
+    String password = (String) body.get("password");
+
+    if (tenantIdDbl == null || username == null || password == null || role == null) {
+        return createError(400, "Missing one or more fields: tenantId, username, role, password");
+    }
+
+    int tenantId = tenantIdDbl.intValue();
+
+    // Check if username already exists
+    DB.User existingUser = DB.findUserByUsername(username);
+    if (existingUser != null) {
+        return createError(409, "Username already exists");
+    }
+
+    // 4) Hash password
+    String hashed = DB.hashPassword(password);
+
+    // 5) Create a new User object
+    DB.User newUser = new DB.User();
+    newUser.userId = generateUserId();
+    newUser.tenantId = tenantId;
+    newUser.username = username;
+
+    // Check if this is the first user for this tenant - they become admin
+    List<DB.User> tenantUsers = DB.findUsersByTenantId(tenantId);
+    if (tenantUsers.isEmpty()) {
+        // First user gets admin role
+        newUser.role = "admin";
+    } else {
+        // Otherwise use provided role
+        newUser.role = role;
+    }
+
+    newUser.passwordHash = hashed;
+
+    // ### CHANGED: row-level insert, no DB.save()
+    DB.createUser(newUser);
+
+    // 8) Return success
+    Map<String,Object> resp = new HashMap<>();
+    resp.put("userId", newUser.userId);
+    resp.put("tenantId", newUser.tenantId);
+    resp.put("username", newUser.username);
+    resp.put("role", newUser.role);
+    resp.put("message", "Account created successfully");
+    return createJsonResponse(201, toJson(resp));
+});
+        processor.addRoute("/api/tenants/lookup", (request) -> {
+    if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+        return createCorsOk();
+    }
+
+    if (!"GET".equalsIgnoreCase(request.getMethod())) {
+        return createError(405, "Method Not Allowed");
+    }
+
+    // Extract email from query parameters
+    String path = request.getPath();
+    String email = null;
+
+    if (path.contains("?email=")) {
+        email = path.substring(path.indexOf("?email=") + 7);
+        // Handle URL encoding if needed
+        if (email.contains("%")) {
+            try {
+                email = java.net.URLDecoder.decode(email, "UTF-8");
+            } catch (Exception e) {
+                // Just use as is if decoding fails
+            }
+        }
+    }
+
+    if (email == null || email.isEmpty()) {
+        return createError(400, "Email parameter is required");
+    }
+
+    DB.Tenant tenant = DB.findTenantByEmail(email);
+    if (tenant == null) {
+        return createError(404, "Tenant with email " + email + " not found");
+    }
+
+    return createJsonResponse(200, toJson(tenant));
+});
+    }
+
+private HttpResponse handleLogsRoute(HttpRequest request) {
+    if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+        return createCorsOk();
+    }
+
+    if (!"GET".equalsIgnoreCase(request.getMethod())) {
+        return createError(405, "Method Not Allowed");
+    }
+
+    // Parse query parameters
+    String path = request.getPath();
+    String appIdParam = extractQueryParam(path, "appId");
+    String limitParam = extractQueryParam(path, "limit");
+    String levelParam = extractQueryParam(path, "level");
+
+    int appId = 0;
+    int limit = 100; // Default to 100 entries
+
+    if (appIdParam != null) {
+        try {
+            appId = Integer.parseInt(appIdParam);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid appId");
+        }
+    }
+
+    if (limitParam != null) {
+        try {
+            limit = Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid limit");
+        }
+    }
+
+    try {
+        List<Map<String, Object>> logs = LogReader.getRecentLogs(appId, limit, levelParam);
+        return createJsonResponse(200, toJson(logs));
+    } catch (Exception e) {
+        return createError(500, "Error reading logs: " + e.getMessage());
+    }
+}
+
+// Helper method to extract query params
+private String extractQueryParam(String path, String paramName) {
+    String paramPrefix = paramName + "=";
+    int index = path.indexOf(paramPrefix);
+    if (index == -1) return null;
+
+    int valueStart = index + paramPrefix.length();
+    int valueEnd = path.indexOf("&", valueStart);
+
+    if (valueEnd == -1) {
+        return path.substring(valueStart);
+    } else {
+        return path.substring(valueStart, valueEnd);
+    }
+}
+
+    // Then add this method to ConnectionHandler.java
+        private HttpResponse handleTenantsUsage(HttpRequest request) {
+            if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+                return createCorsOk();
+            }
+
+            if (!"GET".equalsIgnoreCase(request.getMethod())) {
+                return createError(405, "Method Not Allowed");
+            }
+
+            List<Map<String, Object>> tenantsUsage = new ArrayList<>();
+
+            // Get all tenants
+            List<DB.Tenant> tenants = DB.listAllTenants();
+
+            // Calculate metrics for each tenant
+            for (DB.Tenant tenant : tenants) {
+                // Get apps for this tenant
+                List<DB.App> tenantApps = DB.listAppsForTenant(tenant.tenantId);
+
+                // Calculate CPU usage (for simplicity, assigning 2 cores per app)
+                int cpuCores = tenantApps.size() * 2;
+                // Calculate memory usage (for simplicity, assigning 4GB per app)
+                int memoryGB = tenantApps.size() * 4;
+
+                Map<String, Object> tenantUsage = new HashMap<>();
+                tenantUsage.put("tenantId", tenant.tenantId);
+                tenantUsage.put("tenantName", tenant.tenantName);
+                tenantUsage.put("apps", tenantApps.size());
+                tenantUsage.put("cpu", cpuCores);
+                tenantUsage.put("memory", memoryGB);
+
+                tenantsUsage.add(tenantUsage);
+            }
+
+            return createJsonResponse(200, toJson(tenantsUsage));
+        }
+
+    //--------------------------------------------------------------------------
+    // /api/refresh => reload DB from Azure
+    //--------------------------------------------------------------------------
+    private HttpResponse handleRefresh(HttpRequest request) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        // Just re-load the in-memory snapshot from DB
+        DB.load();
+        // and bring the routes in line with what other instances uploaded or deleted since boot
+        syncAppRoutes(DB.listAllApps());
+        // whose local copies may be out of date by now too
+        if (appFiles != null) {
+            appFiles.invalidateAll();
+        }
+
+        return new HttpResponse.Builder()
+                .setStatusCode(200)
+                .addHeader("Access-Control-Allow-Origin", "*")
+                .addHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+                .addHeader("Access-Control-Allow-Headers", "Content-Type")
+                .addHeader("Content-Type", "text/plain")
+                .setBody("DB reloaded from Azure SQL")
+                .build();
+    }
+
+    //--------------------------------------------------------------------------
+    // /api/apps
+    //--------------------------------------------------------------------------
+    private HttpResponse handleAppsCollection(HttpRequest request) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+
+        String method = request.getMethod().toUpperCase();
+        if ("GET".equals(method)) {
+            // ### CHANGED:
+            List<DB.App> allApps = DB.listAllApps();
+            return createJsonResponse(200, toJson(allApps));
+        }
+        return createError(405, "Method Not Allowed");
+    }
+
+    private HttpResponse handleAppSubpaths(HttpRequest request) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+
+        String path = request.getPath(); // e.g. /api/apps/1000
+        String subPath = path.substring("/api/apps".length());
+        if (subPath.startsWith("/")) {
+            subPath = subPath.substring(1);
+        }
+        if (subPath.isEmpty()) {
+            return createError(404, "Not Found");
+        }
+        String[] parts = subPath.split("/");
+        if (parts.length == 1) {
+            // /api/apps/{id}
+            return handleSingleApp(request, parts[0]);
+        } else if (parts.length == 2) {
+            // /api/apps/{id}/status or /upload
+            String appIdStr = parts[0];
+            String action = parts[1].toLowerCase();
+            if ("status".equals(action)) {
+                return handleAppStatus(request, appIdStr);
+            } else if ("upload".equals(action)) {
+                return handleUploadZip(request, appIdStr);
+            } else {
+                return createError(404, "Not Found");
+            }
+        }
+        return createError(404, "Not Found");
+    }
+
+        private HttpResponse handleSingleApp(HttpRequest request, String appIdStr) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+
+        int appId;
+        try {
+            appId = Integer.parseInt(appIdStr);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid appId");
+        }
+
+        DB.App theApp = DB.findAppById(appId);
+        String method = request.getMethod().toUpperCase();
+        switch (method) {
+            case "GET":
+                if (theApp == null) {
+                    return createError(404, "App not found");
+                }
+                return createJsonResponse(200, toJson(theApp));
+            case "PUT":
+                if (theApp == null) {
+                    return createError(404, "App not found");
+                }
+                Map<String, Object> body = parseJsonMap(request.getTextBody());
+                String newName = (String) body.get("name");
+                String newRuntime = (String) body.get("runtime");
+                if (newName != null) {
+                    theApp.name = newName;
+                }
+                if (newRuntime != null) {
+                    theApp.runtime = newRuntime;
+                }
+                DB.updateApp(theApp);
+                return createJsonResponse(200, toJson(theApp));
+            case "DELETE":
+                if (theApp == null) {
+                    return createError(404, "App not found");
+                }
+                unregisterAppRoutes(theApp);
+                DB.deleteApp(appId);
+                return createJsonResponse(204, "");
+            default:
+                return createError(405, "Method Not Allowed");
+        }
+    }
+
+    private HttpResponse handleAppStatus(HttpRequest request, String appIdStr) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        int appId;
+        try {
+            appId = Integer.parseInt(appIdStr);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid appId");
+        }
+
+        DB.App theApp = DB.findAppById(appId);
+        if (theApp == null) {
+            return createError(404, "App not found");
+        }
+        if (!"PUT".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        Map<String, Object> json = parseJsonMap(request.getTextBody());
+        String newStatus = (String) json.get("status");
+        if (newStatus == null) {
+            return createError(400, "Missing status");
+        }
+
+        theApp.status = newStatus;
+        DB.updateApp(theApp);
+        return createJsonResponse(200, toJson(theApp));
+    }
+
+    private HttpResponse handleUploadZip(HttpRequest request, String appIdStr) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        int appId;
+        try {
+            appId = Integer.parseInt(appIdStr);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid appId");
+        }
+        DB.App theApp = DB.findAppById(appId);
+        if (theApp == null) {
+            return createError(404, "App not found");
+        }
+
+        try (InputStream zipStream = openUploadBody(request)) {
+            if (zipStream == null) {
+                return createError(400, "No ZIP data in request body");
+            }
+            List<String> extractedFiles = azureInterface.upload(appId, zipStream);
+            appTenants.put(appId, theApp.tenantId);
+            invalidateAppFiles(appId);
+
+            for (String filename : extractedFiles) {
+                String route = "/app_" + appId + "/" + filename;
+                if (!theApp.routes.contains(route)) {
+                    theApp.routes.add(route);
+                }
+                registerAppFileRoute(appId, "/" + filename);
+            }
+            DB.updateApp(theApp);
+
+            Map<String, Object> resp = new HashMap<>();
+            resp.put("appId", appId);
+            resp.put("message", "Upload success");
+            resp.put("updatedRoutes", theApp.routes);
+            return createJsonResponse(200, toJson(resp));
+
+        } catch (Exception e) {
+            return createError(500, "Error uploading ZIP: " + e.getMessage());
+        }
+    }
+
+
+
+
+    /**
+     * The body of a ZIP upload as a stream, or null if it is empty. The ZIP is
+     * extracted as it comes off the connection instead of being buffered whole.
+     */
+    private static InputStream openUploadBody(HttpRequest request) throws IOException {
+        PushbackInputStream body = new PushbackInputStream(request.getBodyStream());
+        int first = body.read();
+        if (first == -1) {
+            return null;
+        }
+        body.unread(first);
+        return body;
+    }
+
+    //--------------------------------------------------------------------------
+    // /api/login
+    //--------------------------------------------------------------------------
+    private HttpResponse handleLogin(HttpRequest request) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        // Parse JSON from body
+        Map<String, Object> body = parseJsonMap(request.getTextBody());
+        String tenantEmail = (String) body.get("tenantEmail");
+        String username    = (String) body.get("username");
+        String password    = (String) body.get("password");
+
+        if (tenantEmail == null || username == null || password == null) {
+            return createError(400, "Missing tenantEmail, username, or password");
+        }
+
+        // 1) Find tenant by email
+        DB.Tenant tenant = DB.findTenantByEmail(tenantEmail);
+        if (tenant == null) {
+            return createError(401, "Invalid tenant email");
+        }
+
+        // 2) Find user by username
+        DB.User user = DB.findUserByUsername(username);
+        if (user == null) {
+            return createError(401, "Invalid credentials");
+        }
+
+        // 3) Check if user is part of that tenant
+        if (user.tenantId != tenant.tenantId) {
+            return createError(403, "User does not belong to this tenant");
+        }
+
+        // 4) Check password
+        boolean valid = DB.checkPassword(password, user.passwordHash);
+        if (!valid) {
+            return createError(401, "Invalid credentials");
+        }
+
+        // Success
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", user.userId);
+        data.put("tenantId", tenant.tenantId);
+        data.put("role", user.role);
+        data.put("tenantName", tenant.tenantName);
+
+        return createJsonResponse(200, toJson(data));
+    }
+
+    //--------------------------------------------------------------------------
+    // /api/tenants
+    //--------------------------------------------------------------------------
+    private HttpResponse handleTenantsRoute(HttpRequest request) {
+        String path = request.getBasePath(); // /api/tenants or /api/tenants/101/apps/2002/metrics
+        String method = request.getMethod().toUpperCase();
+
+        if ("/api/tenants".equals(path)) {
+            if ("OPTIONS".equalsIgnoreCase(method)) {
+                return createCorsOk();
+            }
+            switch (method) {
+                case "GET":
+                    return listTenants();
+                case "POST":
+                    return createTenant(request);
+                default:
+                    return createError(405, "Method Not Allowed");
+            }
+        }
+
+        // Otherwise, subpaths. e.g. /api/tenants/101/apps/2002
+        String subPath = path.substring("/api/tenants".length()); // => /101/apps/2002
+        if (subPath.startsWith("/")) {
+            subPath = subPath.substring(1); // => 101/apps/2002
+        }
+        if (subPath.isEmpty()) {
+            return createError(404, "Not Found");
+        }
+        String[] parts = subPath.split("/");
+
+        // If parts.length == 4 => e.g. 101/apps/2002/metrics
+        // Specifically check if parts[1] == "apps" and parts[3] == "metrics"
+        if (parts.length == 4
+                && "apps".equalsIgnoreCase(parts[1])
+                && "metrics".equalsIgnoreCase(parts[3])) {
+            // so path is: /api/tenants/{tenantId}/apps/{appId}/metrics
+            return handleTenantAppMetrics(request, parts[0], parts[2]);
+        }
+
+        // otherwise handle the normal logic (existing code)...
+
+        // /api/tenants/101 => single tenant
+        if (parts.length == 1) {
+            return handleSingleTenant(request, parts[0]);
+        }
+        else if (parts.length == 2 && "apps".equalsIgnoreCase(parts[1])) {
+            return handleTenantAppsCollection(request, parts[0]);
+        }
+        else if (parts.length == 3 && "apps".equalsIgnoreCase(parts[1])) {
+            return handleSingleAppUnderTenant(request, parts[0], parts[2]);
+        }
+        else if (parts.length == 4 && "apps".equalsIgnoreCase(parts[1]) && "upload".equalsIgnoreCase(parts[3])) {
+            return handleTenantAppUpload(request, parts[0], parts[2]);
+        }
+
+        return createError(404, "Not Found");
+    }
+    
+    private HttpResponse handleSingleTenant(HttpRequest request, String tenantIdStr) {
+    if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+        return createCorsOk();
+    }
+
+    // 1) Parse tenantId
+    int tenantId;
+    try {
+        tenantId = Integer.parseInt(tenantIdStr);
+    } catch (NumberFormatException e) {
+        return createError(400, "Invalid tenantId");
+    }
+
+    // 2) Fetch tenant from DB
+    DB.Tenant tenant = DB.findTenantById(tenantId);
+    if (tenant == null) {
+        return createError(404, "Tenant not found");
+    }
+
+    String method = request.getMethod().toUpperCase();
+    switch (method) {
+        case "GET": {
+            // Return the single tenant’s info
+            return createJsonResponse(200, toJson(tenant));
+        }
+        case "PUT": {
+            // Possibly handle rename or other tenant updates
+            Map<String, Object> data = parseJsonMap(request.getTextBody());
+            String newName = (String) data.get("tenantName");
+            if (newName != null && !newName.isEmpty()) {
+                tenant.tenantName = newName;
+                DB.updateTenant(tenant);
+            }
+            return createJsonResponse(200, toJson(tenant));
+        }
+        case "DELETE": {
+            // If you want to delete a tenant
+            boolean ok = DB.deleteTenant(tenantId);
+            if (!ok) {
+                return createError(500, "Failed to remove tenant " + tenantId);
+            }
+            // Return 204 on success
+            return createJsonResponse(204, "");
+        }
+        default:
+            return createError(405, "Method Not Allowed");
+    }
+}
+
+
+    private HttpResponse listTenants() {
+        // ### CHANGED: Instead of DB.getRoot().tenants, do something like DB.listAllTenants().
+        List<DB.Tenant> tenants = DB.listAllTenants(); // you’d implement in DB
+        return createJsonResponse(200, toJson(tenants));
+    }
+
+
+    private HttpResponse createTenant(HttpRequest request) {
+    Map<String, Object> body = parseJsonMap(request.getTextBody());
+    String tenantName = (String) body.get("tenantName");
+    String tenantEmail = (String) body.get("tenantEmail");
+
+    if (tenantName == null || tenantName.isEmpty()) {
+        return createError(400, "tenantName is required");
+    }
+
+    if (tenantEmail == null || tenantEmail.isEmpty()) {
+        return createError(400, "tenantEmail is required");
+    }
+
+    // Check if the email is already in use
+    DB.Tenant existingTenant = DB.findTenantByEmail(tenantEmail);
+    if (existingTenant != null) {
+        return createError(409, "Tenant email already exists");
+    }
+
+    DB.Tenant newTenant = new DB.Tenant();
+    newTenant.tenantId = generateTenantId();
+    newTenant.tenantName = tenantName;
+    newTenant.tenantEmail = tenantEmail;
+
+    DB.createTenant(newTenant);
+
+    // Include success message in response
+    Map<String, Object> response = new HashMap<>();
+    response.put("tenantId", newTenant.tenantId);
+    response.put("tenantName", newTenant.tenantName);
+    response.put("tenantEmail", newTenant.tenantEmail);
+    response.put("message", "Tenant organization created successfully");
+
+    return createJsonResponse(201, toJson(response));
+}
+
+
+    //--------------------------------------------------------------------------
+    // Handling Apps Under a Tenant
+    //--------------------------------------------------------------------------
+    private HttpResponse handleTenantAppsCollection(HttpRequest request, String tenantIdStr) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        int tenantId;
+        try {
+            tenantId = Integer.parseInt(tenantIdStr);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid tenantId");
+        }
+
+        DB.Tenant tenant = DB.findTenantById(tenantId);
+        if (tenant == null) {
+            return createError(404, "Tenant not found");
+        }
+
+        String method = request.getMethod().toUpperCase();
+        switch (method) {
+            case "GET":
+                // ### CHANGED: use DB.listAppsForTenant(tenantId) or similar
+                List<DB.App> tenantApps = DB.listAppsForTenant(tenantId);
+                return createJsonResponse(200, toJson(tenantApps));
+            case "POST":
+                Map<String, Object> body = parseJsonMap(request.getTextBody());
+                String name = (String) body.get("name");
+                String runtime = (String) body.get("runtime");
+                Double ownerIdDbl = (Double) body.get("ownerUserId");
+
+                if (name == null || runtime == null || ownerIdDbl == null) {
+                    return createError(400, "Missing fields: name, runtime, ownerUserId");
+                }
+                int ownerUserId = ownerIdDbl.intValue();
+
+                DB.App newApp = new DB.App();
+                newApp.appId = generateAppId();
+                newApp.tenantId = tenantId;
+                newApp.name = name;
+                newApp.runtime = runtime;
+                newApp.status = "stopped";
+                newApp.ownerUserId = ownerUserId;
+                newApp.routes = new ArrayList<>();
+
+                // ### CHANGED
+                DB.createApp(newApp);
+
+                return createJsonResponse(201, toJson(newApp));
+            default:
+                return createError(405, "Method Not Allowed");
+        }
+    }
+
+    private HttpResponse handleSingleAppUnderTenant(HttpRequest request, String tenantIdStr, String appIdStr) {
+    if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+        return createCorsOk();
+    }
+
+    int tenantId, appId;
+    try {
+        tenantId = Integer.parseInt(tenantIdStr);
+        appId    = Integer.parseInt(appIdStr);
+    } catch (NumberFormatException e) {
+        return createError(400, "Invalid tenantId or appId");
+    }
+
+    DB.App theApp = DB.findAppByTenant(tenantId, appId);
+    if (theApp == null) {
+        return createError(404, "App not found for this tenant");
+    }
+
+    String method = request.getMethod().toUpperCase();
+    switch (method) {
+        case "GET": {
+            return createJsonResponse(200, toJson(theApp));
+        }
+        case "PUT": {
+            // logic to update the app (newName, newRuntime, newStatus)...
+            return createJsonResponse(200, toJson(theApp));
+        }
+        case "DELETE": {
+            // 1) Unregister routes
+            unregisterAppRoutes(theApp);
+
+            // 2) Delete from Azure
+            try {
+                int deletedCount = azureInterface.delete(appId);
+                Logger.info("Azure Blob deletion for app " + appId + " => " + deletedCount + " files removed");
+            } catch (Exception ex) {
+                Logger.error("Azure file deletion failed for app " + appId, ex);
+            }
+
+            // 3) Remove from DB
+            boolean success = DB.deleteApp(appId);
+            if (success) {
+                Logger.info("App " + appId + " successfully removed from tenant " + tenantId);
+                return createJsonResponse(204, "");
+            } else {
+                return createError(500, "Failed to remove app in DB");
+            }
+        }
+        default:
+            return createError(405, "Method Not Allowed");
+    }
+}
+
+    private HttpResponse handleTenantAppUpload(HttpRequest request, String tenantIdStr, String appIdStr) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        int tenantId, appId;
+        try {
+            tenantId = Integer.parseInt(tenantIdStr);
+            appId    = Integer.parseInt(appIdStr);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid tenantId or appId");
+        }
+
+        DB.App theApp = DB.findAppByTenant(tenantId, appId); // or findAppById + check
+        if (theApp == null) {
+            return createError(404, "App not found for tenant " + tenantId);
+        }
+
+        try (InputStream zipStream = openUploadBody(request)) {
+            if (zipStream == null) {
+                return createError(400, "No ZIP data in request body");
+            }
+            List<String> extractedFiles = azureInterface.upload(appId, zipStream);
+            appTenants.put(appId, theApp.tenantId);
+            invalidateAppFiles(appId);
+
+            // Append new routes
+            for (String filename : extractedFiles) {
+                String route = "/app_" + appId + "/" + filename;
+                if (!theApp.routes.contains(route)) {
+                    theApp.routes.add(route);
+                }
+
+                // Also define a new route in the shared route table
+                registerAppFileRoute(appId, "/" + filename);
+            }
+            // ### CHANGED: persist updated routes to DB
+            DB.updateApp(theApp);
+
+            Map<String, Object> resp = new HashMap<>();
+            resp.put("appId", appId);
+            resp.put("tenantId", tenantId);
+            resp.put("message", "Upload success");
+            resp.put("updatedRoutes", theApp.routes);
+            return createJsonResponse(200, toJson(resp));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return createError(500, "Error uploading ZIP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * New method to handle /api/tenants/{tenantId}/apps/{appId}/metrics
+     */
+    private HttpResponse handleTenantAppMetrics(HttpRequest request, String tenantIdStr, String appIdStr) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        int tenantId, appId;
+        try {
+            tenantId = Integer.parseInt(tenantIdStr);
+            appId    = Integer.parseInt(appIdStr);
+        } catch (NumberFormatException e) {
+            return createError(400, "Invalid tenantId or appId");
+        }
+
+        // ensure app belongs to that tenant
+        DB.App theApp = DB.findAppByTenant(tenantId, appId);
+        if (theApp == null) {
+            return createError(404, "App not found or not in this tenant");
+        }
+
+        // fetch from Telemetry
+        Map<String,Object> appMetrics = Telemetry.getAppMetrics(appId);
+
+        return createJsonResponse(200, toJson(appMetrics));
+    }
+
+    // The old /api/metrics => for global server metrics
+    private HttpResponse handleMetrics(HttpRequest request) {
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            return createCorsOk();
+        }
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return createError(405, "Method Not Allowed");
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("cpuUtilization", Telemetry.getCpuUsage());
+        data.put("memoryUsage", Telemetry.getMemoryUsage());
+        data.put("avgResponseTime", Telemetry.getAvgResponseTime());
+        data.put("errorRate", Telemetry.getErrorRate());
+        data.put("systemLoad", Telemetry.getSystemLoad());
+        data.put("performanceData", Telemetry.getPerformanceData());
+        data.put("concurrencyLimit", concurrencyLimitMetrics());
+        data.put("concurrencyLimitData", limiter.getHistory());
+        data.put("blobStorage", blobStorageMetrics());
+        data.put("admission", admissionMetrics());
+        data.put("mappedFiles", mappedFileMetrics());
+        data.put("compression", compressionMetrics());
+        data.put("staticCache", staticCacheMetrics());
+        data.put("appFileCache", appFileCacheMetrics());
+        return createJsonResponse(200, toJson(data));
+    }
+
+    private Map<String, Object> concurrencyLimitMetrics() {
+        Map<String, Object> limit = new HashMap<>();
+        limit.put("limit", limiter.getLimit());
+        limit.put("inFlight", limiter.getInFlight());
+        limit.put("rejected", limiter.getRejected());
+        return limit;
+    }
+
+    private Map<String, Object> admissionMetrics() {
+        Map<String, Object> queue = new HashMap<>();
+        queue.put("queueDepth", admission.getQueueDepth());
+        queue.put("maxQueueDepth", admission.getMaxQueueDepth());
+        queue.put("maxQueueWaitMs", admission.getMaxQueueWaitMillis());
+        queue.put("inFlight", admission.getInFlight());
+        queue.put("maxInFlight", admission.getMaxInFlight());
+        queue.put("shed", Telemetry.getShedCount());
+        queue.put("queueWaitMs", Telemetry.getQueueWaitHistogram());
+        return queue;
+    }
+
+    private Map<String, Object> compressionMetrics() {
+        Compressor compressor = processor.getCompressor();
+        Map<String, Object> compression = new HashMap<>();
+        compression.put("enabled", compressor != null);
+        compression.put("compressed", compressor != null ? compressor.getCompressed() : 0);
+        compression.put("precompressed", compressor != null ? compressor.getPrecompressed() : 0);
+        compression.put("ratio", compressor != null ? compressor.getRatio() : 1);
+        compression.put("cacheHits", compressor != null ? compressor.getCacheHits() : 0);
+        compression.put("cacheMisses", compressor != null ? compressor.getCacheMisses() : 0);
+        compression.put("cachedBytes", compressor != null ? compressor.getCachedBytes() : 0);
+        return compression;
+    }
+
+    private Map<String, Object> staticCacheMetrics() {
+        Map<String, Object> cache = new HashMap<>();
+        cache.put("hitRatio", Telemetry.getStaticCacheHitRatio());
+        cache.put("hits", Telemetry.getStaticCacheHits());
+        cache.put("misses", Telemetry.getStaticCacheMisses());
+        cache.put("residentBytes", Telemetry.getStaticCacheBytes());
+        cache.put("evictions", Telemetry.getStaticCacheEvictions());
+        cache.put("missingPaths", processor.getStaticFiles().getMissingPaths());
+        cache.put("fastNotFound", processor.getFastNotFound());
+        return cache;
+    }
+
+    private Map<String, Object> appFileCacheMetrics() {
+        Map<String, Object> cache = new HashMap<>();
+        cache.put("enabled", appFiles != null);
+        cache.put("hits", appFiles != null ? appFiles.getHits() : 0);
+        cache.put("misses", appFiles != null ? appFiles.getMisses() : 0);
+        cache.put("files", appFiles != null ? appFiles.getFiles() : 0);
+        cache.put("cachedBytes", appFiles != null ? appFiles.getCachedBytes() : 0);
+        cache.put("evictions", appFiles != null ? appFiles.getEvictions() : 0);
+        cache.put("revalidations", appFiles != null ? appFiles.getRevalidations() : 0);
+        cache.put("coalesced", appFiles != null ? appFiles.getCoalesced() : 0);
+        cache.put("fillTimeouts", appFiles != null ? appFiles.getFillTimeouts() : 0);
+        cache.put("inFlightKeys", appFiles != null ? appFiles.getFilling() : List.of());
+        return cache;
+    }
+
+    private Map<String, Object> mappedFileMetrics() {
+        MappedFileCache cache = processor.getMappedFiles();
+        Map<String, Object> mapped = new HashMap<>();
+        mapped.put("threshold", cache != null ? cache.getThreshold() : 0);
+        mapped.put("files", cache != null ? cache.getMappedFiles() : 0);
+        mapped.put("mappedBytes", cache != null ? cache.getMappedBytes() : 0);
+        return mapped;
+    }
+
+    private Map<String, Object> blobStorageMetrics() {
+        Map<String, Object> blob = new HashMap<>();
+        blob.put("initialised", azureInterface != null && azureInterface.isInitialised());
+        blob.put("poolSize", azureInterface != null ? azureInterface.getPoolSize() : 0);
+        blob.put("inFlight", azureInterface != null ? azureInterface.getInFlight() : 0);
+        return blob;
+    }
+
+    private HttpResponse createCorsOk() {
+        return new HttpResponse.Builder()
+            .setStatusCode(200)
+            .addHeader("Access-Control-Allow-Origin", "*")
+            .addHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+            .addHeader("Access-Control-Allow-Headers", "Content-Type")
+            .setBody("")
+            .build();
+    }
+
+    private HttpResponse createError(int code, String message) {
+        return new HttpResponse.Builder()
+            .setStatusCode(code)
+            .addHeader("Access-Control-Allow-Origin", "*")
+            .addHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+            .addHeader("Access-Control-Allow-Headers", "Content-Type")
+            .addHeader("Content-Type", "application/json")
+            .setBody("{\"error\":\"" + message + "\"}")
+            .build();
+    }
+
+    private HttpResponse createJsonResponse(int statusCode, String json) {
+        return new HttpResponse.Builder()
+            .setStatusCode(statusCode)
+            .addHeader("Access-Control-Allow-Origin", "*")
+            .addHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS")
+            .addHeader("Access-Control-Allow-Headers", "Content-Type")
+            .addHeader("Content-Type", "application/json")
+            .setBody(json)
+            .build();
+    }
+
+    private String toJson(Object data) {
+        return new GsonBuilder().serializeSpecialFloatingPointValues().create().toJson(data);
+    }
+
+    private Map<String,Object> parseJsonMap(String json) {
+        if (json == null || json.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            return new com.google.gson.Gson().fromJson(
+                    json,
+                    new com.google.gson.reflect.TypeToken<Map<String,Object>>(){}.getType()
+            );
+        } catch (Exception e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // ID Generation (if you’re not using auto-increment in the DB)
+    //--------------------------------------------------------------------------
+    private static int lastTenantId = 380;
+    private static int generateTenantId() {
+        int maxId = 0;
+        List<DB.Tenant> allTenants = DB.listAllTenants();
+        for (DB.Tenant t : allTenants) {
+            if (t.tenantId > maxId) {
+                maxId = t.tenantId;
+            }
+        }
+        return (maxId >= lastTenantId) ? maxId + 1 : ++lastTenantId;
+    }
+
+    private static int lastAppId = 789;
+    private static int generateAppId() {
+        int maxId = 0;
+        List<DB.App> allApps = DB.listAllApps();
+        for (DB.App a : allApps) {
+            if (a.appId > maxId) {
+                maxId = a.appId;
+            }
+        }
+        return (maxId >= lastAppId) ? maxId + 1 : ++lastAppId;
+    }
+
+    private static int lastUserId = 372;
+    private static int generateUserId() {
+        int maxId = 0;
+        List<DB.User> allUsers = DB.listAllUsers();
+        for (DB.User u : allUsers) {
+            if (u.userId > maxId) {
+                maxId = u.userId;
+            }
+        }
+        return (maxId >= lastUserId) ? maxId + 1 : ++lastUserId;
+    }
+}
@@ -0,0 +1,58 @@
+package com.webserver.core;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BufferPool - recycles fixed-size direct ByteBuffers.
+ *
+ * A SocketChannel reads straight into a direct buffer, where a heap buffer
+ * costs an extra copy through a temporary direct one inside the JDK. Direct
+ * buffers are expensive to allocate and only freed by the GC, so connections
+ * borrow them from here and hand them back when they close. At most
+ * maxPooled idle buffers are kept; release() ignores any other kind of buffer.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * A cleared direct buffer of bufferSize bytes.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Give back a buffer from acquire(). The caller must not touch it afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.add(buffer);
+    }
+
+    public int getPooled() {
+        return pooled.get();
+    }
+}
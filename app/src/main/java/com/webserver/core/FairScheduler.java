@@ -0,0 +1,161 @@
+package com.webserver.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FairScheduler - shares the adaptive concurrency limit between tenants.
+ *
+ * While the limit has room, requests go straight through. Once it is full,
+ * each tenant's requests wait in that tenant's own queue, and every freed
+ * slot goes to the tenant whose head request has the smallest start tag
+ * (start-time fair queueing): each request advances its tenant's tag by
+ * 1/weight, so a tenant with weight 2 gets twice the slots of one with
+ * weight 1 under contention, and a tenant with a single request is served
+ * next no matter how many requests a noisy neighbour has queued.
+ *
+ * That only holds if requests wait here rather than for a thread, i.e. with
+ * server.executor=virtual (the default): a fixed pool of max_threads serves
+ * the connections waiting for it in arrival order, whatever their tenant.
+ */
+public class FairScheduler {
+
+    private final AdaptiveLimiter limiter;
+    private final Map<Integer, Double> weights;
+    private final double defaultWeight;
+    private final int maxQueuedPerTenant;
+    private final long maxWaitNanos;
+
+    // Everything below is guarded by lock (a ReentrantLock, so waiting virtual threads don't pin)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, TenantQueue> tenants = new HashMap<>();
+    private double virtualTime;
+    private int waiting;
+
+    public FairScheduler(AdaptiveLimiter limiter, Map<Integer, Double> weights, double defaultWeight,
+                         int maxQueuedPerTenant, long maxWaitMillis) {
+        this.limiter = limiter;
+        this.weights = weights;
+        this.defaultWeight = defaultWeight;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Wait for a concurrency slot on behalf of a tenant (0 for requests not
+     * tied to an app). False if the tenant's queue is full or the wait timed
+     * out; a caller that gets true must call release() exactly once.
+     */
+    public boolean acquire(int tenantId) {
+        lock.lock();
+        try {
+            TenantQueue queue = tenants.computeIfAbsent(tenantId,
+                    id -> new TenantQueue(weights.getOrDefault(id, defaultWeight)));
+            double startTag = Math.max(virtualTime, queue.lastFinish);
+
+            if (waiting == 0 && limiter.tryAcquire()) {
+                queue.lastFinish = startTag + 1.0 / queue.weight;
+                virtualTime = startTag;
+                return true;
+            }
+            if (queue.waiters.size() >= maxQueuedPerTenant) {
+                limiter.recordRejected();
+                return false;
+            }
+
+            queue.lastFinish = startTag + 1.0 / queue.weight;
+            Waiter waiter = new Waiter(startTag, lock.newCondition());
+            queue.waiters.addLast(waiter);
+            waiting++;
+
+            long remaining = maxWaitNanos;
+            while (!waiter.granted) {
+                if (remaining <= 0) {
+                    queue.waiters.remove(waiter);
+                    waiting--;
+                    limiter.recordRejected();
+                    return false;
+                }
+                try {
+                    remaining = waiter.condition.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    remaining = 0;
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give the slot back, feeding the request's latency to the limiter, and
+     * hand any room that opens up to the waiting tenants.
+     */
+    public void release(long rttNanos) {
+        limiter.release(rttNanos);
+        lock.lock();
+        try {
+            grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lock held
+    private void grantWaiters() {
+        while (waiting > 0) {
+            TenantQueue next = null;
+            for (TenantQueue queue : tenants.values()) {
+                Waiter head = queue.waiters.peekFirst();
+                if (head != null && (next == null || head.startTag < next.waiters.peekFirst().startTag)) {
+                    next = queue;
+                }
+            }
+            if (!limiter.tryAcquire()) {
+                return;
+            }
+            Waiter waiter = next.waiters.pollFirst();
+            waiting--;
+            virtualTime = Math.max(virtualTime, waiter.startTag);
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    /** Requests currently queued for a slot, across all tenants. */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class TenantQueue {
+        final double weight;
+        double lastFinish;
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        TenantQueue(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class Waiter {
+        final double startTag;
+        final Condition condition;
+        boolean granted;
+
+        Waiter(double startTag, Condition condition) {
+            this.startTag = startTag;
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package com.webserver.core;
+
+import com.webserver.http.HttpParser;
+import com.webserver.http.ResponseWriter;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.Logger;
+import com.webserver.util.Telemetry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NioServer - the non-blocking engine (server.engine=nio).
+ *
+ * A few event-loop threads, each with its own Selector, do all the socket
+ * reads and writes; the calling thread only accepts. Parsed requests go
+ * through the RequestDispatcher on the handler pool, so a slow route (SQL, Azure,
+ * PHP) ties up a handler thread but never an event loop or an idle connection.
+ *
+ * Each connection has at most one request in processing and is not read again
+ * until that response is fully written. That keeps pipelined responses in
+ * order and pushes back on clients sending faster than we answer.
+ *
+ * Requests are buffered whole before they are dispatched, so one larger than
+ * nio.max_request_bytes is answered 413 and its connection closed.
+ */
+public class NioServer {
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    // idle read buffers kept for new connections (8 MB)
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    // sent when a route throws: the blocking engine closes the connection on that too
+    private static final byte[] INTERNAL_ERROR = ("HTTP/1.1 500 Internal Server Error\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "Content-Length: 21\r\n"
+            + "Connection: close\r\n"
+            + "\r\n"
+            + "Internal Server Error").getBytes(StandardCharsets.US_ASCII);
+    // sent for a request over nio.max_request_bytes, which is never buffered whole
+    private static final byte[] TOO_LARGE = ("HTTP/1.1 413 Content Too Large\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "Content-Length: 17\r\n"
+            + "Connection: close\r\n"
+            + "\r\n"
+            + "Content Too Large").getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerContext context;
+    private final RequestDispatcher dispatcher;
+    private final ExecutorService handlerPool;
+    private final AdmissionController admission;
+    private final TenantLimits limits;
+    private final int maxRequestBytes;
+    private final BufferPool bufferPool = new BufferPool(READ_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final ServerSocketChannel serverChannel;
+    private final Selector acceptSelector;
+    private final EventLoop[] loops;
+    private volatile boolean running = true;
+
+    public NioServer(InetSocketAddress address, int eventLoops, ServerContext context,
+                     ExecutorService handlerPool) throws IOException {
+        this.context = context;
+        this.dispatcher = context.getDispatcher();
+        this.handlerPool = handlerPool;
+        this.admission = context.getAdmission();
+        this.limits = context.getLimits();
+        this.maxRequestBytes = context.getConfig().getNioMaxRequestBytes();
+
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 50);
+        serverChannel.configureBlocking(false);
+        this.acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        this.loops = new EventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop("nio-loop-" + i);
+        }
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Accept connections until stop(), handing each to an event loop in turn.
+     * Blocks the calling thread.
+     */
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        int next = 0;
+        while (running) {
+            try {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    Logger.info("Connection received from " + channel.getRemoteAddress());
+                    channel.configureBlocking(false);
+                    // responses go out whole, Nagle would only delay the tail
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    loops[next++ % loops.length].register(channel);
+                }
+            } catch (ClosedSelectorException closed) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    Logger.error("Error accepting connection", e);
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+            acceptSelector.close();
+        } catch (IOException e) {
+            Logger.error("Error closing server channel", e);
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * One selector thread. Everything touching its connections' channels and
+     * keys runs on this thread; other threads hand work over via execute().
+     */
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // delayed work (paused shaped writes); loop thread only
+        final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong(Timer::at));
+        long lastIdleSweep = System.currentTimeMillis();
+
+        EventLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    NioConnection connection = new NioConnection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    Logger.error("Error registering connection", e);
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        // loop thread only
+        void schedule(Runnable task, long delayNanos) {
+            timers.add(new Timer(System.nanoTime() + delayNanos, task));
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                long timeout = 1000;
+                if (!timers.isEmpty()) {
+                    long untilNext = (timers.peek().at() - System.nanoTime()) / 1_000_000;
+                    timeout = Math.max(1, Math.min(timeout, untilNext));
+                }
+                try {
+                    selector.select(timeout);
+                } catch (IOException e) {
+                    Logger.error("Selector failed", e);
+                    break;
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                long now = System.nanoTime();
+                while (!timers.isEmpty() && timers.peek().at() - now <= 0) {
+                    timers.poll().task().run();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+
+                closeIdle();
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignore) {}
+        }
+
+        // keep-alive connections idle for connection_timeout are closed, at most one sweep a second
+        private void closeIdle() {
+            long now = System.currentTimeMillis();
+            if (now - lastIdleSweep < 1000) {
+                return;
+            }
+            lastIdleSweep = now;
+            for (SelectionKey key : selector.keys()) {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (!connection.busy && now - connection.lastActivity > context.getIdleTimeoutMillis()) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-connection state. Fields are only touched on the owning loop's thread,
+     * except in process(), which runs on the handler pool and hands its result back.
+     */
+    private final class NioConnection {
+        final EventLoop loop;
+        final SocketChannel channel;
+        final HttpParser parser = new HttpParser();
+        // reused across responses: the connection is busy until each is written
+        final ResponseWriter responseWriter = new ResponseWriter();
+        SelectionKey key;
+
+        // bytes read but not yet parsed, kept in write mode between reads;
+        // a pooled direct buffer unless a large request made it grow
+        ByteBuffer readBuffer = bufferPool.acquire();
+        ByteBuffer[] pendingWrite; // head and body, written with one gathering write
+        TokenBucket shaper;   // tenant bandwidth limit for pendingWrite, or null
+        int paidBytes;        // bytes of pendingWrite already taken from the shaper
+        int responseAppId;    // app the response being written is for
+        boolean closeAfterWrite;
+        boolean lingering;    // response out and output shut down; input read and dropped until close
+        int lingerLeft;       // bytes still dropped while lingering
+        boolean busy;
+        int served;
+        long lastActivity = System.currentTimeMillis();
+
+        NioConnection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        void onReadable() {
+            int n;
+            try {
+                n = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (n == -1) {
+                close();
+                return;
+            }
+            if (lingering) {
+                lingerLeft -= n;
+                readBuffer.clear();
+                if (lingerLeft <= 0) {
+                    close();
+                }
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            dispatchNext();
+        }
+
+        /**
+         * Hand the next complete request in the buffer, if any, to the handler pool.
+         */
+        void dispatchNext() {
+            if (readBuffer.position() == 0) {
+                return; // nothing buffered
+            }
+            // reserve a handler slot before parsing, so an overloaded
+            // server sheds without spending anything on the request
+            if (!admission.tryEnqueue()) {
+                shed();
+                return;
+            }
+
+            HttpRequest request;
+            try {
+                request = parseNext();
+            } catch (HttpParser.RequestTooLargeException e) {
+                admission.cancel();
+                Logger.info("Request too large from " + channel.socket().getRemoteSocketAddress()
+                        + ": " + e.getMessage());
+                busy = true;
+                key.interestOps(0);
+                send(new ByteBuffer[] {ByteBuffer.wrap(TOO_LARGE)}, true, null);
+                return;
+            } catch (IOException e) {
+                admission.cancel();
+                Logger.error("Error handling connection", e);
+                Telemetry.trackFailures(e, "unknown", "Failed to parse request");
+                close();
+                return;
+            }
+
+            if (request == null) {
+                admission.cancel();
+                // partial request: make room if it is bigger than the buffer;
+                // tryParse() stops it before it gets past maxRequestBytes
+                if (!readBuffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                    readBuffer.flip();
+                    bigger.put(readBuffer);
+                    bufferPool.release(readBuffer);
+                    readBuffer = bigger;
+                }
+                return;
+            }
+            if (readBuffer.position() == 0 && readBuffer.capacity() > READ_BUFFER_SIZE) {
+                readBuffer = bufferPool.acquire(); // drop a grown buffer
+            }
+
+            busy = true;
+            served++;
+            boolean keepAlive = ConnectionHandler.isKeepAlive(request)
+                    && served < context.getMaxRequestsPerConnection() && !parser.isCloseRequired();
+            // backpressure: stop reading until this response is out
+            key.interestOps(0);
+            long enqueuedAt = System.nanoTime();
+            handlerPool.execute(() -> process(request, keepAlive, enqueuedAt));
+        }
+
+        // the next complete request in the buffer, or null; the buffer is
+        // back in write mode either way, so a caller may close() on failure
+        HttpRequest parseNext() throws IOException {
+            readBuffer.flip();
+            try {
+                return parser.tryParse(readBuffer, maxRequestBytes);
+            } finally {
+                readBuffer.compact();
+            }
+        }
+
+        // answer 503 from the pre-encoded bytes and close once they are out
+        void shed() {
+            busy = true;
+            key.interestOps(0);
+            send(new ByteBuffer[] {ByteBuffer.wrap(admission.getShedResponse())}, true, null);
+        }
+
+        // runs on the handler pool
+        void process(HttpRequest request, boolean keepAlive, long enqueuedAt) {
+            try {
+                if (!admission.admit(enqueuedAt)) {
+                    loop.execute(this::shed);
+                    return;
+                }
+                handle(request, keepAlive);
+            } finally {
+                admission.finish();
+            }
+        }
+
+        private void handle(HttpRequest request, boolean keepAlive) {
+            long startTime = System.currentTimeMillis();
+            Telemetry.incrementNumberRequests();
+            int appId = ConnectionHandler.extractAppId(request.getPath());
+            long inboundBytes = request.getRawBody() != null ? request.getRawBody().length : 0;
+
+            HttpResponse response;
+            ByteBuffer[] out;
+            try {
+                response = dispatcher.dispatch(request);
+                out = responseWriter.encode(response, keepAlive);
+            } catch (IOException e) {
+                // a streamed body that could not be opened, or read
+                Logger.error("Error writing response for " + request.getPath(), e);
+                loop.execute(this::close);
+                return;
+            } catch (RuntimeException e) {
+                // a failing route must not leave the connection busy and unread
+                // forever: closeIdle() never reaps a busy one
+                Logger.error("Error handling connection", e);
+                Telemetry.trackFailures(e, request.getPath(), "Failed to process request");
+                responseWriter.release();
+                loop.execute(() -> send(new ByteBuffer[] {ByteBuffer.wrap(INTERNAL_ERROR)}, true, null));
+                return;
+            }
+            long outboundBytes = remaining(out) + responseWriter.fileBodyLeft();
+            responseAppId = appId;
+            TokenBucket bandwidth = limits.bandwidth(dispatcher.tenantOf(appId));
+            loop.execute(() -> send(out, !keepAlive, bandwidth));
+
+            Telemetry.trackResponseTime(startTime);
+            Telemetry.recordRequest(appId, startTime, response.getStatusCode());
+            Telemetry.recordTraffic(appId, inboundBytes, outboundBytes);
+        }
+
+        void send(ByteBuffer[] out, boolean close, TokenBucket bandwidth) {
+            if (!channel.isOpen()) {
+                responseWriter.release(); // nobody left to send it to
+                return;
+            }
+            pendingWrite = out;
+            shaper = bandwidth;
+            paidBytes = 0;
+            closeAfterWrite = close;
+            onWritable();
+        }
+
+        void onWritable() {
+            if (!channel.isOpen()) {
+                return; // closed while a shaped write was paused
+            }
+            try {
+                if (shaper == null) {
+                    channel.write(pendingWrite);
+                } else if (!writeShaped()) {
+                    return; // paused; a timer resumes the write
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (remaining(pendingWrite) > 0) {
+                // partial write: the socket buffer is full, wait until it drains
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            try {
+                if (responseWriter.hasFileBody() && !transferFile()) {
+                    return; // socket full or paused; onWritable() runs again
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            pendingWrite = null;
+            lastActivity = System.currentTimeMillis();
+            if (responseWriter.hasMoreBody()) {
+                // a streamed body: read its next chunk off the loop thread
+                key.interestOps(0);
+                handlerPool.execute(this::streamNext);
+                return;
+            }
+            responseWriter.release(); // a mapped body is sent: unpin it
+            busy = false;
+            if (closeAfterWrite) {
+                lingerClose();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            // the next pipelined request may already be buffered
+            dispatchNext();
+        }
+
+        // runs on the handler pool
+        void streamNext() {
+            ByteBuffer[] out;
+            try {
+                out = responseWriter.nextChunk();
+            } catch (IOException e) {
+                // the head is out: all the client can be told is that the body stopped
+                Logger.error("Error streaming response body", e);
+                loop.execute(this::close);
+                return;
+            }
+            Telemetry.recordTraffic(responseAppId, 0, remaining(out));
+            loop.execute(() -> send(out, closeAfterWrite, shaper));
+        }
+
+        /**
+         * Send the file body after the head, from the file straight to the
+         * socket. Returns false if the socket filled up or the tenant's byte
+         * bucket ran dry, having arranged for onWritable() to be called again.
+         */
+        boolean transferFile() throws IOException {
+            while (responseWriter.hasFileBody()) {
+                long sent;
+                if (shaper == null) {
+                    sent = responseWriter.transferBody(channel, Long.MAX_VALUE);
+                } else {
+                    if (paidBytes == 0) {
+                        paidBytes = (int) Math.min(responseWriter.fileBodyLeft(), TenantLimits.SHAPING_CHUNK);
+                        long wait = shaper.take(paidBytes);
+                        if (wait > 0) {
+                            key.interestOps(0);
+                            loop.schedule(this::onWritable, wait);
+                            return false;
+                        }
+                    }
+                    sent = responseWriter.transferBody(channel, paidBytes);
+                    paidBytes -= (int) sent;
+                }
+                if (sent == 0) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Write in chunks paid for from the tenant's byte bucket. Returns false
+         * if it had to pause, with a timer set to call onWritable() again.
+         */
+        boolean writeShaped() throws IOException {
+            for (ByteBuffer buffer : pendingWrite) {
+                while (buffer.hasRemaining()) {
+                    if (paidBytes == 0) {
+                        paidBytes = Math.min(buffer.remaining(), TenantLimits.SHAPING_CHUNK);
+                        long wait = shaper.take(paidBytes);
+                        if (wait > 0) {
+                            key.interestOps(0);
+                            loop.schedule(this::onWritable, wait);
+                            return false;
+                        }
+                    }
+                    int limit = buffer.limit();
+                    buffer.limit(buffer.position() + paidBytes);
+                    try {
+                        paidBytes -= channel.write(buffer);
+                    } finally {
+                        buffer.limit(limit);
+                    }
+                    if (paidBytes > 0) {
+                        return true; // socket buffer full
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Close once the client has had the response. Closing with unread
+         * input (a shed or refused request, or pipelined ones after the last
+         * answered) would reset the connection, which can destroy the response
+         * before the client reads it: shut down output, so the client sees the
+         * end, then drop what it still sends until it closes, AdmissionController's
+         * linger time passes or it has sent that many bytes.
+         */
+        void lingerClose() {
+            try {
+                channel.shutdownOutput();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            lingering = true;
+            lingerLeft = AdmissionController.LINGER_BYTES;
+            readBuffer.clear();
+            key.interestOps(SelectionKey.OP_READ);
+            loop.schedule(this::close, TimeUnit.MILLISECONDS.toNanos(AdmissionController.LINGER_MILLIS));
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            responseWriter.release();
+            if (readBuffer != null) {
+                bufferPool.release(readBuffer);
+                readBuffer = null;
+            }
+        }
+    }
+
+    private record Timer(long at, Runnable task) {}
+
+    private static long remaining(ByteBuffer[] buffers) {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        return remaining;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignore) {}
+    }
+}
@@ -0,0 +1,82 @@
+package com.webserver.core;
+
+import com.webserver.http.RequestProcessor;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * RequestDispatcher - what both engines call instead of RequestProcessor.process.
+ *
+ * Requests only reach the route table while the adaptive concurrency limit
+ * has room. When it is full they queue per tenant in the FairScheduler, and
+ * are answered 503 if their tenant's queue is full or their turn does not
+ * come within admission.max_queue_wait_ms. The time each admitted request
+ * spends in process() drives the limit.
+ *
+ * Before any of that, a tenant over its tenant.rate_limits gets 429.
+ */
+public class RequestDispatcher {
+
+    private final RequestProcessor processor;
+    private final FairScheduler scheduler;
+    private final TenantLimits limits;
+    private final IntUnaryOperator tenantOfApp;
+    private final int retryAfterSeconds;
+
+    /**
+     * @param tenantOfApp maps the app id in a request path to its tenant (0 if none)
+     */
+    public RequestDispatcher(RequestProcessor processor, FairScheduler scheduler, TenantLimits limits,
+                             IntUnaryOperator tenantOfApp, int retryAfterSeconds) {
+        this.processor = processor;
+        this.scheduler = scheduler;
+        this.limits = limits;
+        this.tenantOfApp = tenantOfApp;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpResponse dispatch(HttpRequest request) {
+        int tenantId = tenantOf(ConnectionHandler.extractAppId(request.getPath()));
+        long rateLimitedFor = limits.tryRequest(tenantId);
+        if (rateLimitedFor > 0) {
+            return tooManyRequests(rateLimitedFor);
+        }
+        if (!scheduler.acquire(tenantId)) {
+            return overloaded();
+        }
+        long start = System.nanoTime();
+        try {
+            return processor.process(request);
+        } finally {
+            scheduler.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The tenant a request for this app id is accounted to (0 if none).
+     */
+    public int tenantOf(int appId) {
+        return appId != 0 ? tenantOfApp.applyAsInt(appId) : 0;
+    }
+
+    private HttpResponse tooManyRequests(long waitNanos) {
+        long seconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        return new HttpResponse.Builder()
+                .setStatusCode(429)
+                .addHeader("Retry-After", String.valueOf(seconds))
+                .addHeader("Content-Type", "text/plain")
+                .setBody("Too Many Requests")
+                .build();
+    }
+
+    private HttpResponse overloaded() {
+        return new HttpResponse.Builder()
+                .setStatusCode(503)
+                .addHeader("Retry-After", String.valueOf(retryAfterSeconds))
+                .addHeader("Content-Type", "text/plain")
+                .setBody("Service Unavailable")
+                .build();
+    }
+}
@@ -2,34 +2,66 @@ package com.webserver.core;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import com.webserver.azure.AzureBlobInterface;
 import com.webserver.util.Logger;
 import com.webserver.util.ConfigLoader;
 import com.webserver.util.Telemetry;
 
 public class Server {
-    private final ServerSocket serverSocket;
+    private final ServerSocket serverSocket; // blocking engine
+    private final NioServer nioServer;       // nio engine
     private final ExecutorService threadPool;
     private final ConfigLoader config;
+    private final ServerContext context;
+    private final AdmissionController admission;
     private boolean running = true;
 
     public Server() throws IOException {
         // Load configuration
         this.config = new ConfigLoader();
 
+        if ("virtual".equalsIgnoreCase(config.getExecutor())) {
+            // blocking JDBC/Azure/PHP calls park the virtual thread, not a pool slot
+            this.threadPool = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            this.threadPool = Executors.newFixedThreadPool(config.getMaxThreads());
+            // waiting connections queue in the pool, ahead of the FairScheduler
+            Logger.warn("server.executor=platform: requests wait for one of " + config.getMaxThreads()
+                    + " threads first come, first served; tenants are only queued fairly with virtual");
+        }
+
+        // Build the shared route table once, not per connection
+        this.context = ServerContext.boot(config);
+        this.admission = context.getAdmission();
+
         // Initialize server socket with configured port
 //        this.serverSocket = new ServerSocket(config.getPort());
-        this.serverSocket = new ServerSocket(config.getPort(), 50,
-    InetAddress.getByName(config.getBindAddress()));
-        this.threadPool = Executors.newFixedThreadPool(config.getMaxThreads());
+        if ("nio".equalsIgnoreCase(config.getEngine())) {
+            // pool threads only run request handlers; event loops do the socket I/O
+            this.serverSocket = null;
+            this.nioServer = new NioServer(
+                    new InetSocketAddress(InetAddress.getByName(config.getBindAddress()), config.getPort()),
+                    config.getNioEventLoops(), context, threadPool);
+        } else {
+            // opened as a channel so accepted sockets have one too, which
+            // file bodies are transferred to without a copy through the heap
+            this.serverSocket = ServerSocketChannel.open()
+                    .bind(new InetSocketAddress(InetAddress.getByName(config.getBindAddress()), config.getPort()), 50)
+                    .socket();
+            this.nioServer = null;
+        }
 
         Logger.info("Server initialized with:");
         Logger.info("Port: " + config.getPort());
         Logger.info("Web root: " + config.getWebRoot());
         Logger.info("Max threads: " + config.getMaxThreads());
+        Logger.info("Engine: " + (nioServer != null ? "nio" : "blocking") + ", executor: " + config.getExecutor());
     }
 
     public void start() {
@@ -39,6 +71,12 @@ public class Server {
         Thread metricsThread = new Thread(() -> {
             while(running){
                 Telemetry.trackServerMetrics(System.currentTimeMillis());
+                AzureBlobInterface blobs = AzureBlobInterface.getInstance();
+                Telemetry.trackGauge("blobPoolSize", blobs.getPoolSize());
+                Telemetry.trackGauge("blobInFlight", blobs.getInFlight());
+                Telemetry.trackGauge("queueDepth", admission.getQueueDepth());
+                Telemetry.trackGauge("inFlight", admission.getInFlight());
+                Telemetry.trackGauge("concurrencyLimit", context.getLimiter().getLimit());
                 try {
                     //tracks the threads every 30 seconds
                     Thread.sleep(30000); 
@@ -52,12 +90,24 @@ public class Server {
         metricsThread.setDaemon(true);
         metricsThread.start();
 
+        if (nioServer != null) {
+            nioServer.start();
+            Logger.info("Server has stopped");
+            return;
+        }
+
         while(running) {
             try {
                 Socket clientSocket = serverSocket.accept();
                 Logger.info("Connection received from " + clientSocket.getInetAddress());
 
-                ConnectionHandler handler = new ConnectionHandler(clientSocket);
+                // neither the pool's queue nor virtual threads are bounded: shed
+                // here rather than let them grow (admission.max_queue_depth / max_in_flight)
+                if (!admission.tryEnqueue()) {
+                    admission.shed(clientSocket);
+                    continue;
+                }
+                ConnectionHandler handler = new ConnectionHandler(clientSocket, context, System.nanoTime());
                 threadPool.execute(handler);
 
             } catch (IOException e) {
@@ -77,7 +127,11 @@ public class Server {
         try {
             //flushes remaining metrics before the server shuts down 
             Telemetry.trackServerMetrics(System.currentTimeMillis());
-            serverSocket.close();
+            if (nioServer != null) {
+                nioServer.stop();
+            } else {
+                serverSocket.close();
+            }
         } catch (IOException e) {
             Logger.error("Error closing server socket", e);
         }
@@ -0,0 +1,172 @@
+package com.webserver.core;
+
+import com.webserver.azure.AppFileCache;
+import com.webserver.azure.AzureBlobInterface;
+import com.webserver.http.Compressor;
+import com.webserver.http.RequestProcessor;
+import com.webserver.util.ConfigLoader;
+import com.webserver.util.DB;
+import com.webserver.util.FileService;
+import com.webserver.util.Logger;
+import com.webserver.util.MappedFileCache;
+import com.webserver.util.StaticFileCache;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * ServerContext - the long-lived runtime shared by every connection.
+ *
+ * Everything that used to be rebuilt in each ConnectionHandler constructor
+ * (config, FileService, RequestProcessor + script processors, the route table
+ * and the app routes loaded from SQL) is built here once at boot. The route
+ * table is thread-safe and is updated in place when apps are uploaded or deleted.
+ */
+public class ServerContext {
+
+    private final ConfigLoader config;
+    private final FileService fileService;
+    private final RequestProcessor processor;
+    private final ApiRoutes routes;
+    private final AdmissionController admission;
+    private final AdaptiveLimiter limiter;
+    private final FairScheduler scheduler;
+    private final TenantLimits limits;
+    private final RequestDispatcher dispatcher;
+
+    // keep-alive settings, parsed once rather than per connection
+    private final int idleTimeoutMillis;
+    private final int maxRequestsPerConnection;
+    private final int maxPipelinedRequests;
+
+    public ServerContext(ConfigLoader config, AzureBlobInterface azureInterface) {
+        this.config = config;
+        this.idleTimeoutMillis = config.getConnectionTimeout();
+        this.maxRequestsPerConnection = config.getMaxRequestsPerConnection();
+        this.maxPipelinedRequests = config.getMaxPipelinedRequests();
+        this.fileService = new FileService(config.getWebRoot());
+        this.processor = new RequestProcessor(fileService, staticFileCache(config, fileService),
+                new MappedFileCache(config.getStaticMmapThreshold(), config.getStaticMmapMaxBytes()),
+                config.isCompressionEnabled() ? new Compressor(config.getCompressionLevel(),
+                        config.getCompressionMinSize(), config.getCompressionCacheBytes()) : null);
+        this.admission = new AdmissionController(config.getMaxQueueDepth(),
+                config.getMaxQueueWaitMillis(), config.getRetryAfterSeconds(), config.getMaxInFlight());
+        this.limiter = limiter(config);
+        this.scheduler = new FairScheduler(limiter, config.getTenantWeights(), config.getTenantDefaultWeight(),
+                config.getTenantMaxQueued(), config.getMaxQueueWaitMillis());
+        this.limits = new TenantLimits(config.getTenantRateLimits(), config.getTenantDefaultRateLimit(),
+                config.getTenantBandwidthLimits(), config.getTenantDefaultBandwidthLimit());
+        this.routes = new ApiRoutes(processor, azureInterface, appFileCache(config, azureInterface),
+                admission, limiter);
+        this.dispatcher = new RequestDispatcher(processor, scheduler, limits, routes::tenantOf,
+                config.getRetryAfterSeconds());
+        routes.defineRoutes();
+    }
+
+    // With the platform executor at most max_threads requests are ever in
+    // process(): a limit above that never turns anyone away, and never moves
+    // either, since it only adapts while in flight is near it. So it is kept
+    // within the pool; with virtual threads there is no such ceiling.
+    private static AdaptiveLimiter limiter(ConfigLoader config) {
+        int maxLimit = config.getLimiterMaxLimit();
+        if (!"virtual".equalsIgnoreCase(config.getExecutor())) {
+            maxLimit = Math.min(maxLimit, config.getMaxThreads());
+        }
+        return new AdaptiveLimiter(Math.min(config.getLimiterInitialLimit(), maxLimit),
+                Math.min(config.getLimiterMinLimit(), maxLimit), maxLimit);
+    }
+
+    // the local disk tier in front of blob storage, if configured (and usable)
+    private static AppFileCache appFileCache(ConfigLoader config, AzureBlobInterface azureInterface) {
+        if (azureInterface == null || config.getAzureCacheMaxBytes() <= 0) {
+            return null;
+        }
+        try {
+            return new AppFileCache(azureInterface, Paths.get(config.getAzureCacheDir()),
+                    config.getAzureCacheMaxBytes(), config.getAzureCacheMaxEntryBytes(),
+                    config.getAzureCacheFillWaitMillis(), config.getAzureCacheRevalidateMillis());
+        } catch (IOException e) {
+            Logger.warn("Cannot use app file cache directory, app files are streamed from storage: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the webroot cache, watching the webroot if configured (and possible)
+    private static StaticFileCache staticFileCache(ConfigLoader config, FileService fileService) {
+        StaticFileCache cache = new StaticFileCache(fileService, config.getStaticCacheMaxBytes(),
+                config.getStaticCacheMaxEntryBytes(), config.getStaticCacheMissingPaths());
+        if (config.isStaticCacheWatch()) {
+            try {
+                cache.watch(Paths.get(config.getWebRoot()).toAbsolutePath().normalize());
+            } catch (IOException e) {
+                Logger.warn("Cannot watch webroot, static files are checked on every hit: " + e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Build the context for a starting server: API routes plus one route per
+     * app file already known to the database.
+     */
+    public static ServerContext boot(ConfigLoader config) {
+        ServerContext context = new ServerContext(config, AzureBlobInterface.getInstance());
+        List<DB.App> apps = DB.listAllApps();
+        context.routes.registerAppRoutes(apps);
+        Logger.info("Route table built with " + apps.size() + " apps");
+        return context;
+    }
+
+    public ConfigLoader getConfig() {
+        return config;
+    }
+
+    public FileService getFileService() {
+        return fileService;
+    }
+
+    public RequestProcessor getProcessor() {
+        return processor;
+    }
+
+    public ApiRoutes getRoutes() {
+        return routes;
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    public AdaptiveLimiter getLimiter() {
+        return limiter;
+    }
+
+    public FairScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public TenantLimits getLimits() {
+        return limits;
+    }
+
+    /** Entry point for parsed requests; wraps the processor with the concurrency limit. */
+    public RequestDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /** How long a persistent connection may sit idle between requests. */
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /** Requests served on one connection before it is closed. */
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /** Pipelined requests answered back to back before the connection is closed. */
+    public int getMaxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+}
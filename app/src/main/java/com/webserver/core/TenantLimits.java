@@ -0,0 +1,123 @@
+package com.webserver.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TenantLimits - enforced per-tenant quotas.
+ *
+ * tenant.rate_limits caps each tenant's requests per second (requests over it
+ * get 429), and tenant.bandwidth_limits caps the response bytes per second
+ * written for it. Both allow a burst of one second's worth. A tenant with no
+ * configured limit (and a default of 0) is not limited at all, and costs
+ * nothing but a map lookup.
+ */
+public class TenantLimits {
+
+    // responses are paced in pieces of this size, so a big body streams smoothly
+    static final int SHAPING_CHUNK = 16 * 1024;
+
+    private final Map<Integer, Double> requestRates;
+    private final double defaultRequestRate;
+    private final Map<Integer, Double> byteRates;
+    private final double defaultByteRate;
+
+    private final Map<Integer, TokenBucket> requestBuckets = new ConcurrentHashMap<>();
+    private final Map<Integer, TokenBucket> byteBuckets = new ConcurrentHashMap<>();
+
+    public TenantLimits(Map<Integer, Double> requestRates, double defaultRequestRate,
+                        Map<Integer, Double> byteRates, double defaultByteRate) {
+        this.requestRates = requestRates;
+        this.defaultRequestRate = defaultRequestRate;
+        this.byteRates = byteRates;
+        this.defaultByteRate = defaultByteRate;
+    }
+
+    /**
+     * Count one request against the tenant's rate. Returns 0 if it may go
+     * ahead, otherwise the nanoseconds until the tenant may send another.
+     */
+    public long tryRequest(int tenantId) {
+        TokenBucket bucket = bucket(requestBuckets, tenantId, requestRates, defaultRequestRate);
+        return bucket == null ? 0 : bucket.tryTake(1);
+    }
+
+    /**
+     * The tenant's outbound byte bucket, or null if its bandwidth is unlimited.
+     */
+    public TokenBucket bandwidth(int tenantId) {
+        return bucket(byteBuckets, tenantId, byteRates, defaultByteRate);
+    }
+
+    /**
+     * Wrap a blocking connection's output so writes for this tenant are paced
+     * to its bandwidth limit. Returns the stream itself if there is none.
+     */
+    public OutputStream shape(int tenantId, OutputStream out) {
+        TokenBucket bucket = bandwidth(tenantId);
+        return bucket == null ? out : new ShapedOutputStream(out, bucket);
+    }
+
+    private static TokenBucket bucket(Map<Integer, TokenBucket> buckets, int tenantId,
+                                      Map<Integer, Double> rates, double defaultRate) {
+        TokenBucket bucket = buckets.get(tenantId);
+        if (bucket == null) {
+            double rate = rates.getOrDefault(tenantId, defaultRate);
+            if (rate <= 0) {
+                return null;
+            }
+            bucket = buckets.computeIfAbsent(tenantId, id -> new TokenBucket(rate, Math.max(1, rate)));
+        }
+        return bucket;
+    }
+
+    /**
+     * Sleeps between chunks as needed to keep to the bucket's byte rate.
+     */
+    private static final class ShapedOutputStream extends FilterOutputStream {
+        private final TokenBucket bucket;
+
+        ShapedOutputStream(OutputStream out, TokenBucket bucket) {
+            super(out);
+            this.bucket = bucket;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            pause(bucket.take(1));
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, SHAPING_CHUNK);
+                long wait = bucket.take(n);
+                if (wait > 0) {
+                    // let the client have what is already written before pausing
+                    out.flush();
+                    pause(wait);
+                }
+                out.write(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private static void pause(long nanos) throws InterruptedIOException {
+            long deadline = System.nanoTime() + nanos;
+            while (nanos > 0) {
+                LockSupport.parkNanos(nanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Interrupted while shaping output");
+                }
+                nanos = deadline - System.nanoTime();
+            }
+        }
+    }
+}
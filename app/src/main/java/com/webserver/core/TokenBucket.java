@@ -0,0 +1,61 @@
+package com.webserver.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucket - a lock-free token bucket.
+ *
+ * Implemented as the equivalent "virtual scheduling" form (GCRA): the only
+ * state is the time at which the bucket would next be completely full again,
+ * advanced with a single CAS, so concurrent requests never block each other.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    // the instant the bucket refills to capacity; tokens are available while it is at most burstNanos ahead
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param tokensPerSecond refill rate
+     * @param capacity        most tokens that can be taken in one burst
+     */
+    public TokenBucket(double tokensPerSecond, double capacity) {
+        this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / tokensPerSecond));
+        this.burstNanos = (long) (capacity * nanosPerToken);
+    }
+
+    /**
+     * Take tokens if the bucket has them. Returns 0 on success; otherwise
+     * takes nothing and returns the nanoseconds until they would be there.
+     */
+    public long tryTake(long tokens) {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokens * nanosPerToken;
+            long wait = next - burstNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Take tokens whether or not the bucket has them, going into debt.
+     * Returns how long the caller should pause to stay within the rate.
+     */
+    public long take(long tokens) {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokens * nanosPerToken;
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, next - burstNanos - now);
+            }
+        }
+    }
+}
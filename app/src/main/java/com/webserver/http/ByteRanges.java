@@ -0,0 +1,328 @@
+package com.webserver.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.webserver.model.Headers;
+import com.webserver.model.HttpResponse;
+
+/**
+ * ByteRanges - Range and If-Range requests, for webroot files and app files
+ * in blob storage alike.
+ *
+ * parse() turns a Range header into the byte ranges to send from a body of
+ * known length. One range is sent as the 206 body itself, from wherever the
+ * body lives; several as a multipart/byteranges body (Multipart) whose parts
+ * are opened one after the other as it is written, so for a blob only the
+ * requested bytes are ever downloaded.
+ */
+public final class ByteRanges {
+
+    // More ranges than this in one request and the whole body is sent instead
+    static final int MAX_RANGES = 16;
+
+    // One per process; a part would have to contain it to be misread
+    private static final String BOUNDARY = "BYTERANGES_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private ByteRanges() {
+    }
+
+    /** Bytes start to end of a body, both inclusive. */
+    public record Range(long start, long end) {
+        public long length() {
+            return end - start + 1;
+        }
+    }
+
+    /** Opens 'length' bytes of a body from 'start' on. */
+    @FunctionalInterface
+    public interface RangeSource {
+        InputStream open(long start, long length) throws IOException;
+    }
+
+    /**
+     * The ranges a Range header asks for in a body of 'length' bytes, sorted,
+     * with overlapping and adjacent ones merged. Returns null if the whole
+     * body should be sent instead (no header, not in bytes, malformed, or too
+     * many ranges), and an empty list if none of them is satisfiable (416).
+     */
+    public static List<Range> parse(String header, long length) {
+        if (header == null || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<Range> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // "-n": the last n bytes
+                    long suffix = parseLength(last);
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = parseLength(first);
+                    end = last.isEmpty() ? length - 1 : Math.min(parseLength(last), length - 1);
+                    if (!last.isEmpty() && parseLength(last) < start) {
+                        return null;
+                    }
+                }
+                if (start < length) {
+                    ranges.add(new Range(start, end));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return merge(ranges);
+    }
+
+    /**
+     * Whether an If-Range condition holds for a body with this ETag and
+     * last-modified time (ms, or -1 if unknown), so the Range may be
+     * honoured. An absent condition holds; a weak ETag never matches.
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) {
+            return etag != null && !etag.startsWith("W/") && etag.equals(ifRange);
+        }
+        if (ifRange.startsWith("W/") || lastModified < 0) {
+            return false;
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return date == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /** Content-Range value for one range of a body of 'length' bytes. */
+    public static String contentRange(Range range, long length) {
+        return "bytes " + range.start() + "-" + range.end() + "/" + length;
+    }
+
+    /** 416 for a Range that asks for nothing inside a body of 'length' bytes. */
+    public static HttpResponse.Builder notSatisfiable(long length) {
+        return new HttpResponse.Builder()
+                .setStatusCode(416)
+                .addHeader(Headers.CONTENT_RANGE, "bytes */" + length);
+    }
+
+    private static long parseLength(String digits) {
+        if (digits.isEmpty() || digits.charAt(0) == '+') {
+            throw new NumberFormatException("not a length: " + digits);
+        }
+        long value = Long.parseLong(digits);
+        if (value < 0) {
+            throw new NumberFormatException("not a length: " + digits);
+        }
+        return value;
+    }
+
+    private static List<Range> merge(List<Range> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(Range::start));
+        List<Range> merged = new ArrayList<>(ranges.size());
+        Range current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            Range next = ranges.get(i);
+            if (next.start() <= current.end() + 1) {
+                current = new Range(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * A multipart/byteranges body for several ranges. Its length is known up
+     * front; each part is opened from the RangeSource only when the body has
+     * been written up to it, and closed once its bytes are sent.
+     */
+    public static final class Multipart implements HttpResponse.BodySource {
+        private final List<Range> ranges;
+        private final RangeSource source;
+        // the file every part is read from, closed with the body; null for a RangeSource
+        private final FileChannel file;
+        // heads[i] goes before part i; the last one closes the body
+        private final byte[][] heads;
+        private final long length;
+
+        public Multipart(List<Range> ranges, long bodyLength, String contentType, RangeSource source) {
+            this(ranges, bodyLength, contentType, source, null);
+        }
+
+        /**
+         * Parts read from a file opened by the caller, each at its own
+         * position, so deleting the file while the body is written cannot cut
+         * it short. The file is closed when the body is; the body is to be
+         * opened once.
+         */
+        public Multipart(List<Range> ranges, long bodyLength, String contentType, FileChannel file) {
+            this(ranges, bodyLength, contentType, (start, length) -> new FilePart(file, start), file);
+        }
+
+        private Multipart(List<Range> ranges, long bodyLength, String contentType, RangeSource source,
+                          FileChannel file) {
+            this.ranges = ranges;
+            this.source = source;
+            this.file = file;
+            this.heads = new byte[ranges.size() + 1][];
+            long total = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                String head = (i == 0 ? "" : "\r\n") + "--" + BOUNDARY + "\r\n" +
+                        Headers.CONTENT_TYPE + ": " + contentType + "\r\n" +
+                        Headers.CONTENT_RANGE + ": " + contentRange(ranges.get(i), bodyLength) + "\r\n\r\n";
+                heads[i] = head.getBytes(StandardCharsets.ISO_8859_1);
+                total += heads[i].length + ranges.get(i).length();
+            }
+            heads[ranges.size()] = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            this.length = total + heads[ranges.size()].length;
+        }
+
+        /** The Content-Type of the response: multipart/byteranges with its boundary. */
+        public String contentType() {
+            return "multipart/byteranges; boundary=" + BOUNDARY;
+        }
+
+        /** Bytes in the whole body. */
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public InputStream open() {
+            return new PartStream();
+        }
+
+        // heads and parts in turn: even segments are heads, odd ones parts
+        private final class PartStream extends InputStream {
+            private int segment;
+            private int headAt;
+            private InputStream part;
+            private long partLeft;
+            private final byte[] one = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (segment <= 2 * ranges.size()) {
+                    if (segment % 2 == 0) {
+                        byte[] head = heads[segment / 2];
+                        if (headAt < head.length) {
+                            int n = Math.min(len, head.length - headAt);
+                            System.arraycopy(head, headAt, b, off, n);
+                            headAt += n;
+                            return n;
+                        }
+                    } else {
+                        if (part == null) {
+                            Range range = ranges.get(segment / 2);
+                            part = source.open(range.start(), range.length());
+                            if (part == null) {
+                                throw new IOException("Byte range " + range.start() + "-" + range.end() + " could not be opened");
+                            }
+                            partLeft = range.length();
+                        }
+                        if (partLeft > 0) {
+                            int n = part.read(b, off, (int) Math.min(len, partLeft));
+                            if (n < 0) {
+                                throw new IOException("Byte range ended " + partLeft + " bytes short");
+                            }
+                            partLeft -= n;
+                            return n;
+                        }
+                        part.close();
+                        part = null;
+                    }
+                    segment++;
+                    headAt = 0;
+                }
+                return -1;
+            }
+
+            @Override
+            public void close() throws IOException {
+                InputStream open = part;
+                part = null;
+                segment = 2 * ranges.size() + 1;
+                try {
+                    if (open != null) {
+                        open.close();
+                    }
+                } finally {
+                    if (file != null) {
+                        file.close();
+                    }
+                }
+            }
+        }
+    }
+
+    // A file from 'position' on, read without moving (or closing) the shared channel
+    private static final class FilePart extends InputStream {
+        private final FileChannel file;
+        private long position;
+
+        FilePart(FileChannel file, long position) {
+            this.file = file;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = file.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.webserver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.webserver.model.Headers;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.StaticFileCache;
+
+/**
+ * Compressor - Content-Encoding for responses: Accept-Encoding negotiation,
+ * gzip on the fly, and compressed variants of static files.
+ *
+ * A dynamic response (a handler's body, an app file streamed from storage)
+ * of a compressible type and at least minSize bytes is gzipped: a body held
+ * in memory up front, so it keeps its Content-Length; a streamed one through
+ * GzipStream as it is read, so it is sent chunked and never held whole.
+ *
+ * A static file is sent as its precompressed sibling (name.br or name.gz)
+ * when the client accepts that coding and the sibling is not older than the
+ * file. Otherwise it is gzipped once per file version (ETag) and the result
+ * kept in a cache of cacheBytes, least recently used out first. So is an
+ * app file's local copy (encodeFile), rather than gzipped on every request.
+ *
+ * Every response that could have been compressed says Vary: Accept-Encoding,
+ * and a compressed one's ETag is made weak: its bytes differ from the
+ * uncompressed ones, and If-None-Match (weak comparison) still revalidates
+ * it against the same tag. Brotli is only served precompressed, as the JDK
+ * has no Brotli encoder.
+ */
+public class Compressor {
+
+    public static final String GZIP = "gzip";
+    public static final String BROTLI = "br";
+
+    // A file larger than this share of the cache is not gzipped on the fly
+    private static final int MAX_CACHED_SHARE = 16;
+
+    // At or above this ratio of compressed to original size, compressing is not worth it
+    private static final double WORTHWHILE = 0.9;
+
+    private final int level;
+    private final long minSize;
+    private final long cacheBytes;
+
+    private final ConcurrentHashMap<Path, Cached> cache = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder precompressed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * level: gzip level, 1 (fast) to 9 (small).
+     * minSize: smallest body compressed, in bytes.
+     * cacheBytes: total size of the gzipped static files kept.
+     */
+    public Compressor(int level, long minSize, long cacheBytes) {
+        this.level = level;
+        this.minSize = minSize;
+        this.cacheBytes = cacheBytes;
+    }
+
+    /** A static file's body as sent: its coding, and a file or the bytes to send. */
+    public record Variant(String coding, Path file, long size, byte[] bytes) {}
+
+    /**
+     * The compressed variant of a static file to send for this request, or
+     * null to send the file as it is. The entry's ETag identifies the file's
+     * version; its contents, when held, are gzipped without reading the file.
+     */
+    public Variant encodeStatic(HttpRequest request, StaticFileCache.Entry entry) throws IOException {
+        String accept = request.getHeader(Headers.ACCEPT_ENCODING);
+        if (accept == null || !negotiable(entry.mimeType(), entry.size())) {
+            return null;
+        }
+        Path file = entry.file();
+        if (accepts(accept, BROTLI)) {
+            Variant brotli = sibling(file, entry.lastModified(), ".br", BROTLI);
+            if (brotli != null) {
+                return brotli;
+            }
+        }
+        if (!accepts(accept, GZIP)) {
+            return null;
+        }
+        Variant gzip = sibling(file, entry.lastModified(), ".gz", GZIP);
+        if (gzip != null) {
+            return gzip;
+        }
+        if (entry.size() > cacheBytes / MAX_CACHED_SHARE) {
+            return null;
+        }
+        return cachedGzip(file, entry.etag(), entry.content());
+    }
+
+    /**
+     * Whether a file of this type and size is gzipped once per version and
+     * cached, like a static file, by encodeFile().
+     */
+    public boolean cachesGzip(String contentType, long size) {
+        return negotiable(contentType, size) && size <= cacheBytes / MAX_CACHED_SHARE;
+    }
+
+    /**
+     * The gzip of a whole file identified by its ETag, from the cache, for a
+     * response its caller builds; e.g. an app file's local copy. Null to send
+     * it as it is: the client does not take gzip, or it does not compress
+     * well; and null for a file without an ETag, as nothing would tell its
+     * versions apart in the cache. Only for a file cachesGzip() is true of.
+     */
+    public Variant encodeFile(HttpRequest request, Path file, String etag) throws IOException {
+        if (etag == null || !accepts(request.getHeader(Headers.ACCEPT_ENCODING), GZIP)) {
+            return null;
+        }
+        return cachedGzip(file, etag, null);
+    }
+
+    // The file's gzip for this version, gzipped and cached on a miss; null if not worthwhile
+    private Variant cachedGzip(Path file, String etag, byte[] content) throws IOException {
+        Cached cached = cache.get(file);
+        if (cached != null && cached.etag.equals(etag)) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+            cached = new Cached(etag, worthwhile(content != null ? content : Files.readAllBytes(file)));
+            Cached old = cache.put(file, cached);
+            if (old != null) {
+                cachedBytes.addAndGet(-old.size());
+            }
+            cachedBytes.addAndGet(cached.size());
+            evict();
+        }
+        cached.lastUsed = System.nanoTime();
+        if (cached.gzip == null) {
+            return null;
+        }
+        compressed.increment();
+        return new Variant(GZIP, null, cached.gzip.length, cached.gzip);
+    }
+
+    /**
+     * The response gzipped if the request accepts it and it is worth it;
+     * with Vary: Accept-Encoding if it could have been. Otherwise response.
+     */
+    public HttpResponse encode(HttpRequest request, HttpResponse response) {
+        int status = response.getStatusCode();
+        Headers headers = response.getHeaders();
+        if (status < 200 || status >= 300 || status == 204 || status == 206
+                || response.getBodyFile() != null || response.getBodyBuffer() != null
+                || headers.contains(Headers.CONTENT_ENCODING)
+                || Headers.ACCEPT_ENCODING.equalsIgnoreCase(headers.first(Headers.VARY)) // negotiated already
+                || !compressible(headers.first(Headers.CONTENT_TYPE))) {
+            return response;
+        }
+        HttpResponse.BodySource source = response.getBodySource();
+        byte[] body = null;
+        if (source == null) {
+            body = response.getRawBody() != null ? response.getRawBody()
+                    : response.getBody().getBytes(StandardCharsets.UTF_8);
+        }
+        long length = body != null ? body.length : response.getBodyLength();
+        if (length >= 0 && length < minSize) {
+            return response;
+        }
+
+        HttpResponse.Builder builder = HttpResponse.Builder.from(response)
+                .addHeader(Headers.VARY, Headers.ACCEPT_ENCODING);
+        if (!accepts(request.getHeader(Headers.ACCEPT_ENCODING), GZIP)) {
+            return builder.build();
+        }
+        if (body != null) {
+            byte[] gzip = worthwhile(body);
+            if (gzip == null) {
+                return builder.build();
+            }
+            builder.setRawBody(gzip);
+        } else {
+            // compressed as it is read; the length is only known at the end
+            builder.setBodySource(() -> {
+                InputStream in = source.open();
+                return in != null ? new GzipStream(in) : null;
+            }, -1);
+        }
+        compressed.increment();
+        builder.removeHeader(Headers.CONTENT_LENGTH)
+                .addHeader(Headers.CONTENT_ENCODING, GZIP);
+        String etag = headers.first(Headers.ETAG);
+        if (etag != null && !etag.startsWith("W/")) {
+            builder.removeHeader(Headers.ETAG).addHeader(Headers.ETAG, "W/" + etag);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Whether a body of this type and size is sent compressed to clients
+     * that accept it, so its responses vary on Accept-Encoding.
+     */
+    public boolean negotiable(String contentType, long size) {
+        return compressible(contentType) && size >= minSize;
+    }
+
+    /** Whether a body of this Content-Type is worth compressing. */
+    public static boolean compressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        return type.startsWith("text/") || type.contains("json") || type.contains("javascript")
+                || type.contains("xml") || type.contains("svg");
+    }
+
+    /**
+     * Whether an Accept-Encoding header accepts a coding: named, or matched
+     * by "*", with a q-value above 0.
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double named = -1;
+        double wildcard = -1;
+        for (String item : acceptEncoding.split(",")) {
+            String[] parts = item.split(";");
+            String name = parts[0].trim();
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding)) {
+                named = q;
+            } else if (name.equals("*")) {
+                wildcard = q;
+            }
+        }
+        return named >= 0 ? named > 0 : wildcard > 0;
+    }
+
+    /** Responses sent compressed on the fly, static variants included. */
+    public long getCompressed() {
+        return compressed.sum();
+    }
+
+    /** Static files sent as a precompressed sibling. */
+    public long getPrecompressed() {
+        return precompressed.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /** Bytes of gzipped static files held. */
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    /** Compressed bytes per original byte over everything gzipped so far (1 if none). */
+    public double getRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 1 : (double) bytesOut.sum() / in;
+    }
+
+    // name.gz or name.br, if it exists and is at least as new as the file itself
+    private Variant sibling(Path file, long lastModified, String suffix, String coding) throws IOException {
+        Path sibling = file.resolveSibling(file.getFileName() + suffix);
+        BasicFileAttributes siblingAttributes;
+        try {
+            siblingAttributes = Files.readAttributes(sibling, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!siblingAttributes.isRegularFile()
+                || siblingAttributes.lastModifiedTime().toMillis() < lastModified) {
+            return null; // stale: left over from an older version of the file
+        }
+        precompressed.increment();
+        return new Variant(coding, sibling, siblingAttributes.size(), null);
+    }
+
+    // gzip of body, or null if that would not save enough to be worth it
+    private byte[] worthwhile(byte[] body) {
+        byte[] gzip;
+        try (InputStream in = new GzipStream(new ByteArrayInputStream(body))) {
+            gzip = in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("gzip of an in-memory body failed", e);
+        }
+        return gzip.length < body.length * WORTHWHILE ? gzip : null;
+    }
+
+    // Drop least recently used variants until the cache is back within cacheBytes
+    private void evict() {
+        if (cachedBytes.get() <= cacheBytes || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<Path, Cached>> byAge = new ArrayList<>(cache.entrySet());
+            byAge.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+            for (Map.Entry<Path, Cached> entry : byAge) {
+                if (cachedBytes.get() <= cacheBytes) {
+                    break;
+                }
+                if (cache.remove(entry.getKey(), entry.getValue())) {
+                    cachedBytes.addAndGet(-entry.getValue().size());
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // A static file's gzip for one version; gzip is null if it did not compress well
+    private static final class Cached {
+        final String etag;
+        final byte[] gzip;
+        volatile long lastUsed = System.nanoTime();
+
+        Cached(String etag, byte[] gzip) {
+            this.etag = etag;
+            this.gzip = gzip;
+        }
+
+        long size() {
+            return gzip != null ? gzip.length : 0;
+        }
+    }
+
+    /**
+     * Reads as the gzip (RFC 1952) of another stream, compressing as it goes:
+     * header, deflate data, then CRC-32 and length once the source ends.
+     */
+    final class GzipStream extends InputStream {
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final InputStream source;
+        private final Deflater deflater = new Deflater(level, true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[8192];
+        private final byte[] trailer = new byte[8];
+        private final byte[] one = new byte[1];
+        private int headerAt;
+        private int trailerAt = -1; // -1 until the deflate data is done
+        private long read;
+        private long written;
+        private boolean closed;
+
+        GzipStream(InputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (headerAt < HEADER.length) {
+                int n = Math.min(len, HEADER.length - headerAt);
+                System.arraycopy(HEADER, headerAt, b, off, n);
+                headerAt += n;
+                written += n;
+                return n;
+            }
+            while (trailerAt < 0) {
+                int n = deflater.deflate(b, off, len);
+                if (n > 0) {
+                    written += n;
+                    return n;
+                }
+                if (deflater.finished()) {
+                    writeTrailer();
+                } else if (deflater.needsInput()) {
+                    int got = source.read(input);
+                    if (got < 0) {
+                        deflater.finish();
+                    } else {
+                        crc.update(input, 0, got);
+                        deflater.setInput(input, 0, got);
+                        read += got;
+                    }
+                }
+            }
+            if (trailerAt < trailer.length) {
+                int n = Math.min(len, trailer.length - trailerAt);
+                System.arraycopy(trailer, trailerAt, b, off, n);
+                trailerAt += n;
+                written += n;
+                return n;
+            }
+            return -1;
+        }
+
+        private void writeTrailer() {
+            long sum = crc.getValue();
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (sum >>> (8 * i));
+                trailer[4 + i] = (byte) (read >>> (8 * i));
+            }
+            trailerAt = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            deflater.end();
+            bytesIn.add(read);
+            bytesOut.add(written);
+            source.close();
+        }
+    }
+}
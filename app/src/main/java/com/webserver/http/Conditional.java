@@ -0,0 +1,94 @@
+package com.webserver.http;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import com.webserver.model.Headers;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+
+/**
+ * Conditional - If-None-Match / If-Modified-Since revalidation (RFC 9110
+ * section 13) against a body's ETag and last-modified time.
+ *
+ * Callers get the validators from metadata alone (a file's attributes and
+ * cached hash, a blob's properties), so a 304 costs no body read.
+ */
+public final class Conditional {
+
+    // IMF-fixdate: "Sun, 06 Nov 1994 08:49:37 GMT" (RFC_1123_DATE_TIME would drop the day's leading zero)
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private Conditional() {
+    }
+
+    /** A time in ms as an HTTP date, e.g. for Last-Modified. */
+    public static String httpDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Whether the client's copy is current, so a GET can be answered 304.
+     * If-None-Match decides when it is present (weak comparison, "*" matches
+     * anything); otherwise If-Modified-Since, to the second. lastModified is
+     * in ms, -1 if not known.
+     */
+    public static boolean notModified(HttpRequest request, String etag, long lastModified) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader(Headers.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etag != null && matchesAny(ifNoneMatch, etag);
+        }
+        String ifModifiedSince = request.getHeader(Headers.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || lastModified < 0) {
+            return false;
+        }
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return lastModified / 1000 <= since;
+        } catch (DateTimeParseException e) {
+            return false; // an invalid date is ignored
+        }
+    }
+
+    /**
+     * 304 for a current copy: no body, only the validators (and whatever the
+     * caller adds, such as the headers a 200 would vary on). The ETag is
+     * weak if the client's copy had it weak, i.e. was a compressed variant.
+     */
+    public static HttpResponse.Builder notModifiedResponse(HttpRequest request, String etag, long lastModified) {
+        HttpResponse.Builder builder = new HttpResponse.Builder().setStatusCode(304);
+        if (etag != null) {
+            String ifNoneMatch = request.getHeader(Headers.IF_NONE_MATCH);
+            boolean weak = !etag.startsWith("W/") && ifNoneMatch != null && ifNoneMatch.contains("W/" + etag);
+            builder.addHeader(Headers.ETAG, weak ? "W/" + etag : etag);
+        }
+        if (lastModified >= 0) {
+            builder.addHeader(Headers.LAST_MODIFIED, httpDate(lastModified));
+        }
+        return builder;
+    }
+
+    // "a", W/"b", "c" against one ETag, ignoring W/ on either side
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaque(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -1,13 +1,37 @@
 package com.webserver.http;
 
+import com.webserver.model.Headers;
 import com.webserver.model.HttpRequest;
-import com.webserver.util.Logger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * HttpParser - reads HTTP/1.1 requests off a connection.
+ *
+ * One parser belongs to one connection. Socket reads go into a read buffer in
+ * bulk, and whatever is left over after a request (the start of the next
+ * pipelined request) stays in that buffer for the next parse() call.
+ *
+ * The header block is scanned in place (no String per line) and handed to the
+ * request as Headers that decode a header only when it is asked for.
+ * tryParse() works on heap and direct buffers alike.
+ */
 public class HttpParser {
 
+    // Initial read buffer; it only grows for unusually large header blocks
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // Requests whose request line + headers exceed this are rejected
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+    // Longest chunk-size line (with extensions) or trailer line accepted in a chunked body
+    private static final int MAX_CHUNK_LINE = 4 * 1024;
+
+    private static final String HTTP_1_1 = "HTTP/1.1";
+    private static final String HTTP_1_0 = "HTTP/1.0";
+
     public enum HttpMethod {
         GET, POST, PUT, DELETE, PATCH, HEAD, OPTIONS;
         public static HttpMethod fromString(String method) {
@@ -19,104 +43,711 @@ public class HttpParser {
         }
     }
 
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    /** A request bigger than the caller of tryParse() is willing to buffer. */
+    public static class RequestTooLargeException extends IOException {
+        public RequestTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    // Bytes read from the connection but not parsed yet, kept in read mode
+    private ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+    // Scratch space for finding the end of a header block
+    private final byte[] scanChunk = new byte[512];
+
+    // The stream parse() was last called with, and the body of the request it returned
+    private InputStream input;
+    private BodyStream body;
+    // Decoded size of the last chunked body scanChunked() found complete
+    private int chunkedLength;
+    // Whether the last request returned framed its body ambiguously
+    private boolean closeRequired;
+
+    /**
+     * Parse the next request from the stream.
+     *
+     * On a persistent connection this is called repeatedly on the same stream,
+     * so it returns null (rather than throwing) when the client has closed the
+     * connection cleanly between two requests.
+     *
+     * The body is not read here: the request gets it as a stream over this
+     * connection (see HttpRequest.getBodyStream()). Whatever of it is still
+     * unread when parse() is called again is skipped first.
+     */
     public HttpRequest parse(InputStream input) throws IOException {
+        this.input = input;
+        skipBody(Long.MAX_VALUE);
+        if (!readBuffer.hasRemaining() && readBuffer.capacity() > BUFFER_SIZE) {
+            readBuffer = ByteBuffer.allocate(BUFFER_SIZE).flip(); // drop a grown buffer
+        }
+        while (true) {
+            // 1) Try to parse a full request line + headers from what we have
+            RequestHead head = parseHead(readBuffer);
+            if (head != null) {
+                readBuffer.position(readBuffer.position() + head.headLength);
+                closeRequired = head.conflictingFraming;
+                return buildRequest(head, openBody(head));
+            }
 
-        // 1) Read the request line
-        String requestLine = readRawLine(input);
-        if (requestLine == null || requestLine.isEmpty()) {
-            throw new IOException("Empty or invalid request line");
+            // 2) Not there yet: read more from the socket
+            if (!fill(input)) {
+                if (!readBuffer.hasRemaining() || isBlank(readBuffer)) {
+                    return null; // connection closed, no more requests
+                }
+                throw new IOException("Unexpected end of stream in request headers");
+            }
         }
+    }
 
-        // parse something like: POST /api/applications HTTP/1.1
-        String[] parts = requestLine.split(" ");
-        if (parts.length != 3) {
-            throw new IOException("Malformed request line: " + requestLine);
+    /**
+     * Parse one complete request that is already in the buffer, advancing its
+     * position past it. Returns null, leaving the buffer untouched, if the
+     * request (including its body) has not fully arrived yet.
+     */
+    public HttpRequest tryParse(ByteBuffer buffer) throws IOException {
+        return tryParse(buffer, Integer.MAX_VALUE);
+    }
+
+    /**
+     * tryParse(), for a caller that buffers whole requests: throws
+     * RequestTooLargeException as soon as the request is known to take more
+     * than maxRequestBytes (head and body), from its Content-Length or from
+     * the chunked body buffered so far.
+     */
+    public HttpRequest tryParse(ByteBuffer buffer, int maxRequestBytes) throws IOException {
+        RequestHead head = parseHead(buffer);
+        if (head == null) {
+            return null;
+        }
+        int bodyStart = buffer.position() + head.headLength;
+        if ((long) head.headLength + head.contentLength > maxRequestBytes) {
+            throw new RequestTooLargeException("Content-Length " + head.contentLength + " over " + maxRequestBytes);
+        }
+        byte[] body;
+        if (head.chunked) {
+            int end = scanChunked(buffer, bodyStart, null);
+            if ((end < 0 ? buffer.limit() : end) - buffer.position() > maxRequestBytes) {
+                throw new RequestTooLargeException("Chunked request over " + maxRequestBytes + " bytes");
+            }
+            if (end < 0) {
+                return null;
+            }
+            body = new byte[chunkedLength];
+            scanChunked(buffer, bodyStart, body);
+            buffer.position(end);
+        } else {
+            if (buffer.limit() - bodyStart < head.contentLength) {
+                return null;
+            }
+            buffer.position(bodyStart);
+            body = new byte[head.contentLength];
+            buffer.get(body);
         }
-        HttpMethod method = HttpMethod.fromString(parts[0]);
-        if (method == null) {
-            throw new IOException("Unsupported HTTP method: " + parts[0]);
+        closeRequired = head.conflictingFraming;
+        return buildRequest(head, body);
+    }
+
+    /**
+     * True if bytes of a further request were read along with the last one,
+     * i.e. the client is pipelining. Only meaningful once the last request's
+     * body has been read or skipped.
+     */
+    public boolean hasBufferedInput() {
+        return (body == null || body.done) && readBuffer.hasRemaining() && !isBlank(readBuffer);
+    }
+
+    /**
+     * True if the connection must be closed after answering the request
+     * last returned: it sent both Transfer-Encoding and Content-Length, so
+     * whatever follows its body may be a request smuggled past another hop.
+     */
+    public boolean isCloseRequired() {
+        return closeRequired;
+    }
+
+    /**
+     * Read and drop whatever is still unread of the body of the request
+     * parse() last returned, as long as that is at most maxBytes. Returns
+     * false if there was more, in which case the connection has to be closed
+     * since the next request cannot be found.
+     */
+    public boolean skipBody(long maxBytes) throws IOException {
+        return body == null || body.skipRest(maxBytes);
+    }
+
+    /**
+     * Bytes of the last request's body read so far by its handler or
+     * skipBody() (decoded, for a chunked body).
+     */
+    public long getBodyLength() {
+        return body == null ? 0 : body.consumed;
+    }
+
+    private BodyStream openBody(RequestHead head) {
+        if (head.chunked) {
+            body = new ChunkedBody();
+        } else if (head.contentLength > 0) {
+            body = new FixedLengthBody(head.contentLength);
+        } else {
+            body = null;
         }
-        String path = parts[1];
-        String httpVersion = parts[2]; // not heavily used right now
+        return body;
+    }
 
-        // 2) Read headers until a blank line
-        Map<String, List<String>> headersMap = new HashMap<>();
-        while (true) {
-            String line = readRawLine(input);
-            if (line == null || line.isEmpty()) {
-                // blank line -> done reading headers
-                break;
+    /**
+     * Copy body bytes from the read buffer, or the stream once it is empty.
+     * Big reads go straight from the stream into b. Returns -1 at EOF.
+     */
+    private int readConnection(byte[] b, int off, int len) throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            if (len >= BUFFER_SIZE) {
+                return input.read(b, off, len);
             }
-            // parse "HeaderName: value"
-            int colonPos = line.indexOf(':');
-            if (colonPos > 0) {
-                String hdrName = line.substring(0, colonPos).trim();
-                String hdrValue = line.substring(colonPos + 1).trim();
-                headersMap.computeIfAbsent(hdrName, k -> new ArrayList<>()).add(hdrValue);
+            if (!fill(input)) {
+                return -1;
             }
         }
+        int n = Math.min(len, readBuffer.remaining());
+        readBuffer.get(b, off, n);
+        return n;
+    }
 
-        // 3) Figure out Content-Length
-        int contentLength = 0;
-        for (Map.Entry<String, List<String>> e : headersMap.entrySet()) {
-            if ("Content-Length".equalsIgnoreCase(e.getKey())) {
-                contentLength = Integer.parseInt(e.getValue().get(0));
-                break;
+    private int readConnectionByte() throws IOException {
+        if (!readBuffer.hasRemaining() && !fill(input)) {
+            return -1;
+        }
+        return readBuffer.get() & 0xff;
+    }
+
+    /**
+     * Read whatever the stream has into the free space of the buffer,
+     * growing it (up to MAX_HEADER_SIZE) when a header block does not fit.
+     * Returns false on EOF.
+     */
+    private boolean fill(InputStream input) throws IOException {
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= MAX_HEADER_SIZE) {
+                readBuffer.flip();
+                throw new IOException("Request header too large");
             }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, MAX_HEADER_SIZE));
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+        int n;
+        try {
+            n = input.read(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), readBuffer.remaining());
+        } finally {
+            readBuffer.flip();
+        }
+        if (n > 0) {
+            readBuffer.limit(readBuffer.limit() + n);
         }
+        return n != -1;
+    }
+
+    /**
+     * Request line and headers, if the whole header block is in the buffer.
+     * Does not move the buffer's position.
+     *
+     * The block is scanned in place and copied out once; header names and
+     * values are only located here and decoded later, by Headers, if a
+     * handler asks for them.
+     */
+    private RequestHead parseHead(ByteBuffer buffer) throws IOException {
+        int pos = buffer.position();
+        int limit = buffer.limit();
 
-        // 4) Read the body (raw bytes)
-        byte[] bodyBytes = new byte[0];
-        if (contentLength > 0) {
-            bodyBytes = new byte[contentLength];
-            int totalRead = 0;
-            while (totalRead < contentLength) {
-                int n = input.read(bodyBytes, totalRead, contentLength - totalRead);
-                if (n == -1) {
-                    // connection closed early
-                    throw new IOException("Unexpected end of stream: expected " +
-                            contentLength + " bytes, got " + totalRead);
+        // Skip stray CRLFs some clients send after a request body (RFC 9112 section 2.2)
+        while (pos < limit && (buffer.get(pos) == '\r' || buffer.get(pos) == '\n')) {
+            pos++;
+        }
+
+        // 1) Wait for the blank line that ends the header block
+        int headEnd = findHeadEnd(buffer, pos, limit);
+        if (headEnd < 0) {
+            checkHeaderSize(limit - buffer.position());
+            return null;
+        }
+        RequestHead head = new RequestHead();
+        head.headLength = headEnd - buffer.position();
+        byte[] bytes = new byte[headEnd - pos];
+        buffer.get(pos, bytes);
+
+        // 2) Request line, e.g. POST /api/applications HTTP/1.1
+        int lineEnd = indexOf(bytes, '\n', 0, bytes.length);
+        parseRequestLine(bytes, contentEnd(bytes, 0, lineEnd), head);
+
+        // 3) "Name: value" lines up to the blank one; lines without a colon are ignored
+        int[] fields = new int[16 * 4];
+        int count = 0;
+        for (int lineStart = lineEnd + 1; ; lineStart = lineEnd + 1) {
+            lineEnd = indexOf(bytes, '\n', lineStart, bytes.length);
+            int end = contentEnd(bytes, lineStart, lineEnd);
+            if (end == lineStart) {
+                break; // blank line -> done reading headers
+            }
+            int colon = indexOf(bytes, ':', lineStart, end);
+            if (colon <= lineStart) {
+                continue;
+            }
+            if (4 * count == fields.length) {
+                fields = Arrays.copyOf(fields, fields.length * 2);
+            }
+            int f = 4 * count++;
+            fields[f] = skipSpace(bytes, lineStart, colon);
+            fields[f + 1] = trimSpace(bytes, fields[f], colon);
+            fields[f + 2] = skipSpace(bytes, colon + 1, end);
+            fields[f + 3] = trimSpace(bytes, fields[f + 2], end);
+
+            // 4) Figure out Content-Length; repeats must agree (RFC 9112 section 6.3),
+            //    or one hop may frame the body differently from the next
+            if (Headers.equalsIgnoreCase(bytes, fields[f], fields[f + 1], Headers.CONTENT_LENGTH)) {
+                int length = parseLength(bytes, fields[f + 2], fields[f + 3]);
+                if (head.contentLength >= 0 && head.contentLength != length) {
+                    throw new IOException("Conflicting Content-Length: " + head.contentLength + ", " + length);
+                }
+                head.contentLength = length;
+            }
+            // ...or whether the body comes in chunks, which wins over Content-Length
+            if (Headers.equalsIgnoreCase(bytes, fields[f], fields[f + 1], Headers.TRANSFER_ENCODING)) {
+                if (!Headers.equalsIgnoreCase(bytes, fields[f + 2], fields[f + 3], "chunked")) {
+                    throw new IOException("Unsupported Transfer-Encoding: " + decode(bytes, fields[f + 2], fields[f + 3]));
                 }
-                totalRead += n;
+                head.chunked = true;
             }
         }
+        head.headers = new Headers(bytes, fields, count);
+        // chunked and a Content-Length: the body is read as chunked, but the
+        // connection cannot be trusted after it (RFC 9112 section 6.1)
+        head.conflictingFraming = head.chunked && head.contentLength >= 0;
+        if (head.contentLength < 0 || head.chunked) {
+            head.contentLength = 0;
+        }
+        return head;
+    }
+
+    private static void parseRequestLine(byte[] bytes, int end, RequestHead head) throws IOException {
+        int firstSpace = indexOf(bytes, ' ', 0, end);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf(bytes, ' ', firstSpace + 1, end);
+        if (firstSpace <= 0 || secondSpace <= firstSpace + 1 || secondSpace == end - 1
+                || indexOf(bytes, ' ', secondSpace + 1, end) >= 0) {
+            throw new IOException("Malformed request line: " + decode(bytes, 0, end));
+        }
+        head.method = method(bytes, firstSpace);
+        if (head.method == null) {
+            throw new IOException("Unsupported HTTP method: " + decode(bytes, 0, firstSpace));
+        }
+        head.path = decode(bytes, firstSpace + 1, secondSpace);
+        head.httpVersion = version(bytes, secondSpace + 1, end); // decides the keep-alive default
+    }
 
+    // The method named by bytes[0, end), in any case, without decoding it
+    private static HttpMethod method(byte[] bytes, int end) {
+        for (HttpMethod method : METHODS) {
+            if (Headers.equalsIgnoreCase(bytes, 0, end, method.name())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static String version(byte[] bytes, int start, int end) {
+        if (Headers.equalsIgnoreCase(bytes, start, end, HTTP_1_1)) {
+            return HTTP_1_1;
+        }
+        if (Headers.equalsIgnoreCase(bytes, start, end, HTTP_1_0)) {
+            return HTTP_1_0;
+        }
+        return decode(bytes, start, end);
+    }
+
+    private static int parseLength(byte[] bytes, int start, int end) throws IOException {
+        long length = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid Content-Length: " + decode(bytes, start, end));
+            }
+            length = length * 10 + digit;
+        }
+        if (start == end || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid Content-Length: " + decode(bytes, start, end));
+        }
+        return (int) length;
+    }
+
+    private HttpRequest buildRequest(RequestHead head, byte[] bodyBytes) {
         // 5) Build your HttpRequest
-        // If it's text, you might do new String(bodyBytes, StandardCharsets.UTF_8)
-        String textBody = new String(bodyBytes, StandardCharsets.UTF_8);
+        // (no text body: getTextBody() decodes the bytes if anyone asks)
         return new HttpRequest.Builder()
-                .setMethod(method.toString())
-                .setPath(path)
-                .setHeaders(headersMap)
-                .setTextBody(textBody)
+                .setMethod(head.method.toString())
+                .setPath(head.path)
+                .setHttpVersion(head.httpVersion)
+                .setHeaders(head.headers)
+                .setTextBody(null)
                 .setRawBody(bodyBytes)
                 .build();
+    }
 
+    private HttpRequest buildRequest(RequestHead head, BodyStream body) {
+        if (body == null) {
+            return buildRequest(head, new byte[0]);
+        }
+        return new HttpRequest.Builder()
+                .setMethod(head.method.toString())
+                .setPath(head.path)
+                .setHttpVersion(head.httpVersion)
+                .setHeaders(head.headers)
+                .setBodyStream(body)
+                .build();
     }
 
-    private String readRawLine(InputStream in) throws IOException {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        int prev = -1;
+    /**
+     * Walk a chunked body starting at 'from' (RFC 9112 section 7.1), copying
+     * the chunk data into 'into' if given. Returns the index just past the
+     * trailer section, or -1 if the body has not fully arrived; either way
+     * chunkedLength is the decoded size seen.
+     */
+    private int scanChunked(ByteBuffer buffer, int from, byte[] into) throws IOException {
+        int limit = buffer.limit();
+        int pos = from;
+        chunkedLength = 0;
         while (true) {
-            int c = in.read();
-            if (c == -1) {
-                // EOF
-                break;
+            int lineEnd = indexOf(buffer, pos, limit);
+            if (lineEnd < 0) {
+                checkLineLength(limit - pos);
+                return -1;
             }
-            if (c == '\n') {
-                // If the previous was '\r', we have \r\n line ending
+            long size = parseChunkSize(buffer, pos, lineEnd);
+            pos = lineEnd + 1;
+            if (size == 0) {
                 break;
             }
-            if (c == '\r') {
-                // next might be \n, so we check but do not store \r
-                in.mark(1);
-                prev = c;
-                continue;
+            if (size > Integer.MAX_VALUE - chunkedLength) {
+                throw new IOException("Chunked body too large");
+            }
+            if (limit - pos < size) {
+                return -1;
+            }
+            if (into != null) {
+                buffer.get(pos, into, chunkedLength, (int) size);
+            }
+            chunkedLength += (int) size;
+            pos += (int) size;
+            pos = expectLineEnd(buffer, pos, limit);
+            if (pos < 0) {
+                return -1;
+            }
+        }
+        // trailer fields (ignored) up to a blank line
+        while (true) {
+            int lineEnd = indexOf(buffer, pos, limit);
+            if (lineEnd < 0) {
+                checkLineLength(limit - pos);
+                return -1;
+            }
+            boolean blank = lineEnd == pos || (lineEnd == pos + 1 && buffer.get(pos) == '\r');
+            pos = lineEnd + 1;
+            if (blank) {
+                return pos;
             }
-            buf.write(c);
-            prev = c;
         }
-        return buf.toString("UTF-8");
     }
-}
 
+    // Index past the CRLF (or bare LF) that must follow chunk data, or -1 if not there yet
+    private static int expectLineEnd(ByteBuffer buffer, int pos, int limit) throws IOException {
+        if (pos < limit && buffer.get(pos) == '\r') {
+            pos++;
+        }
+        if (pos >= limit) {
+            return -1;
+        }
+        if (buffer.get(pos) != '\n') {
+            throw new IOException("Missing CRLF after chunk data");
+        }
+        return pos + 1;
+    }
+
+    // "1a2f;name=value" -> 0x1a2f; chunk extensions are ignored
+    private static long parseChunkSize(ByteBuffer line, int start, int end) throws IOException {
+        long size = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            int c = line.get(i);
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                if (c == ';' || c == ' ' || c == '\t' || c == '\r') {
+                    break;
+                }
+                throw new IOException("Invalid chunk size");
+            }
+            if (++digits > 15) {
+                throw new IOException("Chunk size too large");
+            }
+            size = size * 16 + digit;
+        }
+        if (digits == 0) {
+            throw new IOException("Invalid chunk size");
+        }
+        return size;
+    }
+
+    private static void checkLineLength(int buffered) throws IOException {
+        if (buffered > MAX_CHUNK_LINE) {
+            throw new IOException("Chunk size line too long");
+        }
+    }
+
+    private static void checkHeaderSize(int buffered) throws IOException {
+        if (buffered >= MAX_HEADER_SIZE) {
+            throw new IOException("Request header too large");
+        }
+    }
+
+    // Index just past the blank line ending a header block starting at 'from', or -1.
+    // Scans bulk copies rather than calling get(i) per byte, which is slow on direct buffers.
+    private int findHeadEnd(ByteBuffer buffer, int from, int limit) {
+        for (int base = from; base < limit; base += scanChunk.length) {
+            int n = Math.min(scanChunk.length, limit - base);
+            buffer.get(base, scanChunk, 0, n);
+            for (int k = 0; k < n; k++) {
+                if (scanChunk[k] == '\n') {
+                    int next = base + k + 1;
+                    if (next < limit && buffer.get(next) == '\r') {
+                        next++;
+                    }
+                    if (next < limit && buffer.get(next) == '\n') {
+                        return next + 1;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // End of the line from 'start' to the '\n' at 'newline', without its '\r'
+    private static int contentEnd(byte[] bytes, int start, int newline) {
+        return newline > start && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+    }
+
+    // Same whitespace as String.trim(): anything up to ' '
+    private static int skipSpace(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpace(byte[] bytes, int start, int end) {
+        while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static String decode(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Only CR/LF left: nothing that could start another request
+    private static boolean isBlank(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A request body read on demand from this parser's connection. Closing it
+     * does not close the connection.
+     */
+    private abstract class BodyStream extends InputStream {
+        long consumed;
+        boolean done;
+        private final byte[] one = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        /**
+         * Read to the end, giving up (false) after maxBytes.
+         */
+        boolean skipRest(long maxBytes) throws IOException {
+            if (done) {
+                return true;
+            }
+            byte[] scratch = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, maxBytes))];
+            long skipped = 0;
+            while (!done) {
+                if (skipped >= maxBytes) {
+                    return false;
+                }
+                int n = read(scratch, 0, (int) Math.min(scratch.length, maxBytes - skipped));
+                if (n > 0) {
+                    skipped += n;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A Content-Length body: exactly the next 'remaining' bytes.
+     */
+    private final class FixedLengthBody extends BodyStream {
+        private long remaining;
+
+        FixedLengthBody(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (remaining == 0) {
+                done = true;
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = readConnection(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                // connection closed early
+                throw new IOException("Unexpected end of stream: expected " +
+                        (consumed + remaining) + " bytes, got " + consumed);
+            }
+            remaining -= n;
+            consumed += n;
+            if (remaining == 0) {
+                done = true;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(readBuffer.remaining(), remaining);
+        }
+
+        @Override
+        public byte[] readAllBytes() throws IOException {
+            // the size is known: fill one array instead of growing a list of buffers
+            if (remaining > Integer.MAX_VALUE - 8) {
+                throw new IOException("Request body too large: " + remaining + " bytes");
+            }
+            byte[] bytes = new byte[(int) remaining];
+            int off = 0;
+            while (off < bytes.length) {
+                off += read(bytes, off, bytes.length - off);
+            }
+            return bytes;
+        }
+
+        @Override
+        boolean skipRest(long maxBytes) throws IOException {
+            // the size is known up front: don't read any of it if it is too much
+            return remaining <= maxBytes && super.skipRest(maxBytes);
+        }
+    }
+
+    /**
+     * A chunked body (RFC 9112 section 7.1), decoded as it is read.
+     */
+    private final class ChunkedBody extends BodyStream {
+        private long chunkRemaining;
+        private boolean inChunk;
+        private final byte[] line = new byte[MAX_CHUNK_LINE];
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (chunkRemaining == 0) {
+                if (inChunk && readLine() != 0) {
+                    throw new IOException("Missing CRLF after chunk data");
+                }
+                int n = readLine();
+                chunkRemaining = parseChunkSize(ByteBuffer.wrap(line), 0, n);
+                inChunk = true;
+                if (chunkRemaining == 0) {
+                    // trailer fields (ignored) up to a blank line
+                    while (readLine() != 0) {
+                        // skip
+                    }
+                    done = true;
+                    return -1;
+                }
+            }
+            int n = readConnection(b, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1) {
+                throw new IOException("Unexpected end of stream in chunked body");
+            }
+            chunkRemaining -= n;
+            consumed += n;
+            return n;
+        }
+
+        // Next line into 'line', without its CRLF; returns its length
+        private int readLine() throws IOException {
+            int len = 0;
+            while (true) {
+                int c = readConnectionByte();
+                if (c == -1) {
+                    throw new IOException("Unexpected end of stream in chunked body");
+                }
+                if (c == '\n') {
+                    return len > 0 && line[len - 1] == '\r' ? len - 1 : len;
+                }
+                if (len == line.length) {
+                    throw new IOException("Chunk size line too long");
+                }
+                line[len++] = (byte) c;
+            }
+        }
+    }
+
+    private static class RequestHead {
+        HttpMethod method;
+        String path;
+        String httpVersion;
+        Headers headers;
+        int contentLength = -1; // -1 until a Content-Length header is seen
+        boolean chunked;
+        boolean conflictingFraming; // Transfer-Encoding and Content-Length both sent
+        int headLength; // bytes from the buffer position to the end of the blank line
+    }
+}
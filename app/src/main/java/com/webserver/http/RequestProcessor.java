@@ -1,21 +1,51 @@
 package com.webserver.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import com.webserver.model.Headers;
 import com.webserver.model.HttpRequest;
 import com.webserver.model.HttpResponse;
 import com.webserver.util.Logger;
 import com.webserver.util.FileService;
-import com.webserver.util.MimeTypes;
+import com.webserver.util.MappedFileCache;
 import com.webserver.util.ScriptProcessorFactory;
 import com.webserver.util.ScriptProcessor;
+import com.webserver.util.StaticFileCache;
 
 
 public class RequestProcessor {
+    // The one 404, encoded once: bots probing for /.env or /wp-login.php get it by the thousand
+    private static final HttpResponse NOT_FOUND = new HttpResponse.Builder()
+            .setStatusCode(404)
+            .setStatusMessage("Not Found")
+            .addHeader("Content-Type", "text/plain")
+            .setBody("Error 404: Not Found")
+            .setRawBody("Error 404: Not Found".getBytes(StandardCharsets.UTF_8))
+            .build();
+
     private final Map<String, RouteHandler> routes;
+    // first path segments ("/app_2002/") served by routes alone, never from the webroot
+    private final Set<String> routePrefixes = ConcurrentHashMap.newKeySet();
+    // 404s answered without a lookup: a known missing path, or under a route prefix
+    private final LongAdder fastNotFound = new LongAdder();
     private final FileService fileService;
+    // webroot files by path: their metadata and ETag, and the bytes of small ones
+    private final StaticFileCache staticFiles;
+    // large static files served from a shared mapping; null when not used
+    private final MappedFileCache mappedFiles;
+    // gzip / precompressed variants; null when responses are not compressed
+    private final Compressor compressor;
     private final ScriptProcessorFactory scriptProcessorFactory;
 
 
@@ -26,8 +56,26 @@ public class RequestProcessor {
     }
 
     public RequestProcessor(FileService fileService) {
-        this.routes = new HashMap<>();
+        this(fileService, null);
+    }
+
+    public RequestProcessor(FileService fileService, MappedFileCache mappedFiles) {
+        this(fileService, mappedFiles, null);
+    }
+
+    public RequestProcessor(FileService fileService, MappedFileCache mappedFiles, Compressor compressor) {
+        // metadata only, checked against the file on every hit
+        this(fileService, new StaticFileCache(fileService, 0, 0), mappedFiles, compressor);
+    }
+
+    public RequestProcessor(FileService fileService, StaticFileCache staticFiles, MappedFileCache mappedFiles,
+                            Compressor compressor) {
+        // shared by every connection, and updated while requests are in flight
+        this.routes = new ConcurrentHashMap<>();
         this.fileService = fileService;
+        this.staticFiles = staticFiles;
+        this.mappedFiles = mappedFiles;
+        this.compressor = compressor;
         this.scriptProcessorFactory = new ScriptProcessorFactory();
 
     }
@@ -40,12 +88,11 @@ public class RequestProcessor {
             throw new IllegalArgumentException("Invalid route path: Must start with '/' and cannot be empty.");
         }
         // 2. Handle duplicate routes
-        if(routes.containsKey(path))
+        // 3. Store the route handler (atomically, so two uploads cannot race)
+        if(routes.putIfAbsent(path, handler) != null)
         {
             throw new IllegalArgumentException("Route Already Exists: " + path);
         }
-        // 3. Store the route handler
-        routes.put(path, handler);
     }
 
     // in RequestProcessor.java
@@ -53,6 +100,39 @@ public class RequestProcessor {
         return routes.containsKey(path);
     }
 
+    /**
+     * Serve paths starting with prefix (a first segment, e.g. "/app_2002/")
+     * from routes only: one matching no route is 404 without looking in the
+     * webroot.
+     */
+    public void addRoutePrefix(String prefix) {
+        routePrefixes.add(prefix);
+    }
+
+    public void removeRoutePrefix(String prefix) {
+        routePrefixes.remove(prefix);
+    }
+
+    /** 404s answered without looking for a file. */
+    public long getFastNotFound() {
+        return fastNotFound.sum();
+    }
+
+    /** The response compressor, or null if responses are not compressed. */
+    public Compressor getCompressor() {
+        return compressor;
+    }
+
+    /** The cache of webroot files. */
+    public StaticFileCache getStaticFiles() {
+        return staticFiles;
+    }
+
+    /** The cache of mapped static files, or null if there is none. */
+    public MappedFileCache getMappedFiles() {
+        return mappedFiles;
+    }
+
 
     public HttpResponse process(HttpRequest request) {
         if (!isValidRequest(request)) {
@@ -90,6 +170,11 @@ public class RequestProcessor {
         }
 
         if (handler == null) {
+            // known not to exist: no file lookup, and nothing logged
+            if (underRoutePrefix(path) || staticFiles.isMissing(path)) {
+                fastNotFound.increment();
+                return NOT_FOUND;
+            }
             Logger.info("No handler found for path: " + path);
 
 
@@ -100,7 +185,7 @@ public class RequestProcessor {
                     ScriptProcessor processor = scriptProcessorFactory.getProcessorForExtension(fileService.getFileExtension(path));
                     if (processor != null)
                     {
-                        String scriptPath = fileService.resolveScriptPath(path);
+                        String scriptPath = staticFiles.lookup(path).file().toString();
                         try{
                             String output = processor.processScript(scriptPath);
                             return new HttpResponse.Builder()
@@ -117,27 +202,109 @@ public class RequestProcessor {
                         }
                     }
                     else{
-                        // read the file from disk
-                        byte[] fileBytes = fileService.readFile(path);
-                        // determine mime type
-                        String mimeType = MimeTypes.getMimeType(path);
-
-                        // Return a 200 with the file content in rawBody
-                        return new HttpResponse.Builder()
-                                .setStatusCode(200)
-                                .setStatusMessage("OK")
+                        // find the file: resolved, typed and tagged once, then from the cache
+                        StaticFileCache.Entry entry = staticFiles.lookup(path);
+                        Path file = entry.file();
+                        byte[] content = entry.content();
+                        long size = entry.size();
+                        String mimeType = entry.mimeType();
+
+                        // revalidation: answered from the cached metadata, the file unread
+                        String etag = entry.etag();
+                        long lastModified = entry.lastModified();
+                        boolean negotiable = compressor != null && compressor.negotiable(mimeType, size);
+                        if (Conditional.notModified(request, etag, lastModified)) {
+                            HttpResponse.Builder notModified = Conditional.notModifiedResponse(request, etag, lastModified);
+                            if (negotiable) {
+                                notModified.addHeader(Headers.VARY, Headers.ACCEPT_ENCODING);
+                            }
+                            return notModified.build();
+                        }
+
+                        // Range: only the bytes asked for, unless If-Range says the file has changed
+                        List<ByteRanges.Range> ranges = ByteRanges.parse(request.getHeader(Headers.RANGE), size);
+                        if (ranges != null && !ByteRanges.ifRangeMatches(request.getHeader(Headers.IF_RANGE),
+                                etag, lastModified)) {
+                            ranges = null;
+                        }
+                        if (ranges != null && ranges.isEmpty()) {
+                            return ByteRanges.notSatisfiable(size).build();
+                        }
+
+                        // the whole file compressed, if the client takes it: a precompressed sibling or the cached gzip
+                        Compressor.Variant variant = negotiable && ranges == null
+                                ? compressor.encodeStatic(request, entry) : null;
+                        if (variant != null) {
+                            HttpResponse.Builder encoded = new HttpResponse.Builder()
+                                    .setStatusCode(200)
+                                    .addHeader("Content-Type", mimeType)
+                                    .addHeader(Headers.CONTENT_ENCODING, variant.coding())
+                                    .addHeader(Headers.VARY, Headers.ACCEPT_ENCODING)
+                                    .addHeader(Headers.ETAG, "W/" + etag)
+                                    .addHeader(Headers.LAST_MODIFIED, Conditional.httpDate(lastModified));
+                            return variant.file() != null
+                                    ? encoded.setBodyFile(variant.file(), variant.size()).build()
+                                    : encoded.setRawBody(variant.bytes()).build();
+                        }
+                        if (ranges != null && ranges.size() > 1) {
+                            ByteRanges.Multipart body = new ByteRanges.Multipart(ranges, size, mimeType,
+                                    (start, length) -> content != null
+                                            ? new ByteArrayInputStream(content, (int) start, (int) length)
+                                            : Channels.newInputStream(
+                                                    FileChannel.open(file, StandardOpenOption.READ).position(start)));
+                            return new HttpResponse.Builder()
+                                    .setStatusCode(206)
+                                    .addHeader(Headers.CONTENT_TYPE, body.contentType())
+                                    .addHeader(Headers.ETAG, etag)
+                                    .addHeader(Headers.LAST_MODIFIED, Conditional.httpDate(lastModified))
+                                    .setBodySource(body, body.length())
+                                    .build();
+                        }
+                        ByteRanges.Range range = ranges != null ? ranges.get(0) : null;
+                        long offset = range != null ? range.start() : 0;
+                        long length = range != null ? range.length() : size;
+                        HttpResponse.Builder builder = new HttpResponse.Builder()
+                                .setStatusCode(range != null ? 206 : 200)
                                 .addHeader("Content-Type", mimeType)
-                                .setRawBody(fileBytes)
+                                .addHeader(Headers.ACCEPT_RANGES, "bytes")
+                                .addHeader(Headers.ETAG, etag)
+                                .addHeader(Headers.LAST_MODIFIED, Conditional.httpDate(lastModified));
+                        if (range != null) {
+                            builder.addHeader(Headers.CONTENT_RANGE, ByteRanges.contentRange(range, size));
+                        }
+                        if (negotiable) {
+                            builder.addHeader(Headers.VARY, Headers.ACCEPT_ENCODING);
+                        }
+
+                        // a small file: the cached bytes
+                        if (content != null) {
+                            return builder
+                                    .setBodyBuffer(ByteBuffer.wrap(content, (int) offset, (int) length), null)
+                                    .build();
+                        }
+
+                        // a large file: its shared mapping, pinned until the response is written
+                        MappedFileCache.Mapping mapping = mappedFiles != null ? mappedFiles.acquire(file) : null;
+                        if (mapping != null) {
+                            return builder
+                                    .setBodyBuffer(mapping.body().slice((int) offset, (int) length), mapping::release)
+                                    .build();
+                        }
+
+                        // Return the file content sent straight from the file
+                        return builder
+                                .setBodyFile(file, offset, length)
                                 .build();
                     }
 
                 }
  catch (IOException e) {
-                    Logger.error("Error serving static file: " + path, e);
-                    return createErrorResponse(404, "Not Found");
+                    // usually just a missing file: a line, not a stack trace
+                    Logger.info("Not found: " + path + " (" + e.getMessage() + ")");
+                    return NOT_FOUND;
                 }
             } else {
-                return createErrorResponse(404, "Not Found");
+                return NOT_FOUND;
             }
         }
 
@@ -148,12 +315,17 @@ public class RequestProcessor {
                 Logger.error("Handler returned null response for path: " + path, null);
                 return createErrorResponse(500, "Internal Server Error");
             }
-            return response;
+            return compressor != null ? compressor.encode(request, response) : response;
         } catch (Exception e) {
             Logger.error("Error processing request for path: " + path, e);
             return createErrorResponse(500, "Internal Server Error");
         }
     }
+    private boolean underRoutePrefix(String path) {
+        int end = path.indexOf('/', 1);
+        return end > 0 && !routePrefixes.isEmpty() && routePrefixes.contains(path.substring(0, end + 1));
+    }
+
     private HttpResponse createErrorResponse(int statusCode, String message) {
         // If 404, the test specifically wants "Error 404: Not Found"
         String body = message;
@@ -0,0 +1,549 @@
+package com.webserver.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.webserver.model.Headers;
+import com.webserver.model.HttpResponse;
+
+/**
+ * ResponseWriter - serializes responses for one connection.
+ *
+ * The status line and the headers the server adds itself come from
+ * pre-encoded bytes; the header block is assembled in a buffer the writer
+ * keeps and reuses for the connection's next response. A small body is
+ * copied in after the head (an ASCII text body is encoded straight into it),
+ * so the whole response goes out in a single write. Larger bodies go out in two
+ * writes, the first of them full-sized; on NIO, encode() returns head and
+ * body for one gathering write instead.
+ *
+ * A streamed body (HttpResponse.getBodySource()) is read and sent
+ * STREAM_CHUNK bytes at a time through the same buffer, so memory stays flat
+ * however large it is. With a known length it is sent as is after a
+ * Content-Length; otherwise with chunked Transfer-Encoding, each chunk's size
+ * line written in front of the data already in the buffer.
+ *
+ * A file body (HttpResponse.getBodyFile()) above COALESCE_LIMIT never enters
+ * the heap: it goes from the file to the socket with FileChannel.transferTo,
+ * which the OS turns into sendfile, when the caller has the socket's channel
+ * to give. A smaller one is read in behind the head, as a small body is.
+ * A buffer body (HttpResponse.getBodyBuffer(), a shared file mapping) goes
+ * the same way, written from the buffer, and is handed back by release().
+ *
+ * Not thread-safe: one per connection, used for one response at a time.
+ */
+public final class ResponseWriter {
+
+    // Head plus this much body is coalesced into one write
+    static final int COALESCE_LIMIT = 16 * 1024;
+    // Bytes of a streamed body read, and sent, at a time
+    static final int STREAM_CHUNK = 16 * 1024;
+    // Room kept in front of a chunk's data for its size line ("4000\r\n")
+    private static final int CHUNK_PREFIX = 8;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] COLON_SPACE = {':', ' '};
+    private static final byte[] CONTENT_LENGTH = ascii(Headers.CONTENT_LENGTH + ": ");
+    private static final byte[] CONNECTION_KEEP_ALIVE = ascii(Headers.CONNECTION + ": keep-alive\r\n");
+    private static final byte[] CONNECTION_CLOSE = ascii(Headers.CONNECTION + ": close\r\n");
+    private static final byte[] TRANSFER_ENCODING_CHUNKED = ascii(Headers.TRANSFER_ENCODING + ": chunked\r\n");
+    private static final byte[] LAST_CHUNK = ascii("0\r\n\r\n");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    // "HTTP/1.1 200 OK\r\n" and friends, by status code
+    private static final byte[][] STATUS_LINES = new byte[600][];
+
+    static {
+        for (int code = 100; code < STATUS_LINES.length; code++) {
+            String phrase = ResponseBuilder.phrase(code);
+            if (phrase != null) {
+                STATUS_LINES[code] = ascii("HTTP/1.1 " + code + " " + phrase + "\r\n");
+            }
+        }
+    }
+
+    private byte[] buffer = new byte[1024];
+    private int length;
+    private final char[] chars = new char[512];
+
+    // The streamed body being sent, or null; closed by the loop thread if
+    // the connection drops while a handler thread is reading it
+    private volatile InputStream stream;
+    private long streamLeft; // bytes of it still to send, or -1 if chunked
+    private long streamed;   // bytes of it read so far
+
+    // The file body being sent, or null, and the part of it still to send
+    private volatile FileChannel file;
+    private long filePosition;
+    private long fileEnd;
+
+    // Hands back the buffer body being sent, if it has to be
+    private final AtomicReference<Runnable> bodyRelease = new AtomicReference<>();
+
+    /**
+     * Write the response on a connection that stays open (keepAlive) or is
+     * closed after it. Does not flush. Returns the number of body bytes sent.
+     */
+    public long write(OutputStream output, HttpResponse response, boolean keepAlive) throws IOException {
+        return write(output, null, response, keepAlive ? CONNECTION_KEEP_ALIVE : CONNECTION_CLOSE);
+    }
+
+    /**
+     * Same, with the channel of the socket behind output (or null), which a
+     * file body is transferred to directly.
+     */
+    public long write(OutputStream output, WritableByteChannel channel, HttpResponse response,
+                      boolean keepAlive) throws IOException {
+        return write(output, channel, response, keepAlive ? CONNECTION_KEEP_ALIVE : CONNECTION_CLOSE);
+    }
+
+    long write(OutputStream output, WritableByteChannel channel, HttpResponse response,
+               byte[] connection) throws IOException {
+        if (response.getBodyFile() != null) {
+            return writeFile(output, channel, response, connection);
+        }
+        if (response.getBodyBuffer() != null) {
+            return writeBuffer(output, channel, response, connection);
+        }
+        if (response.getBodySource() != null) {
+            return writeStreamed(output, response, connection);
+        }
+        byte[] body = response.getRawBody();
+        if (body == null) {
+            String text = response.getBody();
+            // usually ASCII, one byte a char: encode it straight in after the head
+            if (text.length() <= COALESCE_LIMIT) {
+                encodeHead(response, text.length(), connection);
+                if (appendAscii(text)) {
+                    output.write(buffer, 0, length);
+                    return text.length();
+                }
+            }
+            body = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        encodeHead(response, body.length, connection);
+        // fill the head's write up to the limit, then the rest of the body
+        int first = Math.min(body.length, Math.max(0, COALESCE_LIMIT - length));
+        append(body, 0, first);
+        output.write(buffer, 0, length);
+        if (first < body.length) {
+            output.write(body, first, body.length - first);
+        }
+        return body.length;
+    }
+
+    private long writeFile(OutputStream output, WritableByteChannel channel, HttpResponse response,
+                           byte[] connection) throws IOException {
+        try {
+            ByteBuffer head = startFile(response, connection);
+            output.write(head.array(), head.arrayOffset() + head.position(), head.remaining());
+            if (hasFileBody()) {
+                if (channel != null) {
+                    output.flush(); // the head goes first
+                } else {
+                    channel = Channels.newChannel(output); // no socket channel: through the heap after all
+                }
+                while (hasFileBody()) {
+                    transferBody(channel, Long.MAX_VALUE);
+                }
+            }
+            return response.getBodyLength();
+        } finally {
+            release();
+        }
+    }
+
+    private long writeBuffer(OutputStream output, WritableByteChannel channel, HttpResponse response,
+                             byte[] connection) throws IOException {
+        try {
+            ByteBuffer body = startBuffer(response, connection);
+            long size = body.remaining();
+            if (size <= COALESCE_LIMIT) {
+                append(body);
+                output.write(buffer, 0, length);
+            } else if (channel != null) {
+                output.write(buffer, 0, length);
+                output.flush(); // the head goes first
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            } else {
+                // no socket channel: through this writer's buffer
+                output.write(buffer, 0, length);
+                while (body.hasRemaining()) {
+                    length = 0;
+                    append(body.slice(body.position(), Math.min(STREAM_CHUNK, body.remaining())));
+                    body.position(body.position() + length);
+                    output.write(buffer, 0, length);
+                }
+            }
+            return size;
+        } finally {
+            release();
+        }
+    }
+
+    private long writeStreamed(OutputStream output, HttpResponse response, byte[] connection) throws IOException {
+        try {
+            ByteBuffer[] next = start(response, connection);
+            while (true) {
+                for (ByteBuffer part : next) {
+                    output.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+                }
+                if (!hasMoreBody()) {
+                    return streamed;
+                }
+                next = nextChunk();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Head and body as buffers for one gathering channel write. The head
+     * buffer is this writer's own and stays valid until its next call.
+     * For a streamed body the second buffer is its first chunk, and
+     * hasMoreBody() says whether nextChunk() has more to send after it.
+     * For a file body there is only the head; transferBody() sends the rest.
+     */
+    public ByteBuffer[] encode(HttpResponse response, boolean keepAlive) throws IOException {
+        byte[] connection = keepAlive ? CONNECTION_KEEP_ALIVE : CONNECTION_CLOSE;
+        if (response.getBodyFile() != null) {
+            return new ByteBuffer[] {startFile(response, connection)};
+        }
+        if (response.getBodyBuffer() != null) {
+            ByteBuffer body = startBuffer(response, connection);
+            return new ByteBuffer[] {ByteBuffer.wrap(buffer, 0, length), body};
+        }
+        if (response.getBodySource() != null) {
+            return start(response, connection);
+        }
+        byte[] rawBody = response.getRawBody();
+        if (rawBody == null) {
+            rawBody = response.getBody().getBytes(StandardCharsets.UTF_8);
+        }
+        encodeHead(response, rawBody.length, connection);
+        return new ByteBuffer[] {ByteBuffer.wrap(buffer, 0, length), ByteBuffer.wrap(rawBody)};
+    }
+
+    /** True while a streamed body has more to send. */
+    public boolean hasMoreBody() {
+        return stream != null;
+    }
+
+    /**
+     * The next chunk of the streamed body, in this writer's buffer: valid
+     * until its next call. Blocks reading the body's stream.
+     */
+    public ByteBuffer[] nextChunk() throws IOException {
+        try {
+            return new ByteBuffer[] {readChunk(0)};
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /** True while a file body has bytes left for transferBody(). */
+    public boolean hasFileBody() {
+        return file != null;
+    }
+
+    /** Bytes of the file body not yet sent. */
+    public long fileBodyLeft() {
+        return file != null ? fileEnd - filePosition : 0;
+    }
+
+    /**
+     * Send up to max bytes of the file body from the file to target,
+     * returning how many went; fewer, possibly none, if target is a
+     * non-blocking channel that is full.
+     */
+    public long transferBody(WritableByteChannel target, long max) throws IOException {
+        FileChannel in = file;
+        if (in == null) {
+            return 0;
+        }
+        try {
+            long n = in.transferTo(filePosition, Math.min(max, fileEnd - filePosition), target);
+            if (n == 0 && filePosition >= in.size()) {
+                throw new IOException("File body ended " + (fileEnd - filePosition) + " bytes short of its Content-Length");
+            }
+            filePosition += n;
+            if (filePosition == fileEnd) {
+                release();
+            }
+            return n;
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Let go of the body once the response is written, or will not be: close
+     * a streamed or file body, hand back a buffer body. Safe to call again.
+     */
+    public void release() {
+        Runnable hook = bodyRelease.getAndSet(null);
+        if (hook != null) {
+            hook.run();
+        }
+        InputStream in = stream;
+        stream = null;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+                // nothing more to read from it anyway
+            }
+        }
+        FileChannel channel = file;
+        file = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // only read from
+            }
+        }
+    }
+
+    // Head for a buffer body; returns a view of the body to send
+    private ByteBuffer startBuffer(HttpResponse response, byte[] connection) {
+        release(); // a previous response's body, if it was never finished
+        bodyRelease.set(response.getBodyRelease());
+        ByteBuffer body = response.getBodyBuffer().duplicate();
+        encodeHead(response, body.remaining(), connection);
+        return body;
+    }
+
+    private ByteBuffer startFile(HttpResponse response, byte[] connection) throws IOException {
+        release(); // a previous response's body, if it was never finished
+        long size = response.getBodyLength();
+        encodeHead(response, size, connection);
+        if (size <= 0) {
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+        FileChannel channel = FileChannel.open(response.getBodyFile(), StandardOpenOption.READ);
+        long offset = response.getBodyOffset();
+        if (size > COALESCE_LIMIT) {
+            file = channel;
+            filePosition = offset;
+            fileEnd = offset + size;
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+        // small: cheaper read in behind the head and sent with it than flushed and transferred
+        try (channel) {
+            ensure((int) size);
+            ByteBuffer into = ByteBuffer.wrap(buffer, length, (int) size);
+            while (into.hasRemaining()) {
+                if (channel.read(into, offset + (size - into.remaining())) < 0) {
+                    throw new IOException("File body ended " + into.remaining() + " bytes short of its Content-Length");
+                }
+            }
+            length += (int) size;
+        }
+        return ByteBuffer.wrap(buffer, 0, length);
+    }
+
+    private ByteBuffer[] start(HttpResponse response, byte[] connection) throws IOException {
+        release(); // a previous response's body, if it was never finished
+        InputStream in = response.getBodySource().open();
+        if (in == null) {
+            throw new IOException("Response body source opened no stream");
+        }
+        stream = in;
+        streamLeft = response.getBodyLength();
+        streamed = 0;
+        try {
+            encodeHead(response, streamLeft, connection);
+            int headLength = length;
+            ByteBuffer first = readChunk(headLength); // may grow the buffer
+            return new ByteBuffer[] {ByteBuffer.wrap(buffer, 0, headLength), first};
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next piece of the streamed body into the buffer from offset
+     * 'at' on, framed as a chunk if the length is unknown.
+     */
+    private ByteBuffer readChunk(int at) throws IOException {
+        InputStream in = stream;
+        if (in == null) {
+            throw new IOException("Response body stream closed");
+        }
+        int room = streamLeft < 0 ? STREAM_CHUNK : (int) Math.min(STREAM_CHUNK, streamLeft);
+        int dataAt = at + CHUNK_PREFIX;
+        length = dataAt;
+        ensure(room + 2 + LAST_CHUNK.length);
+        int n = room == 0 ? 0 : in.readNBytes(buffer, dataAt, room);
+        boolean ended = n < room;
+        streamed += n;
+
+        if (streamLeft >= 0) {
+            streamLeft -= n;
+            if (ended) {
+                throw new IOException("Response body ended " + streamLeft + " bytes short of its Content-Length");
+            }
+            if (streamLeft == 0) {
+                release();
+            }
+            return ByteBuffer.wrap(buffer, dataAt, n);
+        }
+
+        // chunked: "<size in hex>\r\n<data>\r\n", then "0\r\n\r\n" at the end
+        int start = dataAt;
+        length = dataAt + n;
+        if (n > 0) {
+            append(CRLF, 0, 2);
+            buffer[--start] = '\n';
+            buffer[--start] = '\r';
+            for (int size = n; size > 0; size >>>= 4) {
+                buffer[--start] = HEX[size & 0xF];
+            }
+        }
+        if (ended) {
+            append(LAST_CHUNK, 0, LAST_CHUNK.length);
+            release();
+        }
+        return ByteBuffer.wrap(buffer, start, length - start);
+    }
+
+    private void encodeHead(HttpResponse response, long bodyLength, byte[] connection) {
+        length = 0;
+
+        // 1) Status line
+        int code = response.getStatusCode();
+        byte[] statusLine = code >= 0 && code < STATUS_LINES.length ? STATUS_LINES[code] : null;
+        if (statusLine != null) {
+            append(statusLine, 0, statusLine.length);
+        } else {
+            appendUtf8("HTTP/1.1 ");
+            appendNumber(code);
+            appendUtf8(" ");
+            appendUtf8(response.getStatusMessage());
+            append(CRLF, 0, 2);
+        }
+
+        // 2) Content-Length, unless the handler set its own; chunked if the length is unknown.
+        //    None for a 1xx, 204 or 304: there is no body, and a 304's length would be the 200's
+        Headers headers = response.getHeaders();
+        boolean framed = code >= 200 && code != 204 && code != 304;
+        boolean chunked = framed && bodyLength < 0;
+        if (chunked) {
+            if (!headers.contains(Headers.TRANSFER_ENCODING)) {
+                append(TRANSFER_ENCODING_CHUNKED, 0, TRANSFER_ENCODING_CHUNKED.length);
+            }
+        } else if (framed && !headers.contains(Headers.CONTENT_LENGTH)) {
+            append(CONTENT_LENGTH, 0, CONTENT_LENGTH.length);
+            appendNumber(bodyLength);
+            append(CRLF, 0, 2);
+        }
+
+        // 3) Connection, unless the handler set its own
+        if (connection != null && !headers.contains(Headers.CONNECTION)) {
+            append(connection, 0, connection.length);
+        }
+
+        // 4) The handler's headers; but never a Content-Length beside chunked framing
+        //    (RFC 9112 6.2), which hops behind us could each read their own way
+        for (int i = 0; i < headers.count(); i++) {
+            if (chunked && Headers.CONTENT_LENGTH.equalsIgnoreCase(headers.name(i))) {
+                continue;
+            }
+            appendUtf8(headers.name(i));
+            append(COLON_SPACE, 0, 2);
+            appendUtf8(headers.value(i));
+            append(CRLF, 0, 2);
+        }
+
+        // 5) Blank line to separate headers from body
+        append(CRLF, 0, 2);
+    }
+
+    private void ensure(int more) {
+        if (length + more > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+        }
+    }
+
+    private void append(byte[] bytes, int off, int len) {
+        ensure(len);
+        System.arraycopy(bytes, off, buffer, length, len);
+        length += len;
+    }
+
+    private void append(ByteBuffer bytes) {
+        int n = bytes.remaining();
+        ensure(n);
+        bytes.get(bytes.position(), buffer, length, n);
+        length += n;
+    }
+
+    private void appendUtf8(String s) {
+        if (!appendAscii(s)) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            append(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Copy an all-ASCII string in; false, having appended nothing, if it is
+     * not one. Goes through the chars array a slice at a time, which is
+     * several times quicker than charAt() for a body-sized string.
+     */
+    private boolean appendAscii(String s) {
+        int start = length;
+        ensure(s.length());
+        for (int from = 0; from < s.length(); from += chars.length) {
+            int n = Math.min(chars.length, s.length() - from);
+            s.getChars(from, from + n, chars, 0);
+            int bits = 0;
+            for (int i = 0; i < n; i++) {
+                bits |= chars[i];
+                buffer[length + i] = (byte) chars[i];
+            }
+            if (bits >= 0x80) {
+                length = start;
+                return false;
+            }
+            length += n;
+        }
+        return true;
+    }
+
+    private void appendNumber(long n) {
+        if (n < 0) {
+            appendUtf8(Long.toString(n));
+            return;
+        }
+        int digits = 1;
+        for (long rest = n / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+        length += digits;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
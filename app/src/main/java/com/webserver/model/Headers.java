@@ -0,0 +1,420 @@
+package com.webserver.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Headers - the header fields of a request or response.
+ *
+ * A flat list of (name, value) entries in the order they were added. Names
+ * match in any case, as they do in HTTP, and looking one up allocates
+ * nothing: a well-known name (the constants below) resolves to a fixed slot
+ * that remembers where its first entry is, and any other name is compared
+ * in place against the entries.
+ *
+ * The headers of a parsed request are kept as the raw bytes of the header
+ * block plus offsets. Well-known names are recognised from the bytes; other
+ * names and all values become Strings only when first read.
+ *
+ * Headers is also the Map<String, List<String>> that getHeaders() has always
+ * returned. get() and containsKey() are as cheap as first() and contains();
+ * iterating builds a grouped copy once.
+ */
+public final class Headers extends AbstractMap<String, List<String>> {
+
+    public static final String HOST = "Host";
+    public static final String CONNECTION = "Connection";
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String ACCEPT = "Accept";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    public static final String RANGE = "Range";
+    public static final String IF_RANGE = "If-Range";
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String LOCATION = "Location";
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String COOKIE = "Cookie";
+    public static final String SET_COOKIE = "Set-Cookie";
+    public static final String USER_AGENT = "User-Agent";
+    public static final String ORIGIN = "Origin";
+    public static final String EXPECT = "Expect";
+
+    private static final String[] KNOWN = {
+            HOST, CONNECTION, CONTENT_LENGTH, CONTENT_TYPE, TRANSFER_ENCODING, ACCEPT,
+            ACCEPT_ENCODING, CONTENT_ENCODING, VARY, IF_NONE_MATCH, IF_MODIFIED_SINCE, ETAG,
+            LAST_MODIFIED, CACHE_CONTROL, RANGE, IF_RANGE, ACCEPT_RANGES, CONTENT_RANGE,
+            LOCATION, RETRY_AFTER, AUTHORIZATION, COOKIE, SET_COOKIE, USER_AGENT, ORIGIN, EXPECT
+    };
+    // ids of the KNOWN names of each length, so resolving a name compares few candidates
+    private static final int[][] KNOWN_BY_LENGTH;
+    private static final int UNKNOWN = -1;
+
+    static {
+        int longest = 0;
+        for (String name : KNOWN) {
+            longest = Math.max(longest, name.length());
+        }
+        KNOWN_BY_LENGTH = new int[longest + 1][0];
+        for (int id = 0; id < KNOWN.length; id++) {
+            int[] ids = KNOWN_BY_LENGTH[KNOWN[id].length()];
+            ids = Arrays.copyOf(ids, ids.length + 1);
+            ids[ids.length - 1] = id;
+            KNOWN_BY_LENGTH[KNOWN[id].length()] = ids;
+        }
+    }
+
+    // raw header block of a parsed request, or null
+    private final byte[] bytes;
+    // per entry, into bytes: nameStart, nameEnd, valueStart, valueEnd (parsed entries only)
+    private int[] ranges;
+    // per entry; null until decoded for a parsed entry (Strings are immutable, so a racy fill is harmless)
+    private String[] names;
+    private String[] values;
+    // per entry: index into KNOWN, or UNKNOWN
+    private int[] ids;
+    private int count;
+    // per KNOWN name: index of its first entry, or -1
+    private final int[] firstById = new int[KNOWN.length];
+    private volatile Map<String, List<String>> grouped;
+
+    public Headers() {
+        this.bytes = null;
+        this.ranges = null;
+        this.names = new String[8];
+        this.values = new String[8];
+        this.ids = new int[8];
+        Arrays.fill(firstById, -1);
+    }
+
+    /**
+     * Headers of a parsed request: 'count' entries located in 'bytes' by
+     * 'ranges' (nameStart, nameEnd, valueStart, valueEnd per entry).
+     */
+    public Headers(byte[] bytes, int[] ranges, int count) {
+        this.bytes = bytes;
+        this.ranges = ranges;
+        this.count = count;
+        this.names = new String[Math.max(count, 1)];
+        this.values = new String[Math.max(count, 1)];
+        this.ids = new int[Math.max(count, 1)];
+        Arrays.fill(firstById, -1);
+        for (int i = 0; i < count; i++) {
+            int id = idOf(bytes, ranges[4 * i], ranges[4 * i + 1]);
+            ids[i] = id;
+            if (id != UNKNOWN) {
+                names[i] = KNOWN[id];
+                if (firstById[id] < 0) {
+                    firstById[id] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * The same headers as a plain name -> values map (or the map itself if it
+     * already is a Headers).
+     */
+    public static Headers copyOf(Map<String, List<String>> map) {
+        if (map instanceof Headers headers) {
+            return headers;
+        }
+        Headers headers = new Headers();
+        for (Map.Entry<String, List<String>> e : map.entrySet()) {
+            for (String value : e.getValue()) {
+                headers.add(e.getKey(), value);
+            }
+        }
+        return headers;
+    }
+
+    public Headers add(String name, String value) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        int id = idOf(name);
+        names[count] = name;
+        values[count] = value;
+        ids[count] = id;
+        if (id != UNKNOWN && firstById[id] < 0) {
+            firstById[id] = count;
+        }
+        count++;
+        grouped = null;
+        return this;
+    }
+
+    /**
+     * Replace every entry with this name by one with the given value.
+     */
+    public Headers set(String name, String value) {
+        removeAll(name);
+        return add(name, value);
+    }
+
+    /**
+     * Remove every entry with this name. Returns true if there were any.
+     */
+    public boolean removeAll(String name) {
+        int id = idOf(name);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (matches(i, id, name)) {
+                continue;
+            }
+            if (kept != i) {
+                name(i);
+                value(i); // decode before the parsed ranges stop lining up
+                names[kept] = names[i];
+                values[kept] = values[i];
+                ids[kept] = ids[i];
+            }
+            kept++;
+        }
+        if (kept == count) {
+            return false;
+        }
+        Arrays.fill(names, kept, count, null);
+        Arrays.fill(values, kept, count, null);
+        count = kept;
+        Arrays.fill(firstById, -1);
+        for (int i = count - 1; i >= 0; i--) {
+            if (ids[i] != UNKNOWN) {
+                firstById[ids[i]] = i;
+            }
+        }
+        grouped = null;
+        return true;
+    }
+
+    /**
+     * The first value of the named header, or null.
+     */
+    public String first(String name) {
+        int i = next(name, idOf(name), 0);
+        return i < 0 ? null : value(i);
+    }
+
+    /**
+     * Every value of the named header, in order; empty if there are none.
+     */
+    public List<String> all(String name) {
+        int id = idOf(name);
+        int first = next(name, id, 0);
+        if (first < 0) {
+            return Collections.emptyList();
+        }
+        int second = next(name, id, first + 1);
+        if (second < 0) {
+            return List.of(value(first));
+        }
+        List<String> list = new ArrayList<>();
+        for (int i = first; i >= 0; i = next(name, id, i + 1)) {
+            list.add(value(i));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public boolean contains(String name) {
+        return next(name, idOf(name), 0) >= 0;
+    }
+
+    /** Number of entries, counting a repeated name once per value. */
+    public int count() {
+        return count;
+    }
+
+    /** Name of entry i (0 <= i < count()), as it was added or sent. */
+    public String name(int i) {
+        String name = names[i];
+        if (name == null) {
+            name = decode(ranges[4 * i], ranges[4 * i + 1]);
+            names[i] = name;
+        }
+        return name;
+    }
+
+    /** Value of entry i (0 <= i < count()). */
+    public String value(int i) {
+        String value = values[i];
+        if (value == null) {
+            value = decode(ranges[4 * i + 2], ranges[4 * i + 3]);
+            values[i] = value;
+        }
+        return value;
+    }
+
+    // Index of the first entry at or after 'from' with this name, or -1
+    private int next(String name, int id, int from) {
+        if (id != UNKNOWN) {
+            int first = firstById[id];
+            if (first < 0 || from <= first) {
+                return first;
+            }
+        }
+        for (int i = from; i < count; i++) {
+            if (matches(i, id, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int i, int id, String name) {
+        if (id != UNKNOWN || ids[i] != UNKNOWN) {
+            return ids[i] == id;
+        }
+        String known = names[i];
+        return known != null
+                ? known.equalsIgnoreCase(name)
+                : equalsIgnoreCase(bytes, ranges[4 * i], ranges[4 * i + 1], name);
+    }
+
+    private String decode(int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // ---- Map view ----
+
+    @Override
+    public List<String> get(Object key) {
+        if (!(key instanceof String name)) {
+            return null;
+        }
+        List<String> values = all(name);
+        return values.isEmpty() ? null : values;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String name && contains(name);
+    }
+
+    @Override
+    public List<String> put(String name, List<String> values) {
+        List<String> old = get(name);
+        removeAll(name);
+        for (String value : values) {
+            add(name, value);
+        }
+        return old;
+    }
+
+    @Override
+    public List<String> remove(Object key) {
+        if (!(key instanceof String name)) {
+            return null;
+        }
+        List<String> old = get(name);
+        removeAll(name);
+        return old;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public int size() {
+        return grouped().size();
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet() {
+        return grouped().entrySet();
+    }
+
+    // name -> values, under the first spelling of each name, in order of first appearance
+    private Map<String, List<String>> grouped() {
+        Map<String, List<String>> map = grouped;
+        if (map == null) {
+            map = new LinkedHashMap<>();
+            boolean[] done = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                String name = name(i);
+                int id = ids[i];
+                List<String> list = new ArrayList<>();
+                for (int j = i; j < count; j++) {
+                    if (!done[j] && matches(j, id, name)) {
+                        list.add(value(j));
+                        done[j] = true;
+                    }
+                }
+                map.put(name, Collections.unmodifiableList(list));
+            }
+            map = Collections.unmodifiableMap(map);
+            grouped = map;
+        }
+        return map;
+    }
+
+    // ---- name resolution ----
+
+    private static int idOf(String name) {
+        if (name.length() >= KNOWN_BY_LENGTH.length) {
+            return UNKNOWN;
+        }
+        for (int id : KNOWN_BY_LENGTH[name.length()]) {
+            if (KNOWN[id].equalsIgnoreCase(name)) {
+                return id;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static int idOf(byte[] bytes, int start, int end) {
+        if (end - start >= KNOWN_BY_LENGTH.length) {
+            return UNKNOWN;
+        }
+        for (int id : KNOWN_BY_LENGTH[end - start]) {
+            if (equalsIgnoreCase(bytes, start, end, KNOWN[id])) {
+                return id;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * True if bytes[start, end) spell the ASCII name s, ignoring case.
+     */
+    public static boolean equalsIgnoreCase(byte[] bytes, int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int k = 0; k < s.length(); k++) {
+            int b = bytes[start + k];
+            int c = s.charAt(k);
+            if (b != c && toLower(b) != toLower(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toLower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
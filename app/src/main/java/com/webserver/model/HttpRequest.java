@@ -1,35 +1,65 @@
 package com.webserver.model;
 
-import java.util.Collections;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 
 public class HttpRequest {
     private final String method;
     private final String path;
-    private final Map<String, List<String>> headers;
+    private final String httpVersion;
+    private final Headers headers;
 
     // Keep a text body if you want it for form submissions
-    private final String textBody;
+    // (null until first asked for: decoded from rawBody on demand)
+    private String textBody;
 
     // New field to store raw bytes for binary data
-    private final byte[] rawBody;
+    // (null until first asked for when the body is streamed)
+    private byte[] rawBody;
+
+    // The body still on the connection, or null once it is in rawBody
+    private InputStream bodyStream;
+
+    public HttpRequest(
+            String method,
+            String path,
+            Map<String, List<String>> headers,
+            String textBody,
+            byte[] rawBody
+    ) {
+        this(method, path, "HTTP/1.1", headers, textBody, rawBody);
+    }
 
     public HttpRequest(
             String method,
             String path,
+            String httpVersion,
             Map<String, List<String>> headers,
             String textBody,
             byte[] rawBody
     ) {
         this.method = method;
         this.path = path;
-        this.headers = Collections.unmodifiableMap(headers);
+        this.httpVersion = httpVersion;
+        this.headers = Headers.copyOf(headers);
         this.textBody = textBody;
         this.rawBody = rawBody;
     }
 
+    private HttpRequest(String method, String path, String httpVersion,
+                        Map<String, List<String>> headers, InputStream bodyStream) {
+        this(method, path, httpVersion, headers, null, null);
+        this.bodyStream = bodyStream;
+    }
+
     public String getMethod() {
         return method;
     }
@@ -38,35 +68,106 @@ public class HttpRequest {
         return path;
     }
 
-    public Map<String, List<String>> getHeaders() {
+    /**
+     * e.g. "HTTP/1.1" or "HTTP/1.0", as sent on the request line.
+     */
+    public String getHttpVersion() {
+        return httpVersion;
+    }
+
+    public Headers getHeaders() {
         return headers;
     }
 
     /**
      * For form data or JSON, you can read it as text.
      * But if it's binary, this might be empty.
+     *
+     * Decoded from the raw body on first call, in the charset named by
+     * Content-Type (UTF-8 if it names none), so a binary upload is never
+     * held a second time as a String nobody reads.
      */
     public String getTextBody() {
+        if (textBody == null) {
+            byte[] bytes = getRawBody();
+            textBody = bytes == null ? "" : new String(bytes, bodyCharset());
+        }
         return textBody;
     }
 
+    // The charset parameter of Content-Type, or UTF-8 if it is missing or unknown
+    private Charset bodyCharset() {
+        String contentType = headers.first(Headers.CONTENT_TYPE);
+        if (contentType != null) {
+            int at = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (at >= 0) {
+                String name = contentType.substring(at + "charset=".length());
+                int end = name.indexOf(';');
+                name = (end >= 0 ? name.substring(0, end) : name).trim();
+                if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+                    name = name.substring(1, name.length() - 1);
+                }
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException unknown) {
+                    // fall back to UTF-8
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
     /**
      * For binary data (e.g. a .zip), read from here.
      * Could also be non-empty even for textual requests
      * if you prefer a single approach for the body.
      */
     public byte[] getRawBody() {
+        if (rawBody == null && bodyStream != null) {
+            // read a streamed body in full the first time someone wants it whole
+            try {
+                rawBody = bodyStream.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read request body", e);
+            }
+            bodyStream = null;
+        }
         return rawBody;
     }
 
+    /**
+     * The body as a stream. For a request read off a blocking connection this
+     * reads straight from the socket, so a large upload never has to be in
+     * memory at once; it ends where the body ends, whether the client sent a
+     * Content-Length or chunks. Read the body either this way or with
+     * getRawBody(), not both: the stream can only be read once, and
+     * getRawBody() afterwards only returns what was left.
+     */
+    public InputStream getBodyStream() {
+        if (bodyStream != null) {
+            return bodyStream;
+        }
+        return new ByteArrayInputStream(rawBody != null ? rawBody : new byte[0]);
+    }
+
     // Helper methods for headers & query params and common operations
     public Optional<String> getFirstHeader(String name) {
-        List<String> values = headers.get(name.toLowerCase());
-        return values != null && !values.isEmpty() ? Optional.of(values.get(0)) : Optional.empty();
+        return Optional.ofNullable(headers.first(name));
+    }
+
+    /**
+     * First value of the named header (any case), or null. Does not allocate
+     * beyond decoding the value the first time it is read.
+     */
+    public String getHeader(String name) {
+        return headers.first(name);
     }
 
+    /**
+     * Values of the named header, matching the name in any case.
+     */
     public List<String> getHeaders(String name) {
-        return headers.getOrDefault(name.toLowerCase(), Collections.emptyList());
+        return headers.all(name);
     }
 
     public Optional<String> getQueryParam(String name) {
@@ -92,7 +193,9 @@ public class HttpRequest {
 
     public boolean hasBody() {
         // If you keep text plus bytes, you can decide what "hasBody" means
-        return (rawBody != null && rawBody.length > 0)
+        // (a streamed body is assumed non-empty until it has been read)
+        return (rawBody == null && bodyStream != null)
+                || (rawBody != null && rawBody.length > 0)
                 || (textBody != null && !textBody.isEmpty());
     }
 
@@ -100,21 +203,29 @@ public class HttpRequest {
     public static class Builder {
         private String method;
         private String path;
+        private String httpVersion = "HTTP/1.1";
         private Map<String, List<String>> headers;
         private String textBody = "";
         private byte[] rawBody = new byte[0];
+        private InputStream bodyStream;
 
         public Builder setMethod(String method) { this.method = method; return this; }
         public Builder setPath(String path) { this.path = path; return this; }
+        public Builder setHttpVersion(String httpVersion) { this.httpVersion = httpVersion; return this; }
         public Builder setHeaders(Map<String, List<String>> headers) { this.headers = headers; return this; }
         public Builder setTextBody(String body) { this.textBody = body; return this; }
         public Builder setRawBody(byte[] rawBody) { this.rawBody = rawBody; return this; }
+        // A body to be read on demand; it replaces any text or raw body
+        public Builder setBodyStream(InputStream bodyStream) { this.bodyStream = bodyStream; return this; }
 
         public HttpRequest build() {
             if (method == null || path == null || headers == null) {
                 throw new IllegalStateException("Method, path, and headers are required");
             }
-            return new HttpRequest(method, path, headers, textBody, rawBody);
+            if (bodyStream != null) {
+                return new HttpRequest(method, path, httpVersion, headers, bodyStream);
+            }
+            return new HttpRequest(method, path, httpVersion, headers, textBody, rawBody);
         }
     }
 
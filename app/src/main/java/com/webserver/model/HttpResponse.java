@@ -1,49 +1,122 @@
 package com.webserver.model;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import com.webserver.http.ResponseBuilder;
 
 public class HttpResponse {
     private final int statusCode;
     private final String statusMessage;
-    private final Map<String, List<String>> headers;
+    private final Headers headers;
     private final String body;
 
     // New field for binary data
     private final byte[] rawBody;
 
+    // Body streamed to the client as it is written, and its length if known (-1 if not)
+    private final BodySource bodySource;
+    private final long bodyLength;
+
+    // Body sent straight from a file, bodyLength bytes of it from bodyOffset on
+    private final Path bodyFile;
+    private final long bodyOffset;
+
+    // Body sent from a buffer the response does not own (a shared file mapping),
+    // and what to run once it has been written
+    private final ByteBuffer bodyBuffer;
+    private final Runnable bodyRelease;
+
     private HttpResponse(Builder builder) {
         this.statusCode = builder.statusCode;
         this.statusMessage = builder.statusMessage;
         this.headers = builder.headers;
         this.body = builder.body;
         this.rawBody = builder.rawBody;
+        this.bodySource = builder.bodySource;
+        this.bodyLength = builder.bodyLength;
+        this.bodyFile = builder.bodyFile;
+        this.bodyOffset = builder.bodyOffset;
+        this.bodyBuffer = builder.bodyBuffer;
+        this.bodyRelease = builder.bodyRelease;
     }
 
     public int getStatusCode() { return statusCode; }
     public String getStatusMessage() { return statusMessage; }
-    public Map<String, List<String>> getHeaders() { return headers; }
+    public Headers getHeaders() { return headers; }
     public String getBody() { return body; }
 
     public byte[] getRawBody() {
         return rawBody;
     }
 
+    /**
+     * The streamed body, or null if the body is getRawBody() or getBody().
+     */
+    public BodySource getBodySource() {
+        return bodySource;
+    }
+
+    /**
+     * The file the body is sent from, or null. Sent without passing through
+     * the heap where the connection allows (FileChannel.transferTo).
+     */
+    public Path getBodyFile() {
+        return bodyFile;
+    }
+
+    /** Where in getBodyFile() the body starts. */
+    public long getBodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * The buffer the body is sent from (its remaining bytes), or null.
+     */
+    public ByteBuffer getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * Run by whoever writes the response once it is done with getBodyBuffer(),
+     * written or not; null if there is nothing to release.
+     */
+    public Runnable getBodyRelease() {
+        return bodyRelease;
+    }
+
+    /**
+     * Length of the streamed or file body, or -1 if it is only known once it has all
+     * been read; such a body is sent with chunked Transfer-Encoding.
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
     // Called to write the final HTTP response out to the socket
     public void write(OutputStream outputStream) throws IOException {
         ResponseBuilder.write(outputStream, this);
     }
 
+    // Same, on a persistent connection that stays open (keepAlive) or closes after this response
+    public void write(OutputStream outputStream, boolean keepAlive) throws IOException {
+        ResponseBuilder.write(outputStream, this, keepAlive);
+    }
+
     public static class Builder {
         private int statusCode = 200;
         private String statusMessage = "OK";
-        private Map<String, List<String>> headers = new HashMap<>();
+        private final Headers headers = new Headers();
         private String body = "";
         private byte[] rawBody = null;
+        private BodySource bodySource = null;
+        private long bodyLength = -1;
+        private Path bodyFile = null;
+        private long bodyOffset = 0;
+        private ByteBuffer bodyBuffer = null;
+        private Runnable bodyRelease = null;
 
         public Builder setStatusCode(int statusCode) {
             this.statusCode = statusCode;
@@ -56,7 +129,12 @@ public class HttpResponse {
         }
 
         public Builder addHeader(String name, String value) {
-            headers.computeIfAbsent(name, k -> new java.util.ArrayList<>()).add(value);
+            headers.add(name, value);
+            return this;
+        }
+
+        public Builder removeHeader(String name) {
+            headers.removeAll(name);
             return this;
         }
 
@@ -71,9 +149,69 @@ public class HttpResponse {
             return this;
         }
 
+        /**
+         * Stream the body from source, opened when the response is written,
+         * instead of holding it in memory. length is its size in bytes, or -1
+         * if that is not known up front.
+         */
+        public Builder setBodySource(BodySource source, long length) {
+            this.bodySource = source;
+            this.bodyLength = length;
+            return this;
+        }
+
+        /**
+         * Send the first 'length' bytes of file as the body, straight from
+         * the file when the response is written.
+         */
+        public Builder setBodyFile(Path file, long length) {
+            return setBodyFile(file, 0, length);
+        }
+
+        /**
+         * Send 'length' bytes of file from 'offset' on as the body, e.g. one
+         * byte range of it.
+         */
+        public Builder setBodyFile(Path file, long offset, long length) {
+            this.bodyFile = file;
+            this.bodyOffset = offset;
+            this.bodyLength = length;
+            return this;
+        }
+
+        /**
+         * Send buffer's remaining bytes as the body, then run release (if not
+         * null) to hand the buffer back, e.g. to unpin a shared mapping.
+         */
+        public Builder setBodyBuffer(ByteBuffer buffer, Runnable release) {
+            this.bodyBuffer = buffer;
+            this.bodyRelease = release;
+            this.bodyLength = buffer.remaining();
+            return this;
+        }
+
         public HttpResponse build() {
             return new HttpResponse(this);
         }
+
+        /** A builder holding everything response has, to change some of it. */
+        public static Builder from(HttpResponse response) {
+            Builder builder = new Builder()
+                    .setStatusCode(response.statusCode)
+                    .setStatusMessage(response.statusMessage);
+            for (int i = 0; i < response.headers.count(); i++) {
+                builder.headers.add(response.headers.name(i), response.headers.value(i));
+            }
+            builder.body = response.body;
+            builder.rawBody = response.rawBody;
+            builder.bodySource = response.bodySource;
+            builder.bodyLength = response.bodyLength;
+            builder.bodyFile = response.bodyFile;
+            builder.bodyOffset = response.bodyOffset;
+            builder.bodyBuffer = response.bodyBuffer;
+            builder.bodyRelease = response.bodyRelease;
+            return builder;
+        }
     }
 
     // Convenience static methods for common statuses
@@ -90,4 +228,13 @@ public class HttpResponse {
         return new Builder().setStatusCode(500).setStatusMessage("Internal Server Error")
                 .setBody("500 Internal Server Error").build();
     }
+
+    /**
+     * Opens a streamed response body. Called once, by whoever writes the
+     * response, which closes the stream when it is done with it.
+     */
+    @FunctionalInterface
+    public interface BodySource {
+        InputStream open() throws IOException;
+    }
 }
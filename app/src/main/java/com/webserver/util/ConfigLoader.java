@@ -2,6 +2,8 @@ package com.webserver.util;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class ConfigLoader {
@@ -36,8 +38,76 @@ public class ConfigLoader {
         properties.setProperty("webroot", "./webroot");
         properties.setProperty("max_threads", "10");
         properties.setProperty("connection_timeout", "30000");
+        properties.setProperty("max_requests_per_connection", "100");
+        properties.setProperty("max_pipelined_requests", "16");
         properties.setProperty("bind_address", "127.0.0.1");
 
+        // Connection engine: "blocking" (thread per connection) or "nio" (selector event loops)
+        properties.setProperty("server.engine", "blocking");
+        properties.setProperty("nio.event_loops", "2");
+        // Largest request (head and body) the nio engine buffers; bigger ones get 413
+        properties.setProperty("nio.max_request_bytes", "16777216");
+        // Request threads: "virtual" (one virtual thread per task) or "platform" (max_threads pool);
+        // per-tenant fair queueing needs virtual, a fixed pool queues connections FIFO
+        properties.setProperty("server.executor", "virtual");
+
+        // Admission control: work waiting for a request thread beyond these limits gets a 503,
+        // as does work beyond max_in_flight accepted and not yet done (the bound under virtual)
+        properties.setProperty("admission.max_queue_depth", "200");
+        properties.setProperty("admission.max_queue_wait_ms", "1000");
+        properties.setProperty("admission.max_in_flight", "10000");
+        properties.setProperty("admission.retry_after_seconds", "1");
+
+        // Adaptive concurrency limit on requests inside RequestProcessor.process
+        // (capped at max_threads with the platform executor)
+        properties.setProperty("limiter.initial_limit", "20");
+        properties.setProperty("limiter.min_limit", "4");
+        properties.setProperty("limiter.max_limit", "1000");
+
+        // Per-tenant fair queueing for the concurrency limit; weights as "tenantId:weight,..."
+        properties.setProperty("tenant.weights", "");
+        properties.setProperty("tenant.default_weight", "1");
+        properties.setProperty("tenant.max_queued", "100");
+
+        // Per-tenant quotas as "tenantId:limit,..."; 0 means unlimited
+        properties.setProperty("tenant.rate_limits", "");
+        properties.setProperty("tenant.default_rate_limit", "0");
+        properties.setProperty("tenant.bandwidth_limits", "");
+        properties.setProperty("tenant.default_bandwidth_limit", "0");
+
+        // Shared Azure Blob HTTP connection pool
+        properties.setProperty("azure.pool_size", "50");
+
+        // App files kept on local disk in cache_dir, up to cache_max_bytes
+        // (0 = off); blobs over cache_max_entry_bytes are always streamed. A miss
+        // waits up to cache_fill_wait_ms for another's download of the same file.
+        // After cache_revalidate_ms a file's ETag is checked with storage (0 = never)
+        properties.setProperty("azure.cache_dir", "./appcache");
+        properties.setProperty("azure.cache_max_bytes", "1073741824");
+        properties.setProperty("azure.cache_max_entry_bytes", "67108864");
+        properties.setProperty("azure.cache_fill_wait_ms", "10000");
+        properties.setProperty("azure.cache_revalidate_ms", "60000");
+
+        // Static files of at least mmap_threshold bytes are served from a shared
+        // memory mapping (0 = off), up to mmap_max_bytes mapped at once
+        properties.setProperty("static.mmap_threshold", "0");
+        properties.setProperty("static.mmap_max_bytes", "1073741824");
+
+        // Static file cache: contents of files up to cache_max_entry_bytes held,
+        // cache_max_bytes in all; the webroot watched for changes if cache_watch,
+        // and then up to cache_missing_paths paths naming no file remembered
+        properties.setProperty("static.cache_max_bytes", "67108864");
+        properties.setProperty("static.cache_max_entry_bytes", "1048576");
+        properties.setProperty("static.cache_watch", "true");
+        properties.setProperty("static.cache_missing_paths", "10000");
+
+        // Response compression: gzip at this level for compressible bodies of at
+        // least min_size bytes; gzipped static files kept up to cache_bytes
+        properties.setProperty("compression.enabled", "true");
+        properties.setProperty("compression.level", "6");
+        properties.setProperty("compression.min_size", "1024");
+        properties.setProperty("compression.cache_bytes", "33554432");
+
         // Add defaults for PHP script processing
         properties.setProperty("php.api.url", "http://20.86.80.12:5000/run-php");
         properties.setProperty("php.api.key", "");
@@ -73,6 +143,173 @@ public class ConfigLoader {
         return Integer.parseInt(properties.getProperty("connection_timeout"));
     }
 
+    public int getMaxRequestsPerConnection() {
+        return Integer.parseInt(properties.getProperty("max_requests_per_connection"));
+    }
+
+    public int getMaxPipelinedRequests() {
+        return Integer.parseInt(properties.getProperty("max_pipelined_requests"));
+    }
+
+    public String getEngine() {
+        return properties.getProperty("server.engine");
+    }
+
+    public String getExecutor() {
+        return properties.getProperty("server.executor");
+    }
+
+    public int getMaxQueueDepth() {
+        return Integer.parseInt(properties.getProperty("admission.max_queue_depth"));
+    }
+
+    public int getMaxQueueWaitMillis() {
+        return Integer.parseInt(properties.getProperty("admission.max_queue_wait_ms"));
+    }
+
+    public int getMaxInFlight() {
+        return Integer.parseInt(properties.getProperty("admission.max_in_flight"));
+    }
+
+    public int getRetryAfterSeconds() {
+        return Integer.parseInt(properties.getProperty("admission.retry_after_seconds"));
+    }
+
+    public int getLimiterInitialLimit() {
+        return Integer.parseInt(properties.getProperty("limiter.initial_limit"));
+    }
+
+    public int getLimiterMinLimit() {
+        return Integer.parseInt(properties.getProperty("limiter.min_limit"));
+    }
+
+    public int getLimiterMaxLimit() {
+        return Integer.parseInt(properties.getProperty("limiter.max_limit"));
+    }
+
+    /**
+     * Scheduling weight per tenant id from "tenant.weights", e.g. "3:4,7:0.5".
+     * Tenants not listed use tenant.default_weight.
+     */
+    public Map<Integer, Double> getTenantWeights() {
+        return getTenantMap("tenant.weights");
+    }
+
+    /** Requests per second allowed per tenant id (tenant.rate_limits). */
+    public Map<Integer, Double> getTenantRateLimits() {
+        return getTenantMap("tenant.rate_limits");
+    }
+
+    public double getTenantDefaultRateLimit() {
+        return Double.parseDouble(properties.getProperty("tenant.default_rate_limit"));
+    }
+
+    /** Response bytes per second allowed per tenant id (tenant.bandwidth_limits). */
+    public Map<Integer, Double> getTenantBandwidthLimits() {
+        return getTenantMap("tenant.bandwidth_limits");
+    }
+
+    public double getTenantDefaultBandwidthLimit() {
+        return Double.parseDouble(properties.getProperty("tenant.default_bandwidth_limit"));
+    }
+
+    // "tenantId:value,tenantId:value" -> map; malformed entries are skipped
+    private Map<Integer, Double> getTenantMap(String key) {
+        Map<Integer, Double> values = new HashMap<>();
+        String value = properties.getProperty(key, "");
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length == 2) {
+                try {
+                    values.put(Integer.parseInt(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    Logger.warn("Ignoring bad " + key + " entry: " + entry);
+                }
+            }
+        }
+        return values;
+    }
+
+    public double getTenantDefaultWeight() {
+        return Double.parseDouble(properties.getProperty("tenant.default_weight"));
+    }
+
+    public int getTenantMaxQueued() {
+        return Integer.parseInt(properties.getProperty("tenant.max_queued"));
+    }
+
+    public int getNioEventLoops() {
+        return Integer.parseInt(properties.getProperty("nio.event_loops"));
+    }
+
+    public int getNioMaxRequestBytes() {
+        return Integer.parseInt(properties.getProperty("nio.max_request_bytes"));
+    }
+
+    public int getAzurePoolSize() {
+        return Integer.parseInt(properties.getProperty("azure.pool_size"));
+    }
+
+    public String getAzureCacheDir() {
+        return properties.getProperty("azure.cache_dir");
+    }
+
+    public long getAzureCacheMaxBytes() {
+        return Long.parseLong(properties.getProperty("azure.cache_max_bytes"));
+    }
+
+    public long getAzureCacheMaxEntryBytes() {
+        return Long.parseLong(properties.getProperty("azure.cache_max_entry_bytes"));
+    }
+
+    public long getAzureCacheFillWaitMillis() {
+        return Long.parseLong(properties.getProperty("azure.cache_fill_wait_ms"));
+    }
+
+    public long getAzureCacheRevalidateMillis() {
+        return Long.parseLong(properties.getProperty("azure.cache_revalidate_ms"));
+    }
+
+    public long getStaticMmapThreshold() {
+        return Long.parseLong(properties.getProperty("static.mmap_threshold"));
+    }
+
+    public long getStaticMmapMaxBytes() {
+        return Long.parseLong(properties.getProperty("static.mmap_max_bytes"));
+    }
+
+    public long getStaticCacheMaxBytes() {
+        return Long.parseLong(properties.getProperty("static.cache_max_bytes"));
+    }
+
+    public long getStaticCacheMaxEntryBytes() {
+        return Long.parseLong(properties.getProperty("static.cache_max_entry_bytes"));
+    }
+
+    public boolean isStaticCacheWatch() {
+        return Boolean.parseBoolean(properties.getProperty("static.cache_watch"));
+    }
+
+    public int getStaticCacheMissingPaths() {
+        return Integer.parseInt(properties.getProperty("static.cache_missing_paths"));
+    }
+
+    public boolean isCompressionEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("compression.enabled"));
+    }
+
+    public int getCompressionLevel() {
+        return Integer.parseInt(properties.getProperty("compression.level"));
+    }
+
+    public long getCompressionMinSize() {
+        return Long.parseLong(properties.getProperty("compression.min_size"));
+    }
+
+    public long getCompressionCacheBytes() {
+        return Long.parseLong(properties.getProperty("compression.cache_bytes"));
+    }
+
     public String get(String key) {
         return properties.getProperty(key);
     }
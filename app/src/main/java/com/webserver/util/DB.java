@@ -10,20 +10,27 @@ import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * DB.java: Row-level CRUD version, removing the destructive "TRUNCATE TABLE" approach.
  *
+ * Methods are not synchronized: every call opens its own JDBC connection, so
+ * the only shared state is the connection settings and rootCache. Holding a
+ * monitor across a JDBC round trip would also pin a virtual thread to its
+ * carrier (server.executor=virtual).
  */
 public class DB {
 
-    private static Root rootCache;  // Optional in-memory cache, if we still want it
-    private static String dbUrl;
-    private static String dbUser;
-    private static String dbPassword;
+    private static volatile Root rootCache;  // Optional in-memory cache, if we still want it
+    private static final ReentrantLock rootLock = new ReentrantLock();
+    private static volatile String dbUrl;    // written last by loadDbConfig()
+    private static volatile String dbUser;
+    private static volatile String dbPassword;
 
     private static final Gson gson = new Gson();
-    public static synchronized List<App> listAllApps() {
+    public static List<App> listAllApps() {
         loadDbConfig(); // ensure we have connection info
         List<App> results = new ArrayList<>();
 
@@ -55,7 +62,7 @@ public class DB {
         return results;
     }
 
-    public static synchronized List<App> listAppsForTenant(int tenantId) {
+    public static List<App> listAppsForTenant(int tenantId) {
         loadDbConfig();
         List<App> results = new ArrayList<>();
 
@@ -90,7 +97,7 @@ public class DB {
         return results;
     }
 
-    public static synchronized App findAppByTenant(int tenantId, int appId) {
+    public static App findAppByTenant(int tenantId, int appId) {
         loadDbConfig();
         App a = null;
 
@@ -126,7 +133,7 @@ public class DB {
         return a;
     }
 
-    public static synchronized App findAppById(int appId) {
+    public static App findAppById(int appId) {
         loadDbConfig();
         App a = null;
 
@@ -160,7 +167,7 @@ public class DB {
         return a;
     }
 
-    public static synchronized List<User> listAllUsers() {
+    public static List<User> listAllUsers() {
     loadDbConfig();
     List<User> results = new ArrayList<>();
 
@@ -184,7 +191,7 @@ public class DB {
     return results;
 }
 
-    public static synchronized List<User> findUsersByTenantId(int tenantId) {
+    public static List<User> findUsersByTenantId(int tenantId) {
     loadDbConfig();
     List<User> results = new ArrayList<>();
 
@@ -257,7 +264,7 @@ public class DB {
     // ------------------------------------------------------------------------------------
     //  AUTH HELPERS
     // ------------------------------------------------------------------------------------
-    public static synchronized User findUserByUsername(String username) {
+    public static User findUserByUsername(String username) {
         loadDbConfig(); // ensure we have DB credentials
 
         User found = null;
@@ -285,7 +292,7 @@ public class DB {
         return found;
     }
 
-    public static synchronized Tenant findTenantByEmail(String tenantEmail) {
+    public static Tenant findTenantByEmail(String tenantEmail) {
         loadDbConfig();
 
         Tenant tenant = null;
@@ -339,7 +346,7 @@ public class DB {
     //  TENANT CRUD
     // ------------------------------------------------------------------------------------
 
-    public static synchronized Tenant createTenant(Tenant t) {
+    public static Tenant createTenant(Tenant t) {
     loadDbConfig();
     if (t == null) return null;
 
@@ -355,9 +362,9 @@ public class DB {
         ps.executeUpdate();
 
         // Also add to in-memory
-        if (rootCache != null) {
-            rootCache.tenants.add(t);
-        }
+        updateRootCache(root -> {
+            root.tenants.add(t);
+        });
 
         return t;
     } catch (Exception e) {
@@ -366,7 +373,7 @@ public class DB {
     }
 }
 
-    public static synchronized Tenant updateTenant(Tenant t) {
+    public static Tenant updateTenant(Tenant t) {
         loadDbConfig();
         if (t == null) return null;
 
@@ -380,14 +387,14 @@ public class DB {
             ps.executeUpdate();
 
             // Also update in memory
-            if (rootCache != null) {
-                for (Tenant x : rootCache.tenants) {
+            updateRootCache(root -> {
+                for (Tenant x : root.tenants) {
                     if (x.tenantId == t.tenantId) {
                         x.tenantName = t.tenantName;
                         break;
                     }
                 }
-            }
+            });
 
             return t;
         } catch (Exception e) {
@@ -396,7 +403,7 @@ public class DB {
         }
     }
 
-    public static synchronized boolean deleteTenant(int tenantId) {
+    public static boolean deleteTenant(int tenantId) {
         loadDbConfig();
 
         String sql = "DELETE FROM Tenants WHERE tenantId = ?";
@@ -406,9 +413,9 @@ public class DB {
             ps.setInt(1, tenantId);
             ps.executeUpdate();
 
-            if (rootCache != null) {
-                rootCache.tenants.removeIf(t -> t.tenantId == tenantId);
-            }
+            updateRootCache(root -> {
+                root.tenants.removeIf(t -> t.tenantId == tenantId);
+            });
             return true;
         } catch (Exception e) {
             System.err.println("deleteTenant error: " + e.getMessage());
@@ -416,7 +423,7 @@ public class DB {
         }
     }
 
-    public static synchronized List<Tenant> listAllTenants() {
+    public static List<Tenant> listAllTenants() {
     List<Tenant> results = new ArrayList<>();
     loadDbConfig();
     String sql = "SELECT tenantId, tenantName FROM Tenants";
@@ -435,7 +442,7 @@ public class DB {
     return results;
 }
 
-    public static synchronized Tenant findTenantById(int tenantId) {
+    public static Tenant findTenantById(int tenantId) {
         loadDbConfig();
         Tenant t = null;
         String sql = "SELECT tenantId, tenantName FROM Tenants WHERE tenantId = ?";
@@ -461,7 +468,7 @@ public class DB {
     // ------------------------------------------------------------------------------------
     //  USER CRUD
     // ------------------------------------------------------------------------------------
-    public static synchronized User createUser(User u) {
+    public static User createUser(User u) {
         loadDbConfig();
         if (u == null) return null;
 
@@ -481,9 +488,9 @@ public class DB {
             ps.executeUpdate();
 
             // Also add to in-memory
-            if (rootCache != null) {
-                rootCache.users.add(u);
-            }
+            updateRootCache(root -> {
+                root.users.add(u);
+            });
             return u;
         } catch (Exception e) {
             System.err.println("createUser error: " + e.getMessage());
@@ -491,7 +498,7 @@ public class DB {
         }
     }
 
-    public static synchronized User updateUser(User u) {
+    public static User updateUser(User u) {
         loadDbConfig();
         if (u == null) return null;
 
@@ -509,8 +516,8 @@ public class DB {
             ps.executeUpdate();
 
             // Update in-memory
-            if (rootCache != null) {
-                for (User x : rootCache.users) {
+            updateRootCache(root -> {
+                for (User x : root.users) {
                     if (x.userId == u.userId) {
                         x.tenantId     = u.tenantId;
                         x.username     = u.username;
@@ -519,7 +526,7 @@ public class DB {
                         break;
                     }
                 }
-            }
+            });
             return u;
         } catch (Exception e) {
             System.err.println("updateUser error: " + e.getMessage());
@@ -527,7 +534,7 @@ public class DB {
         }
     }
 
-    public static synchronized boolean deleteUser(int userId) {
+    public static boolean deleteUser(int userId) {
         loadDbConfig();
 
         String sql = "DELETE FROM Users WHERE userId = ?";
@@ -537,9 +544,9 @@ public class DB {
             ps.setInt(1, userId);
             ps.executeUpdate();
 
-            if (rootCache != null) {
-                rootCache.users.removeIf(u -> u.userId == userId);
-            }
+            updateRootCache(root -> {
+                root.users.removeIf(u -> u.userId == userId);
+            });
             return true;
         } catch (Exception e) {
             System.err.println("deleteUser error: " + e.getMessage());
@@ -550,7 +557,7 @@ public class DB {
     // ------------------------------------------------------------------------------------
     //  APP CRUD
     // ------------------------------------------------------------------------------------
-    public static synchronized App createApp(App a) {
+    public static App createApp(App a) {
         loadDbConfig();
         if (a == null) return null;
 
@@ -571,9 +578,9 @@ public class DB {
             ps.executeUpdate();
 
             // Also add to in-memory
-            if (rootCache != null) {
-                rootCache.apps.add(a);
-            }
+            updateRootCache(root -> {
+                root.apps.add(a);
+            });
             return a;
         } catch (Exception e) {
             System.err.println("createApp error: " + e.getMessage());
@@ -581,7 +588,7 @@ public class DB {
         }
     }
 
-    public static synchronized App updateApp(App a) {
+    public static App updateApp(App a) {
         loadDbConfig();
         if (a == null) return null;
 
@@ -601,8 +608,8 @@ public class DB {
             ps.executeUpdate();
 
             // Update in-memory
-            if (rootCache != null) {
-                for (App x : rootCache.apps) {
+            updateRootCache(root -> {
+                for (App x : root.apps) {
                     if (x.appId == a.appId) {
                         x.tenantId    = a.tenantId;
                         x.name        = a.name;
@@ -613,7 +620,7 @@ public class DB {
                         break;
                     }
                 }
-            }
+            });
             return a;
         } catch (Exception e) {
             System.err.println("updateApp error: " + e.getMessage());
@@ -621,7 +628,7 @@ public class DB {
         }
     }
 
-    public static synchronized boolean deleteApp(int appId) {
+    public static boolean deleteApp(int appId) {
         loadDbConfig();
 
         String sql = "DELETE FROM Apps WHERE appId = ?";
@@ -631,9 +638,9 @@ public class DB {
             ps.setInt(1, appId);
             ps.executeUpdate();
 
-            if (rootCache != null) {
-                rootCache.apps.removeIf(a -> a.appId == appId);
-            }
+            updateRootCache(root -> {
+                root.apps.removeIf(a -> a.appId == appId);
+            });
             return true;
         } catch (Exception e) {
             System.err.println("deleteApp error: " + e.getMessage());
@@ -644,7 +651,7 @@ public class DB {
     // ------------------------------------------------------------------------------------
     //  ENGINEER CRUD
     // ------------------------------------------------------------------------------------
-    public static synchronized Engineer createEngineer(Engineer e) {
+    public static Engineer createEngineer(Engineer e) {
         loadDbConfig();
         if (e == null) return null;
 
@@ -658,9 +665,9 @@ public class DB {
             ps.setString(3, e.role);
             ps.executeUpdate();
 
-            if (rootCache != null) {
-                rootCache.engineers.add(e);
-            }
+            updateRootCache(root -> {
+                root.engineers.add(e);
+            });
             return e;
         } catch (Exception ex) {
             System.err.println("createEngineer error: " + ex.getMessage());
@@ -668,7 +675,7 @@ public class DB {
         }
     }
 
-    public static synchronized Engineer updateEngineer(Engineer e) {
+    public static Engineer updateEngineer(Engineer e) {
         loadDbConfig();
         if (e == null) return null;
 
@@ -682,15 +689,15 @@ public class DB {
             ps.setInt(3, e.engineerId);
             ps.executeUpdate();
 
-            if (rootCache != null) {
-                for (Engineer x : rootCache.engineers) {
+            updateRootCache(root -> {
+                for (Engineer x : root.engineers) {
                     if (x.engineerId == e.engineerId) {
                         x.username = e.username;
                         x.role     = e.role;
                         break;
                     }
                 }
-            }
+            });
             return e;
         } catch (Exception ex) {
             System.err.println("updateEngineer error: " + ex.getMessage());
@@ -698,7 +705,7 @@ public class DB {
         }
     }
 
-    public static synchronized boolean deleteEngineer(int engineerId) {
+    public static boolean deleteEngineer(int engineerId) {
         loadDbConfig();
 
         String sql = "DELETE FROM Engineers WHERE engineerId = ?";
@@ -708,9 +715,9 @@ public class DB {
             ps.setInt(1, engineerId);
             ps.executeUpdate();
 
-            if (rootCache != null) {
-                rootCache.engineers.removeIf(en -> en.engineerId == engineerId);
-            }
+            updateRootCache(root -> {
+                root.engineers.removeIf(en -> en.engineerId == engineerId);
+            });
             return true;
         } catch (Exception ex) {
             System.err.println("deleteEngineer error: " + ex.getMessage());
@@ -725,15 +732,15 @@ public class DB {
      * We keep a load() method that reads from the DB and populates rootCache.
      * This is done once at startup or whenever you need to refresh in-memory.
      */
-    public static synchronized void load() {
+    public static void load() {
         System.out.println("Loading DB with new row-level approach...");
         loadDbConfig();
 
-        rootCache = new Root();
-        rootCache.tenants   = new ArrayList<>();
-        rootCache.users     = new ArrayList<>();
-        rootCache.apps      = new ArrayList<>();
-        rootCache.engineers = new ArrayList<>();
+        Root root = new Root();
+        root.tenants   = new ArrayList<>();
+        root.users     = new ArrayList<>();
+        root.apps      = new ArrayList<>();
+        root.engineers = new ArrayList<>();
 
         try (Connection conn = DriverManager.getConnection(dbUrl, dbUser, dbPassword)) {
             // Tenants
@@ -743,7 +750,7 @@ public class DB {
                     Tenant t = new Tenant();
                     t.tenantId   = rs.getInt("tenantId");
                     t.tenantName = rs.getString("tenantName");
-                    rootCache.tenants.add(t);
+                    root.tenants.add(t);
                 }
             }
 
@@ -759,7 +766,7 @@ public class DB {
                     u.username     = rs.getString("username");
                     u.role         = rs.getString("role");
                     u.passwordHash = rs.getString("passwordHash");
-                    rootCache.users.add(u);
+                    root.users.add(u);
                 }
             }
 
@@ -784,7 +791,7 @@ public class DB {
                         a.routes = new ArrayList<>();
                     }
 
-                    rootCache.apps.add(a);
+                    root.apps.add(a);
                 }
             }
 
@@ -797,7 +804,7 @@ public class DB {
                     e.engineerId = rs.getInt("engineerId");
                     e.username   = rs.getString("username");
                     e.role       = rs.getString("role");
-                    rootCache.engineers.add(e);
+                    root.engineers.add(e);
                 }
             }
 
@@ -806,9 +813,17 @@ public class DB {
         } catch (Exception e) {
             System.err.println("DB.load error: " + e.getMessage());
         }
+
+        // queries ran unlocked; only swapping the cache in takes the lock
+        rootLock.lock();
+        try {
+            rootCache = root;
+        } finally {
+            rootLock.unlock();
+        }
     }
 
-    public static synchronized Root getRoot() {
+    public static Root getRoot() {
         if (rootCache == null) {
             load();
         }
@@ -823,12 +838,26 @@ public class DB {
      * We keep it so we don't break older code, but it no longer does destructive writes.
      * Instead, we recommend you use createX/updateX/deleteX for row-level changes.
      */
-    public static synchronized void save() {
+    public static void save() {
         System.out.println("DB.save() is now a NO-OP. Use row-level CRUD instead.");
         // If you wanted to sync in-memory changes to DB, you could do it here,
         // but the old destructive approach is removed.
     }
 
+    /**
+     * Apply an in-place edit to rootCache, if it has been loaded.
+     */
+    private static void updateRootCache(Consumer<Root> edit) {
+        rootLock.lock();
+        try {
+            if (rootCache != null) {
+                edit.accept(rootCache);
+            }
+        } finally {
+            rootLock.unlock();
+        }
+    }
+
     // ------------------------------------------------------------------------------------
     //  HELPER: LOAD DB CONFIG
     // ------------------------------------------------------------------------------------
@@ -836,10 +865,12 @@ public class DB {
         if (dbUrl != null) {
             return; // already loaded
         }
+        // Racing callers just load the same values twice; dbUrl goes last so
+        // anyone who sees it set also sees the user and password
         ConfigLoader config = new ConfigLoader(); //
-        dbUrl      = config.get("db.url");
         dbUser     = config.get("db.user");
         dbPassword = config.get("db.password");
+        dbUrl      = config.get("db.url");
 
 
         System.out.println("DB config loaded: " + dbUrl);
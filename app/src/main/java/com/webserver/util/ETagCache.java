@@ -0,0 +1,88 @@
+package com.webserver.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ETagCache - strong ETags for webroot files, one content hash per file version.
+ *
+ * The ETag is the first 128 bits of the file's SHA-256, so it changes only
+ * when the bytes do. It is computed once and kept with the size and
+ * modification time it was computed for; while those still match the file's
+ * attributes (which the caller has read anyway) the cached tag is returned,
+ * so answering a revalidation reads nothing but the file's metadata.
+ */
+public class ETagCache {
+
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final ConcurrentHashMap<Path, Tag> tags = new ConcurrentHashMap<>();
+
+    /** A file version and its ETag. */
+    private record Tag(long size, FileTime modified, String etag) {}
+
+    /**
+     * The quoted strong ETag of file, whose current attributes are given;
+     * hashed only if this version of the file has not been seen before.
+     */
+    public String etag(Path file, BasicFileAttributes attributes) throws IOException {
+        Tag tag = tags.get(file);
+        if (tag != null && tag.size == attributes.size() && tag.modified.equals(attributes.lastModifiedTime())) {
+            return tag.etag;
+        }
+        tag = new Tag(attributes.size(), attributes.lastModifiedTime(), hash(file));
+        tags.put(file, tag);
+        return tag.etag;
+    }
+
+    /** The ETag of content already in memory, in the same form as etag(). */
+    public static String etagOf(byte[] content) {
+        MessageDigest digest = sha256();
+        digest.update(content);
+        return format(digest);
+    }
+
+    /** Forget a file's ETag, e.g. because it was deleted. */
+    public void invalidate(Path file) {
+        tags.remove(file);
+    }
+
+    /** Files with a cached ETag. */
+    public int size() {
+        return tags.size();
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return format(digest);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String format(MessageDigest digest) {
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+}
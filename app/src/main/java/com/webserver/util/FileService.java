@@ -1,11 +1,9 @@
 package com.webserver.util;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.io.FileInputStream;
 
 public class FileService {
     private final String webRoot;
@@ -15,27 +13,20 @@ public class FileService {
     }
 
     public byte[] readFile(String requestPath) throws IOException {
+        return Files.readAllBytes(resolveFile(requestPath));
+    }
+
+    /**
+     * The file under the webroot a request path names, for a caller that
+     * streams it rather than reading it all in.
+     */
+    public Path resolveFile(String requestPath) throws IOException {
         Path resolvedPath = resolvePath(requestPath);
         if (!isValidPath(resolvedPath))
         {
             throw new IOException("Not a valid path" + requestPath);
         }
-        File file = new File(resolvedPath.toString());
-        if (!file.exists() || !file.isFile()) {
-            throw new IOException("File not found" + requestPath);
-        }
-        FileInputStream fileInputStream = new FileInputStream(file);
-        byte [] fileBytes = new byte[(int)file.length()];
-        try
-        {
-            fileInputStream.read(fileBytes);
-            fileInputStream.close();
-        }
-        catch (IOException e)
-        {
-            throw e;
-        }
-        return fileBytes;
+        return resolvedPath;
     }
 
     public boolean isValidPath(Path path) {
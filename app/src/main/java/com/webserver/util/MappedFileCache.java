@@ -0,0 +1,228 @@
+package com.webserver.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * MappedFileCache - large static files served from one shared mapping each.
+ *
+ * A file of at least 'threshold' bytes is mapped read-only on first request
+ * and the mapping is shared by every response for it, so concurrent readers
+ * use the same page-cache pages and nothing is copied per request. Mappings
+ * are reference counted: the cache holds one reference and each response
+ * pins another until it has been written. A mapping is retired when its file
+ * changes (size or modification time, checked on every acquire) or when the
+ * least recently used ones are evicted to keep within maxBytes; it is
+ * unmapped once the last response using it lets go.
+ */
+public class MappedFileCache {
+
+    // Unmaps a buffer now rather than whenever the GC gets to it
+    private static final Consumer<ByteBuffer> UNMAP = unmapper();
+
+    private final long threshold;
+    private final long maxBytes;
+    private final ConcurrentHashMap<Path, Mapping> mappings = new ConcurrentHashMap<>();
+    private final AtomicLong mappedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * threshold: smallest file mapped, in bytes; 0 turns mapping off.
+     * maxBytes: total size of the files kept mapped.
+     */
+    public MappedFileCache(long threshold, long maxBytes) {
+        this.threshold = threshold;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The file's shared mapping, pinned for one response: the caller must
+     * release() it once the response is written. Returns null if the file
+     * is not one to map (mapping off, too small, or too big to map).
+     */
+    public Mapping acquire(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        if (threshold <= 0 || size < threshold || size > Integer.MAX_VALUE || size > maxBytes) {
+            return null;
+        }
+        FileTime modified = attributes.lastModifiedTime();
+        while (true) {
+            Mapping mapping = mappings.get(file);
+            if (mapping != null && (mapping.size != size || !mapping.modified.equals(modified))) {
+                // the file changed: responses still sending the old mapping keep it until they finish
+                if (mappings.remove(file, mapping)) {
+                    mapping.retire();
+                }
+                mapping = null;
+            }
+            if (mapping == null) {
+                Mapping fresh = map(file, size, modified);
+                mapping = mappings.putIfAbsent(file, fresh);
+                if (mapping == null) {
+                    mapping = fresh;
+                    evict();
+                } else {
+                    fresh.retire(); // another request mapped it first
+                }
+            }
+            if (mapping.pin()) {
+                mapping.lastUsed = System.nanoTime();
+                return mapping;
+            }
+            // retired between the lookup and the pin: look again
+        }
+    }
+
+    /** Retire the file's mapping, if it has one, e.g. because it was deleted. */
+    public void invalidate(Path file) {
+        Mapping mapping = mappings.remove(file);
+        if (mapping != null) {
+            mapping.retire();
+        }
+    }
+
+    /** Bytes currently mapped, counting retired mappings still being sent. */
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    /** Files in the cache. */
+    public int getMappedFiles() {
+        return mappings.size();
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    private Mapping map(Path file, long size, FileTime modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping outlives the channel
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mappedBytes.addAndGet(size);
+            return new Mapping(file, size, modified, buffer);
+        }
+    }
+
+    // Retire least recently used mappings until the cache is back within maxBytes
+    private void evict() {
+        if (mappedBytes.get() <= maxBytes || !evictionLock.tryLock()) {
+            return; // within budget, or another thread is already evicting
+        }
+        try {
+            List<Mapping> byAge = new ArrayList<>(mappings.values());
+            byAge.sort(Comparator.comparingLong(mapping -> mapping.lastUsed));
+            long cached = 0;
+            for (Mapping mapping : byAge) {
+                cached += mapping.size;
+            }
+            for (Mapping mapping : byAge) {
+                if (cached <= maxBytes) {
+                    break;
+                }
+                if (mappings.remove(mapping.file, mapping)) {
+                    cached -= mapping.size;
+                    mapping.retire();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (ReflectiveOperationException e) {
+                    // left for the GC to unmap
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Logger.warn("Mapped files will be unmapped by the garbage collector: " + e);
+            return buffer -> { };
+        }
+    }
+
+    /**
+     * One file's mapping. Pinned by each response sending it; use body()
+     * for the bytes and release() once they are written.
+     */
+    public final class Mapping {
+        private final Path file;
+        private final long size;
+        private final FileTime modified;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger(1); // the cache's own
+        private final AtomicBoolean retired = new AtomicBoolean();
+        private volatile long lastUsed = System.nanoTime();
+
+        private Mapping(Path file, long size, FileTime modified, MappedByteBuffer buffer) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.buffer = buffer;
+        }
+
+        /** The file's bytes: a view of the shared mapping with its own position. */
+        public ByteBuffer body() {
+            return buffer.duplicate();
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /** Let go of a pin taken by acquire(). */
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                mappedBytes.addAndGet(-size);
+                UNMAP.accept(buffer);
+            }
+        }
+
+        private boolean pin() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false; // already unmapped
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // drop the cache's reference, once
+        private void retire() {
+            if (retired.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+}
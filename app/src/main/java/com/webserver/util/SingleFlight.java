@@ -0,0 +1,99 @@
+package com.webserver.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SingleFlight - at most one load per key at a time.
+ *
+ * The first caller for a key runs the load; callers arriving while it runs
+ * wait for its result (or its exception) instead of loading the same thing
+ * again, for at most waitMillis. Once the load is done the key is free, so
+ * the next caller loads afresh: results are shared, not cached.
+ */
+public class SingleFlight<K, V> {
+
+    /** What a leader runs for its key. */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private final long waitMillis;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /** waitMillis: how long a caller waits for another's load before giving up. */
+    public SingleFlight(long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * The result of loading key: loaded by this caller, or by the one
+     * already loading it. Throws what the load threw, or IOException if the
+     * wait for another caller's load timed out.
+     */
+    public V run(K key, Loader<V> loader) throws IOException {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+        if (leader == null) {
+            try {
+                V value = loader.load();
+                mine.complete(value);
+                return value;
+            } catch (Throwable t) {
+                mine.completeExceptionally(t);
+                throw t;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+
+        coalesced.increment();
+        try {
+            return leader.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw new IOException("Timed out after " + waitMillis + " ms waiting for " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw new IOException(io.getMessage(), io); // this caller's stack, the leader's cause
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** Callers that waited for another's load instead of loading. */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /** Callers that gave up waiting. */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    /** Keys being loaded right now. */
+    public List<K> getInFlightKeys() {
+        return new ArrayList<>(inFlight.keySet());
+    }
+}
@@ -0,0 +1,381 @@
+package com.webserver.util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StaticFileCache - webroot files by request path: where each one is, its
+ * metadata, and the bytes of the small ones.
+ *
+ * A miss resolves and validates the path (FileService), reads the file's
+ * attributes, MIME type and ETag, and, for a file of at most maxEntryBytes,
+ * its contents. A hit does none of that. Entries holding contents are kept
+ * within maxBytes, least recently used out first; metadata-only entries
+ * cost next to nothing and are kept until invalidated.
+ *
+ * Once watch() has started a WatchService on the webroot, entries are
+ * trusted until an event says their file (or a directory above it) changed.
+ * Without one, each hit checks the file's size and modification time.
+ *
+ * While watched, paths that name no file are remembered too (up to
+ * maxMissing of them), so a request for one is refused without touching the
+ * filesystem; any change in the webroot forgets them all.
+ *
+ * Lookups, resident bytes and evictions are reported through Telemetry.
+ */
+public class StaticFileCache {
+
+    private final FileService fileService;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final int maxMissing;
+    private final ETagCache etags = new ETagCache();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // request paths known to name no file; trusted only while watching
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+    private final LongAdder missingHits = new LongAdder();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // bumped by every invalidation, so a lookup racing one does not cache what it read
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile WatchService watcher;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * maxBytes: file contents held in total; 0 holds none, metadata only.
+     * maxEntryBytes: largest file whose contents are held.
+     */
+    public StaticFileCache(FileService fileService, long maxBytes, long maxEntryBytes) {
+        this(fileService, maxBytes, maxEntryBytes, 0);
+    }
+
+    /** maxMissing: paths remembered as naming no file; 0 remembers none. */
+    public StaticFileCache(FileService fileService, long maxBytes, long maxEntryBytes, int maxMissing) {
+        this.fileService = fileService;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.maxMissing = maxMissing;
+    }
+
+    /** One webroot file as last seen. */
+    public static final class Entry {
+        private final Path file;
+        private final long size;
+        private final long lastModified;
+        private final String mimeType;
+        private final String etag;
+        private final byte[] content;
+        private volatile long lastUsed = System.nanoTime();
+
+        private Entry(Path file, long size, long lastModified, String mimeType, String etag, byte[] content) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mimeType = mimeType;
+            this.etag = etag;
+            this.content = content;
+        }
+
+        public Path file() {
+            return file;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /** Modification time in ms. */
+        public long lastModified() {
+            return lastModified;
+        }
+
+        public String mimeType() {
+            return mimeType;
+        }
+
+        public String etag() {
+            return etag;
+        }
+
+        /** The file's bytes, or null if they are not held; not to be modified. */
+        public byte[] content() {
+            return content;
+        }
+
+        private long heldBytes() {
+            return content != null ? content.length : 0;
+        }
+    }
+
+    /**
+     * The file a request path names, from the cache if possible. Throws
+     * IOException if there is no such readable file under the webroot.
+     */
+    public Entry lookup(String requestPath) throws IOException {
+        String key = key(requestPath);
+        Entry entry = entries.get(key);
+        if (entry != null && (watcher != null || unchanged(entry))) {
+            entry.lastUsed = System.nanoTime();
+            Telemetry.recordStaticCacheLookup(true);
+            return entry;
+        }
+        Telemetry.recordStaticCacheLookup(false);
+        long seen = generation.get();
+        Entry loaded;
+        try {
+            loaded = load(requestPath);
+        } catch (IOException e) {
+            remember(key, seen);
+            throw e;
+        }
+        if (generation.get() == seen) {
+            Entry old = entry != null && entries.replace(key, entry, loaded) ? entry
+                    : entries.put(key, loaded);
+            resize(loaded.heldBytes() - (old != null ? old.heldBytes() : 0));
+            if (generation.get() != seen) {
+                // invalidated between the check and the put, so its sweep may have missed this entry
+                if (entries.remove(key, loaded)) {
+                    resize(-loaded.heldBytes());
+                }
+            } else {
+                evict();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Whether a request path is known to name no file, so it can be refused
+     * without a lookup. Only ever true while the webroot is watched.
+     */
+    public boolean isMissing(String requestPath) {
+        if (watcher == null || !missing.contains(key(requestPath))) {
+            return false;
+        }
+        missingHits.increment();
+        return true;
+    }
+
+    /**
+     * Watch the webroot (and every directory below it) and drop entries as
+     * their files change. After this, hits no longer check the file.
+     */
+    public void watch(Path webRoot) throws IOException {
+        WatchService service = FileSystems.getDefault().newWatchService();
+        registerTree(service, webRoot);
+        watcher = service;
+        Thread thread = new Thread(() -> watchLoop(service), "webroot-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        Logger.info("Watching " + webRoot + " for static file changes");
+    }
+
+    /** Stop watching; hits go back to checking their file. */
+    public void close() {
+        WatchService service = watcher;
+        watcher = null;
+        missing.clear();
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ignore) {
+                // the watcher thread stops either way
+            }
+        }
+    }
+
+    /**
+     * Drop every entry for this file, or for anything below it if it is a
+     * directory; and forget the missing paths, as one may name it now.
+     */
+    public void invalidate(Path changed) {
+        generation.incrementAndGet();
+        missing.clear();
+        etags.invalidate(changed);
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().file.startsWith(changed) && entries.remove(e.getKey(), e.getValue())) {
+                resize(-e.getValue().heldBytes());
+            }
+        }
+    }
+
+    /** Drop every entry. */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        missing.clear();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (entries.remove(e.getKey(), e.getValue())) {
+                resize(-e.getValue().heldBytes());
+            }
+        }
+    }
+
+    /** Entries cached, with or without their contents. */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Paths remembered as naming no file. */
+    public int getMissingPaths() {
+        return missing.size();
+    }
+
+    /** Requests refused as known missing paths. */
+    public long getMissingHits() {
+        return missingHits.sum();
+    }
+
+    /** File bytes held. */
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    private Entry load(String requestPath) throws IOException {
+        Path file = fileService.resolveFile(requestPath);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        byte[] content = null;
+        String etag;
+        if (size <= maxEntryBytes) {
+            content = Files.readAllBytes(file);
+            if (content.length != size) {
+                // changed while being read: serve it as read, tagged by what was read
+                size = content.length;
+            }
+            etag = ETagCache.etagOf(content);
+        } else {
+            etag = etags.etag(file, attributes);
+        }
+        return new Entry(file, size, attributes.lastModifiedTime().toMillis(),
+                MimeTypes.getMimeType(file.getFileName().toString()), etag, content);
+    }
+
+    // Remember a path that named no file, unless the webroot changed since the lookup began
+    private void remember(String key, long seen) {
+        if (watcher == null || maxMissing <= 0) {
+            return;
+        }
+        if (missing.size() >= maxMissing) {
+            missing.clear(); // a scan of ever new paths: start again rather than track which are stale
+        }
+        missing.add(key);
+        if (generation.get() != seen) {
+            missing.remove(key);
+        }
+    }
+
+    private boolean unchanged(Entry entry) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(entry.file, BasicFileAttributes.class);
+            return attributes.size() == entry.size && attributes.lastModifiedTime().toMillis() == entry.lastModified;
+        } catch (IOException e) {
+            return false; // gone: the reload says so
+        }
+    }
+
+    private void resize(long delta) {
+        if (delta != 0) {
+            residentBytes.addAndGet(delta);
+            Telemetry.addStaticCacheBytes(delta);
+        }
+    }
+
+    // Drop the contents of least recently used entries until within maxBytes
+    private void evict() {
+        if (residentBytes.get() <= maxBytes || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, Entry>> byAge = new ArrayList<>();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getValue().content != null) {
+                    byAge.add(e);
+                }
+            }
+            byAge.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+            for (Map.Entry<String, Entry> e : byAge) {
+                if (residentBytes.get() <= maxBytes) {
+                    break;
+                }
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    resize(-e.getValue().heldBytes());
+                    Telemetry.recordStaticCacheEviction();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // "/", "index.html" and "/index.html" are the same file
+    private static String key(String requestPath) {
+        int start = 0;
+        while (start < requestPath.length() && requestPath.charAt(start) == '/') {
+            start++;
+        }
+        String key = requestPath.substring(start);
+        return key.isEmpty() || key.endsWith("/") ? key + "index.html" : key;
+    }
+
+    private void registerTree(WatchService service, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir.toAbsolutePath().normalize());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = watchedDirectories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                        invalidateAll(); // events were lost
+                        continue;
+                    }
+                    Path changed = dir.resolve((Path) event.context());
+                    invalidate(changed);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                        try {
+                            registerTree(service, changed);
+                        } catch (IOException e) {
+                            Logger.warn("Cannot watch new webroot directory " + changed + ": " + e.getMessage());
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed: hits check their file again
+        }
+    }
+}
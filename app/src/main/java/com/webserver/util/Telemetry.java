@@ -13,11 +13,20 @@ import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Telemetry class that tracks both global server metrics (CPU usage, memory usage,
  * average response time, error rate, etc.) and per-app metrics (avg. response time,
  * request throughput, error rate, availability).
+ *
+ * Request threads only bump LongAdder/AtomicLong counters, never a monitor:
+ * the old synchronized methods serialised every request behind the metrics
+ * thread's Azure flush, and on server.executor=virtual a virtual thread
+ * blocked there would pin its carrier. The interval bookkeeping that the
+ * metrics thread does is guarded by a ReentrantLock instead.
  */
 public class Telemetry {
 
@@ -45,10 +54,13 @@ public class Telemetry {
     }
 
     // === Global Telemetry Counters ===
-    private static long numberRequests = 0;
-    private static long numberFailures = 0;
-    private static double sumResponseTimes = 0;
-    private static long totalResponseCount = 0;
+    private static final LongAdder numberRequests = new LongAdder();
+    private static final AtomicLong numberFailures = new AtomicLong();
+    private static final LongAdder sumResponseTimes = new LongAdder();
+    private static final LongAdder totalResponseCount = new LongAdder();
+
+    // Held by trackServerMetrics (interval state below); request threads never take it
+    private static final ReentrantLock metricsLock = new ReentrantLock();
 
     // For requestsPerSecond
     private static long previousCalcTime = System.currentTimeMillis();
@@ -59,8 +71,8 @@ public class Telemetry {
     private static long lastBytesWritten = 0;
 
     // === ADDED FOR BANDWIDTH AGGREGATION (global) ===
-    private static long intervalInboundBytes = 0;
-    private static long intervalOutboundBytes = 0;
+    private static final LongAdder intervalInboundBytes = new LongAdder();
+    private static final LongAdder intervalOutboundBytes = new LongAdder();
 
     // Rolling performance data for the global server:
     private static final int MAX_HISTORY = 10;
@@ -75,52 +87,59 @@ public class Telemetry {
      * Simple struct to hold counters for each app
      */
     private static class AppStats {
-        long totalRequests;
-        long totalFailures;
-        long sumResponseTimeMs;
+        final LongAdder totalRequests = new LongAdder();
+        final LongAdder totalFailures = new LongAdder();
+        final LongAdder sumResponseTimeMs = new LongAdder();
 
         // Bandwidth aggregator (per-app)
-        long intervalInbound;
-        long intervalOutbound;
+        final LongAdder intervalInbound = new LongAdder();
+        final LongAdder intervalOutbound = new LongAdder();
     }
 
     // ------------------------------------------------------------------------------------
     // 1) Global (server-wide) metrics
     // ------------------------------------------------------------------------------------
 
-    public static synchronized void incrementNumberRequests() {
-        numberRequests++;
+    public static void incrementNumberRequests() {
+        numberRequests.increment();
     }
 
     /**
      * Called for every request to track how large the request/response were (bytes).
      */
-    public static synchronized void recordTraffic(int appId, long inboundBytes, long outboundBytes) {
+    public static void recordTraffic(int appId, long inboundBytes, long outboundBytes) {
         // Add to global aggregator
-        intervalInboundBytes += inboundBytes;
-        intervalOutboundBytes += outboundBytes;
+        intervalInboundBytes.add(inboundBytes);
+        intervalOutboundBytes.add(outboundBytes);
 
         // Also track per-app
         AppStats stats = appMetricsMap.computeIfAbsent(appId, k -> new AppStats());
-        synchronized (stats) {
-            stats.intervalInbound  += inboundBytes;
-            stats.intervalOutbound += outboundBytes;
-        }
+        stats.intervalInbound.add(inboundBytes);
+        stats.intervalOutbound.add(outboundBytes);
     }
 
     /**
      * Called once per request to measure how long that request took (ms).
      */
-    public static synchronized void trackResponseTime(long startMillis) {
+    public static void trackResponseTime(long startMillis) {
         long duration = System.currentTimeMillis() - startMillis;
-        sumResponseTimes += duration;
-        totalResponseCount++;
+        sumResponseTimes.add(duration);
+        totalResponseCount.increment();
     }
 
     /**
      * Called once every cycle (e.g. every 30s) from the server to track server-wide metrics.
      */
-    public static synchronized void trackServerMetrics(long startingTime) {
+    public static void trackServerMetrics(long startingTime) {
+        metricsLock.lock();
+        try {
+            trackServerMetricsLocked(startingTime);
+        } finally {
+            metricsLock.unlock();
+        }
+    }
+
+    private static void trackServerMetricsLocked(long startingTime) {
         // Optionally track overhead
         trackResponseTime(startingTime);
 
@@ -129,11 +148,10 @@ public class Telemetry {
 
         // If at least 1 second has passed, measure requests per second
         if (elapsedTime >= 1000) {
-            double rateOfRequests = (numberRequests * 1000.0) / elapsedTime;
+            // Read and reset for next cycle in one step
+            double rateOfRequests = (numberRequests.sumThenReset() * 1000.0) / elapsedTime;
             client.trackMetric("requestsPerSecond", rateOfRequests);
 
-            // Reset for next cycle
-            numberRequests = 0;
             previousCalcTime = currentTime;
         }
 
@@ -149,29 +167,40 @@ public class Telemetry {
         // IO rates
         trackIORates();
 
-        // Rolling snapshot
-        recordPerformanceSnapshot();
+        // Queue wait histogram + shed count
+        trackAdmissionMetrics();
 
-        // Reset counters in the aggregator for the next interval
-        intervalInboundBytes  = 0;
-        intervalOutboundBytes = 0;
+        // Static file cache hit ratio, resident bytes, evictions
+        trackStaticCacheMetrics();
+
+        // Rolling snapshot; reads and resets the interval aggregator
+        recordPerformanceSnapshot();
 
         // Also reset each app’s aggregator
         for (AppStats stats : appMetricsMap.values()) {
-            synchronized (stats) {
-                stats.intervalInbound  = 0;
-                stats.intervalOutbound = 0;
-            }
+            stats.intervalInbound.reset();
+            stats.intervalOutbound.reset();
         }
 
         client.flush();
     }
 
+    /**
+     * Report a point-in-time value (pool sizes, queue depths...) to Azure.
+     */
+    public static void trackGauge(String name, double value) {
+        try {
+            client.trackMetric(name, value);
+        } catch (Exception e) {
+            System.err.println("Error tracking gauge " + name + ": " + e.getMessage());
+        }
+    }
+
     /**
      * If a request fails, record in global counters + send to Azure.
      */
-    public static synchronized void trackFailures(Exception e, String path, String failureDetails) {
-        numberFailures++;
+    public static void trackFailures(Exception e, String path, String failureDetails) {
+        long failures = numberFailures.incrementAndGet();
         Map<String, String> failureProps = new HashMap<>();
         failureProps.put("path", path);
         failureProps.put("details", failureDetails);
@@ -179,7 +208,7 @@ public class Telemetry {
 
         try {
             client.trackException(e, failureProps, null);
-            client.trackMetric("FailureCount", numberFailures);
+            client.trackMetric("FailureCount", failures);
             client.flush();
         } catch (Exception telemetryFailure) {
             System.err.println("Error tracking failure: " + telemetryFailure.getMessage());
@@ -229,7 +258,7 @@ public class Telemetry {
         }
     }
 
-    private static synchronized void recordPerformanceSnapshot() {
+    private static void recordPerformanceSnapshot() {
         PerformancePoint p = new PerformancePoint();
         p.timestamp    = System.currentTimeMillis();
         p.serverLoad   = getCpuUsage() * 100.0;
@@ -237,8 +266,8 @@ public class Telemetry {
         p.errorRate    = getErrorRate();
 
         // record the inbound/outbound from this interval
-        p.inboundBytes  = intervalInboundBytes;
-        p.outboundBytes = intervalOutboundBytes;
+        p.inboundBytes  = intervalInboundBytes.sumThenReset();
+        p.outboundBytes = intervalOutboundBytes.sumThenReset();
 
         if (history.remainingCapacity() == 0) {
             history.poll();
@@ -249,7 +278,7 @@ public class Telemetry {
     /**
      * Return a fraction of CPU usage for the entire system: 0..1
      */
-    public static synchronized double getCpuUsage() {
+    public static double getCpuUsage() {
         try {
             OperatingSystemMXBean osBean = (OperatingSystemMXBean)
                 ManagementFactory.getOperatingSystemMXBean();
@@ -261,7 +290,7 @@ public class Telemetry {
         }
     }
 
-    public static synchronized double getMemoryUsage() {
+    public static double getMemoryUsage() {
         try {
             OperatingSystemMXBean osBean = (OperatingSystemMXBean)
                 ManagementFactory.getOperatingSystemMXBean();
@@ -277,25 +306,26 @@ public class Telemetry {
         return 0.0;
     }
 
-    public static synchronized double getAvgResponseTime() {
-        if (totalResponseCount == 0) return 0.0;
-        return sumResponseTimes / totalResponseCount;
+    public static double getAvgResponseTime() {
+        long count = totalResponseCount.sum();
+        if (count == 0) return 0.0;
+        return (double) sumResponseTimes.sum() / count;
     }
 
-    public static synchronized double getErrorRate() {
-        long totalReqs = totalResponseCount;
+    public static double getErrorRate() {
+        long totalReqs = totalResponseCount.sum();
         if (totalReqs == 0) return 0.0;
-        return ((double) numberFailures / (double) totalReqs) * 100.0;
+        return ((double) numberFailures.get() / (double) totalReqs) * 100.0;
     }
 
-    public static synchronized double getSystemLoad() {
+    public static double getSystemLoad() {
         return getCpuUsage() * 100.0;
     }
 
     /**
      * Return the rolling performance data (serverLoad, responseTime, errorRate, inbound/outbound).
      */
-    public static synchronized List<Map<String, Object>> getPerformanceData() {
+    public static List<Map<String, Object>> getPerformanceData() {
         List<Map<String, Object>> result = new ArrayList<>();
         for (PerformancePoint p : history) {
             Map<String, Object> row = new HashMap<>();
@@ -346,12 +376,10 @@ public class Telemetry {
 
         // Retrieve or create the stats struct
         AppStats stats = appMetricsMap.computeIfAbsent(appId, k -> new AppStats());
-        synchronized (stats) {
-            stats.totalRequests++;
-            stats.sumResponseTimeMs += duration;
-            if (statusCode >= 400) {
-                stats.totalFailures++;
-            }
+        stats.totalRequests.increment();
+        stats.sumResponseTimeMs.add(duration);
+        if (statusCode >= 400) {
+            stats.totalFailures.increment();
         }
     }
 
@@ -372,12 +400,9 @@ public class Telemetry {
             return empty;
         }
 
-        long totalReq, failures, sumTimeMs;
-        synchronized (stats) {
-            totalReq   = stats.totalRequests;
-            failures   = stats.totalFailures;
-            sumTimeMs  = stats.sumResponseTimeMs;
-        }
+        long totalReq   = stats.totalRequests.sum();
+        long failures   = stats.totalFailures.sum();
+        long sumTimeMs  = stats.sumResponseTimeMs.sum();
         double avgResp  = (totalReq == 0) ? 0.0 : (sumTimeMs / (double) totalReq);
         double eRate    = (totalReq == 0) ? 0.0 : (failures / (double) totalReq);
         double availPct = (1.0 - eRate) * 100.0;
@@ -397,6 +422,130 @@ public class Telemetry {
         return result;
     }
 
+    // ------------------------------------------------------------------------------------
+    // 3) Admission control (queue wait + load shedding)
+    // ------------------------------------------------------------------------------------
+
+    // Upper bounds (ms) of the queue-wait histogram buckets; one more bucket catches the rest
+    private static final long[] QUEUE_WAIT_BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+    private static final LongAdder[] queueWaitCounts = new LongAdder[QUEUE_WAIT_BOUNDS_MS.length + 1];
+    private static final LongAdder shedCount = new LongAdder();
+
+    static {
+        for (int i = 0; i < queueWaitCounts.length; i++) {
+            queueWaitCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record how long one connection or request waited for a thread.
+     */
+    public static void recordQueueWait(long waitMillis) {
+        int bucket = 0;
+        while (bucket < QUEUE_WAIT_BOUNDS_MS.length && waitMillis > QUEUE_WAIT_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        queueWaitCounts[bucket].increment();
+    }
+
+    /**
+     * Record one connection or request answered with 503 instead of being served.
+     */
+    public static void recordShed() {
+        shedCount.increment();
+    }
+
+    public static long getShedCount() {
+        return shedCount.sum();
+    }
+
+    /**
+     * Lifetime queue-wait counts keyed "le_10ms", ..., "gt_5000ms", in bucket order.
+     */
+    public static Map<String, Long> getQueueWaitHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < QUEUE_WAIT_BOUNDS_MS.length; i++) {
+            histogram.put("le_" + QUEUE_WAIT_BOUNDS_MS[i] + "ms", queueWaitCounts[i].sum());
+        }
+        histogram.put("gt_" + QUEUE_WAIT_BOUNDS_MS[QUEUE_WAIT_BOUNDS_MS.length - 1] + "ms",
+                queueWaitCounts[QUEUE_WAIT_BOUNDS_MS.length].sum());
+        return histogram;
+    }
+
+    private static void trackAdmissionMetrics() {
+        try {
+            client.trackMetric("shedCount", (double) getShedCount());
+            for (Map.Entry<String, Long> bucket : getQueueWaitHistogram().entrySet()) {
+                client.trackMetric("queueWait_" + bucket.getKey(), (double) bucket.getValue());
+            }
+        } catch (Exception e) {
+            System.err.println("Error tracking admission metrics: " + e.getMessage());
+        }
+    }
+
+    // ------------------------------------------------------------------------------------
+    // 4) Static file cache
+    // ------------------------------------------------------------------------------------
+
+    private static final LongAdder staticCacheHits = new LongAdder();
+    private static final LongAdder staticCacheMisses = new LongAdder();
+    private static final LongAdder staticCacheEvictions = new LongAdder();
+    private static final AtomicLong staticCacheBytes = new AtomicLong();
+
+    /**
+     * Record one static file lookup, answered from the cache (hit) or from disk.
+     */
+    public static void recordStaticCacheLookup(boolean hit) {
+        (hit ? staticCacheHits : staticCacheMisses).increment();
+    }
+
+    /**
+     * Record one entry evicted from the static file cache to stay within its budget.
+     */
+    public static void recordStaticCacheEviction() {
+        staticCacheEvictions.increment();
+    }
+
+    /**
+     * Add (or, negative, remove) file bytes held in memory by the static file cache.
+     */
+    public static void addStaticCacheBytes(long delta) {
+        staticCacheBytes.addAndGet(delta);
+    }
+
+    /** Share of static file lookups answered from the cache, 0 if there were none. */
+    public static double getStaticCacheHitRatio() {
+        long hits = staticCacheHits.sum();
+        long total = hits + staticCacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public static long getStaticCacheHits() {
+        return staticCacheHits.sum();
+    }
+
+    public static long getStaticCacheMisses() {
+        return staticCacheMisses.sum();
+    }
+
+    public static long getStaticCacheEvictions() {
+        return staticCacheEvictions.sum();
+    }
+
+    public static long getStaticCacheBytes() {
+        return staticCacheBytes.get();
+    }
+
+    private static void trackStaticCacheMetrics() {
+        try {
+            client.trackMetric("staticCacheHitRatio", getStaticCacheHitRatio());
+            client.trackMetric("staticCacheBytes", (double) getStaticCacheBytes());
+            client.trackMetric("staticCacheEvictions", (double) getStaticCacheEvictions());
+        } catch (Exception e) {
+            System.err.println("Error tracking static cache metrics: " + e.getMessage());
+        }
+    }
+
     // ------------------------------------------------------------------------------------
     // Additional older code for logs & file usage
     // ------------------------------------------------------------------------------------
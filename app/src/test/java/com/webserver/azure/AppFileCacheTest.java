@@ -0,0 +1,388 @@
+package com.webserver.azure;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.core.ApiRoutes;
+import com.webserver.http.Compressor;
+import com.webserver.http.RequestProcessor;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.FileService;
+
+public class AppFileCacheTest {
+
+    @Test
+    void testFileIsDownloadedOnceThenServedFromDisk() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "index.html", "<h1>v1</h1>");
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20);
+
+            AppFileCache.Entry first = cache.get(2002, "/index.html");
+            assertEquals("<h1>v1</h1>", Files.readString(first.file()));
+            assertEquals(11, first.info().size());
+            assertEquals("\"1\"", first.info().etag());
+            assertSame(first, cache.get(2002, "/index.html"));
+            assertEquals(1, store.downloads.get());
+            assertEquals(1, cache.getHits());
+            assertEquals(11, cache.getCachedBytes());
+
+            // filled by rename: no temp file left behind
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+
+            assertNull(cache.get(2002, "/missing.js"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testUploadInvalidatesTheApp() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "index.html", "<h1>v1</h1>");
+            store.put(2003, "index.html", "<h1>other</h1>");
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20);
+            AppFileCache.Entry old = cache.get(2002, "/index.html");
+            AppFileCache.Entry other = cache.get(2003, "/index.html");
+
+            store.put(2002, "index.html", "<h1>version 2</h1>");
+            cache.invalidate(2002);
+            assertFalse(Files.exists(old.file()));
+
+            AppFileCache.Entry current = cache.get(2002, "/index.html");
+            assertEquals("<h1>version 2</h1>", Files.readString(current.file()));
+            assertNotEquals(old.file(), current.file());
+            assertSame(other, cache.get(2003, "/index.html"));
+            assertEquals(18 + 14, cache.getCachedBytes());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testChangesElsewhereAreSeenOnceTheCopyIsRevalidated() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "index.html", "<h1>v1</h1>");
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20, 5_000, 50);
+            AppFileCache.Entry first = cache.get(2002, "/index.html");
+            assertSame(first, cache.get(2002, "/index.html"));
+            assertEquals(0, store.lookups.get());
+
+            // unchanged: one properties request, no download
+            Thread.sleep(60);
+            assertSame(first, cache.get(2002, "/index.html"));
+            assertSame(first, cache.get(2002, "/index.html"));
+            assertEquals(1, store.lookups.get());
+            assertEquals(1, store.downloads.get());
+
+            // uploaded through another instance: nothing calls invalidate() here
+            store.put(2002, "index.html", "<h1>version 2</h1>");
+            Thread.sleep(60);
+            AppFileCache.Entry current = cache.get(2002, "/index.html");
+            assertEquals("<h1>version 2</h1>", Files.readString(current.file()));
+            assertFalse(Files.exists(first.file()));
+            assertEquals(18, cache.getCachedBytes());
+            assertEquals(2, cache.getRevalidations());
+
+            // deleted through another instance
+            store.blobs.remove("2002/index.html");
+            Thread.sleep(60);
+            assertNull(cache.get(2002, "/index.html"));
+            assertFalse(Files.exists(current.file()));
+            assertEquals(0, cache.getCachedBytes());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testInvalidateAllDropsEveryApp() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "index.html", "<h1>one</h1>");
+            store.put(2003, "index.html", "<h1>two</h1>");
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20);
+            AppFileCache.Entry one = cache.get(2002, "/index.html");
+            AppFileCache.Entry two = cache.get(2003, "/index.html");
+
+            cache.invalidateAll();
+            assertFalse(Files.exists(one.file()));
+            assertFalse(Files.exists(two.file()));
+            assertEquals(0, cache.getCachedBytes());
+            assertNotSame(one, cache.get(2002, "/index.html"));
+            assertEquals(3, store.downloads.get());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedFilesAreEvictedAndLargeBlobsStreamed() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "a.css", "aaaa");
+            store.put(2002, "b.css", "bbbb");
+            store.put(2002, "c.css", "cccc");
+            store.put(2002, "video.mp4", "x".repeat(100));
+            AppFileCache cache = new AppFileCache(store, dir, 10, 8);
+
+            AppFileCache.Entry a = cache.get(2002, "/a.css");
+            AppFileCache.Entry b = cache.get(2002, "/b.css");
+            Thread.sleep(1);
+            cache.get(2002, "/a.css");
+            cache.get(2002, "/c.css");
+            assertEquals(8, cache.getCachedBytes());
+            assertEquals(1, cache.getEvictions());
+            assertFalse(Files.exists(b.file()));
+            assertTrue(Files.exists(a.file()));
+
+            AppFileCache.Entry video = cache.get(2002, "/video.mp4");
+            assertNull(video.file());
+            assertEquals(100, video.info().size());
+            assertEquals(2, cache.getFiles());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testLeftoversAreClearedButOtherFilesKept() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            Files.writeString(dir.resolve("2002-0123456789abcdef0123456789abcdef"), "stale");
+            Files.writeString(dir.resolve("fill-123.tmp"), "partial");
+            Files.writeString(dir.resolve("notes.txt"), "not ours");
+            new AppFileCache(new FakeBlobStore(), dir, 1 << 20, 1 << 20);
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+            assertTrue(Files.exists(dir.resolve("notes.txt")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testConcurrentMissesShareOneDownload() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "index.html", "<h1>viral</h1>");
+            store.gate = new CountDownLatch(1);
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20, 5_000);
+
+            List<Future<AppFileCache.Entry>> requests = new ArrayList<>();
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < 50; i++) {
+                    requests.add(pool.submit(() -> cache.get(2002, "/index.html")));
+                }
+                while (cache.getCoalesced() < 49) {
+                    Thread.sleep(1);
+                }
+                assertEquals(List.of("2002/index.html"), cache.getFilling());
+                store.gate.countDown();
+
+                AppFileCache.Entry first = requests.get(0).get();
+                for (Future<AppFileCache.Entry> request : requests) {
+                    assertSame(first, request.get());
+                }
+            }
+            assertEquals(1, store.downloads.get());
+            assertEquals(49, cache.getCoalesced());
+            assertTrue(cache.getFilling().isEmpty());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testAppRouteIsServedFromTheLocalCopy() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            store.put(2002, "app.js", "console.log('hello');");
+            RequestProcessor processor = new RequestProcessor(new FileService(dir.toString()));
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20);
+            ApiRoutes routes = new ApiRoutes(processor, null, cache, null, null);
+            routes.registerAppFileRoute(2002, "/app.js");
+
+            HttpResponse full = processor.process(get("/app_2002/app.js", Map.of()));
+            assertEquals(200, full.getStatusCode());
+            assertEquals("\"1\"", full.getHeaders().first("ETag"));
+            try (InputStream in = full.getBodySource().open()) {
+                assertEquals("console.log('hello');", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            HttpResponse partial = processor.process(get("/app_2002/app.js", Map.of("Range", List.of("bytes=0-6"))));
+            assertEquals(206, partial.getStatusCode());
+            assertEquals(7, partial.getBodyLength());
+            assertEquals("bytes 0-6/21", partial.getHeaders().first("Content-Range"));
+            partial.getBodySource().open().close();
+
+            HttpResponse revalidated = processor.process(get("/app_2002/app.js",
+                    Map.of("If-None-Match", List.of("\"1\""))));
+            assertEquals(304, revalidated.getStatusCode());
+            assertEquals(1, store.downloads.get());
+
+            // several ranges: all read from the copy as it was opened, though it is deleted meanwhile
+            HttpResponse parts = processor.process(get("/app_2002/app.js", Map.of("Range", List.of("bytes=0-6,-3"))));
+            assertEquals(206, parts.getStatusCode());
+            AppFileCache.Entry copy = cache.get(2002, "/app.js");
+            cache.invalidate(2002);
+            assertFalse(Files.exists(copy.file()));
+            String multipart;
+            try (InputStream in = parts.getBodySource().open()) {
+                multipart = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertEquals(parts.getBodyLength(), multipart.length());
+            assertTrue(multipart.contains("bytes 0-6/21\r\n\r\nconsole\r\n"));
+            assertTrue(multipart.contains("bytes 18-20/21\r\n\r\n');\r\n"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testLocalCopyIsGzippedOncePerVersion() throws Exception {
+        Path dir = Files.createTempDirectory("appcache");
+        try {
+            FakeBlobStore store = new FakeBlobStore();
+            String script = "console.log('hello');\n".repeat(200);
+            store.put(2002, "app.js", script);
+            store.put(2002, "noise.js", "x".repeat(2000)); // compresses well too, but is never asked for gzipped
+            Compressor compressor = new Compressor(6, 1024, 1 << 20);
+            RequestProcessor processor = new RequestProcessor(new FileService(dir.toString()), null, compressor);
+            AppFileCache cache = new AppFileCache(store, dir, 1 << 20, 1 << 20);
+            ApiRoutes routes = new ApiRoutes(processor, null, cache, null, null);
+            routes.registerAppFileRoute(2002, "/app.js");
+            routes.registerAppFileRoute(2002, "/noise.js");
+            Map<String, List<String>> gzip = Map.of("Accept-Encoding", List.of("gzip"));
+
+            for (int i = 0; i < 3; i++) {
+                HttpResponse response = processor.process(get("/app_2002/app.js", gzip));
+                assertEquals("gzip", response.getHeaders().first("Content-Encoding"));
+                assertEquals("W/\"1\"", response.getHeaders().first("ETag"));
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getRawBody()))) {
+                    assertEquals(script, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            assertEquals(1, compressor.getCacheMisses());
+            assertEquals(2, compressor.getCacheHits());
+
+            // a client without gzip gets the copy as it is, not gzipped on the fly either
+            HttpResponse plain = processor.process(get("/app_2002/noise.js", Map.of()));
+            assertNull(plain.getHeaders().first("Content-Encoding"));
+            assertEquals("Accept-Encoding", plain.getHeaders().first("Vary"));
+            assertEquals(2000, plain.getBodyLength());
+            plain.getBodySource().open().close();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static HttpRequest get(String path, Map<String, List<String>> headers) {
+        return new HttpRequest("GET", path, headers, "", null);
+    }
+
+    /** App files in memory, each with an ETag that changes on every put. */
+    static class FakeBlobStore implements BlobStore {
+        final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+        final Map<String, String> etags = new ConcurrentHashMap<>();
+        final AtomicInteger versions = new AtomicInteger();
+        final AtomicInteger downloads = new AtomicInteger();
+        final AtomicInteger lookups = new AtomicInteger();
+        // when set, downloads wait for it: a slow storage account
+        volatile CountDownLatch gate;
+
+        void put(int appId, String filePath, String content) {
+            blobs.put(appId + "/" + filePath, content.getBytes(StandardCharsets.UTF_8));
+            etags.put(appId + "/" + filePath, "\"" + versions.incrementAndGet() + "\"");
+        }
+
+        @Override
+        public InputStream download(int appID, String filePath) {
+            String name = appID + "/" + (filePath.startsWith("/") ? filePath.substring(1) : filePath);
+            byte[] blob = blobs.get(name);
+            if (blob == null) {
+                return null;
+            }
+            downloads.incrementAndGet();
+            CountDownLatch wait = gate;
+            if (wait != null) {
+                try {
+                    wait.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return new Download(blob, new AzureBlobInterface.BlobInfo(blob.length, etags.get(name), 1_760_000_000_000L));
+        }
+
+        @Override
+        public AzureBlobInterface.BlobInfo infoOf(InputStream download) {
+            return download instanceof Download d ? d.info : null;
+        }
+
+        @Override
+        public AzureBlobInterface.BlobInfo properties(int appID, String filePath) {
+            String name = appID + "/" + (filePath.startsWith("/") ? filePath.substring(1) : filePath);
+            byte[] blob = blobs.get(name);
+            lookups.incrementAndGet();
+            return blob != null ? new AzureBlobInterface.BlobInfo(blob.length, etags.get(name), 1_760_000_000_000L) : null;
+        }
+
+        static class Download extends FilterInputStream {
+            final AzureBlobInterface.BlobInfo info;
+
+            Download(byte[] blob, AzureBlobInterface.BlobInfo info) {
+                super(new ByteArrayInputStream(blob));
+                this.info = info;
+            }
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.webserver.core;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimiterTest {
+
+    @Test
+    void testInFlightIsCappedAtTheLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 100);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyHoldsSteady() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 4, 1000);
+        runAtFullLoad(limiter, 50, 5);
+        assertTrue(limiter.getLimit() > 10, "limit was " + limiter.getLimit());
+    }
+
+    @Test
+    void testLimitBacksOffWhenLatencyRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 4, 100);
+        runAtFullLoad(limiter, 50, 5);
+        int grown = limiter.getLimit();
+
+        // the backend slows down ten-fold (a sustained slowdown eventually
+        // becomes the new long-term baseline, so look right after it starts)
+        runAtFullLoad(limiter, 2, 50);
+        assertTrue(limiter.getLimit() < grown, "limit stayed at " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 4);
+    }
+
+    @Test
+    void testIdleTrafficDoesNotRaiseTheLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 4, 1000);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    // fill every slot, then release them all with the given latency
+    private static void runAtFullLoad(AdaptiveLimiter limiter, int rounds, long latencyMillis) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+            }
+        }
+    }
+}
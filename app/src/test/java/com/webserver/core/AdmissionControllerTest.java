@@ -0,0 +1,99 @@
+package com.webserver.core;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.util.Telemetry;
+
+class AdmissionControllerTest {
+
+    @Test
+    void testQueueDepthIsBounded() {
+        AdmissionController admission = new AdmissionController(2, 1000, 1);
+        long shedBefore = Telemetry.getShedCount();
+
+        assertTrue(admission.tryEnqueue());
+        assertTrue(admission.tryEnqueue());
+        assertFalse(admission.tryEnqueue());
+        assertEquals(2, admission.getQueueDepth());
+        assertEquals(shedBefore + 1, Telemetry.getShedCount());
+
+        // a started task frees its slot
+        assertTrue(admission.admit(System.nanoTime()));
+        assertEquals(1, admission.getQueueDepth());
+        assertTrue(admission.tryEnqueue());
+    }
+
+    @Test
+    void testInFlightIsBoundedUntilTheWorkIsDone() {
+        AdmissionController admission = new AdmissionController(10, 1000, 1, 2);
+        long shedBefore = Telemetry.getShedCount();
+
+        assertTrue(admission.tryEnqueue());
+        assertTrue(admission.tryEnqueue());
+        // started at once, as on a virtual thread: the queue is empty but the work is not done
+        assertTrue(admission.admit(System.nanoTime()));
+        assertTrue(admission.admit(System.nanoTime()));
+        assertEquals(0, admission.getQueueDepth());
+        assertFalse(admission.tryEnqueue());
+        assertEquals(2, admission.getInFlight());
+        assertEquals(shedBefore + 1, Telemetry.getShedCount());
+
+        admission.finish();
+        assertTrue(admission.tryEnqueue());
+        admission.cancel();
+        assertEquals(1, admission.getInFlight());
+    }
+
+    @Test
+    void testWorkThatWaitedTooLongIsShed() {
+        AdmissionController admission = new AdmissionController(10, 100, 1);
+        assertTrue(admission.tryEnqueue());
+        long enqueuedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(500);
+
+        assertFalse(admission.admit(enqueuedAt));
+        assertEquals(0, admission.getQueueDepth());
+    }
+
+    @Test
+    void testShedAnswers503WithRetryAfter() throws IOException {
+        AdmissionController admission = new AdmissionController(1, 1000, 7);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+            admission.shed(server.accept());
+
+            String response = new String(client.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+            assertTrue(response.contains("Retry-After: 7\r\n"));
+            assertTrue(response.contains("Connection: close\r\n"));
+        }
+    }
+
+    @Test
+    void testShedResponseSurvivesAnUnreadRequest() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 1000, 1);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+            // the request is in the server's receive buffer when it sheds
+            client.getOutputStream().write(("POST /upload HTTP/1.1\r\nContent-Length: 16384\r\n\r\n"
+                    + "x".repeat(16384)).getBytes(StandardCharsets.US_ASCII));
+            admission.shed(server.accept());
+            Thread.sleep(100);
+            // a client still sending its body: a closed socket answers that with a reset
+            client.getOutputStream().write(new byte[16384]);
+            Thread.sleep(100);
+
+            String response = new String(client.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.webserver.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.ConfigLoader;
+
+class ConnectionHandlerTest {
+
+    private ServerSocket serverSocket;
+    private ServerContext context;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("served", ".bin");
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(bytes);
+        Files.write(file, bytes);
+        context = new ServerContext(new ConfigLoader(), null);
+        context.getProcessor().addRoute("/ping", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .addHeader("Content-Type", "text/plain")
+                .setBody("pong")
+                .build());
+        context.getProcessor().addRoute("/file", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setBodyFile(file, Files.size(file))
+                .build());
+        // channel-backed, as Server opens it, so file bodies go out with transferTo
+        serverSocket = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50)
+                .socket();
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    new Thread(new ConnectionHandler(socket, context)).start();
+                }
+            } catch (IOException closed) {
+                // test finished
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        serverSocket.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testKeepAliveServesSeveralRequestsOnOneConnection() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String first = readResponse(in);
+            assertTrue(first.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(first.contains("Connection: keep-alive"));
+            assertTrue(first.endsWith("pong"));
+
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String second = readResponse(in);
+            assertTrue(second.contains("Connection: close"));
+            assertTrue(second.endsWith("pong"));
+
+            // server closed its side after "Connection: close"
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testPipelinedRequestsAnsweredInOrder() throws IOException {
+        context.getProcessor().addRoute("/echo", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setBody(req.getTextBody())
+                .build());
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // three requests in one write, without waiting for any response
+            StringBuilder pipeline = new StringBuilder();
+            for (String word : new String[] {"one", "two", "three"}) {
+                pipeline.append("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: ")
+                        .append(word.length()).append("\r\n\r\n").append(word);
+            }
+            out.write(pipeline.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            assertTrue(readResponse(in).endsWith("one"));
+            assertTrue(readResponse(in).endsWith("two"));
+            assertTrue(readResponse(in).endsWith("three"));
+        }
+    }
+
+    @Test
+    void testChunkedUploadIsStreamedToHandler() throws IOException {
+        // reads the body incrementally and answers with its size
+        context.getProcessor().addRoute("/upload", req -> {
+            long total = 0;
+            try (InputStream body = req.getBodyStream()) {
+                byte[] buf = new byte[4096];
+                for (int n; (n = body.read(buf)) != -1; ) {
+                    total += n;
+                }
+            } catch (IOException e) {
+                return new HttpResponse.Builder().setStatusCode(500).build();
+            }
+            return new HttpResponse.Builder().setStatusCode(200).setBody(String.valueOf(total)).build();
+        });
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("POST /upload HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            byte[] chunk = new byte[100_000];
+            for (int i = 0; i < 20; i++) {
+                out.write((Integer.toHexString(chunk.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(chunk);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertTrue(readResponse(in).endsWith("2000000"));
+
+            // same connection carries on after the chunked body
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertTrue(readResponse(in).endsWith("pong"));
+        }
+    }
+
+    @Test
+    void testUnreadBodyIsSkippedBeforeNextRequest() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // /ping never looks at its body
+            out.write(("POST /ping HTTP/1.1\r\nHost: localhost\r\nContent-Length: 10\r\n\r\n0123456789" +
+                    "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String first = readResponse(in);
+            assertTrue(first.contains("Connection: keep-alive"));
+            assertTrue(readResponse(in).endsWith("pong"));
+        }
+    }
+
+    @Test
+    void testAmbiguousFramingClosesTheConnection() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // a hop that honours the Content-Length would see "GET /smuggled" as a second request
+            out.write(("POST /ping HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n0\r\n\r\n"
+                    + "GET /smuggled HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertTrue(readResponse(in).contains("Connection: close"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testFileBodyFollowsItsHeadOnTheSocket() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /file HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String head = readHead(in);
+            assertTrue(head.contains("Content-Length: " + Files.size(file)));
+            assertArrayEquals(Files.readAllBytes(file), in.readNBytes((int) Files.size(file)));
+
+            // and the connection carries on after it
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(readResponse(in).endsWith("pong"));
+        }
+    }
+
+    @Test
+    void testConnectionsBeyondMaxInFlightAreShedUntilOneIsDone() throws Exception {
+        ServerContext capped = new ServerContext(new ConfigLoader() {
+            @Override
+            public int getMaxInFlight() {
+                return 1;
+            }
+        }, null);
+        AdmissionController admission = capped.getAdmission();
+        capped.getProcessor().addRoute("/ping", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setBody("pong")
+                .build());
+        try (ServerSocket listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            // as Server accepts with server.executor=virtual
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = listener.accept();
+                        if (!admission.tryEnqueue()) {
+                            admission.shed(socket);
+                            continue;
+                        }
+                        Thread.ofVirtual().start(new ConnectionHandler(socket, capped, System.nanoTime()));
+                    }
+                } catch (IOException closed) {
+                    // test finished
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            try (Socket first = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort())) {
+                first.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+                assertTrue(readResponse(first.getInputStream()).endsWith("pong"));
+
+                // the first connection's thread is parked on it, waiting for its next request
+                try (Socket second = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort())) {
+                    String shed = new String(second.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    assertTrue(shed.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+                }
+                assertEquals(1, admission.getInFlight());
+            }
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (admission.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, admission.getInFlight());
+            try (Socket third = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort())) {
+                third.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+                assertTrue(readResponse(third.getInputStream()).endsWith("pong"));
+            }
+        }
+    }
+
+    @Test
+    void testKeepAliveDefaults() {
+        assertTrue(ConnectionHandler.isKeepAlive(request("HTTP/1.1", Map.of())));
+        assertFalse(ConnectionHandler.isKeepAlive(request("HTTP/1.1", Map.of("Connection", List.of("close")))));
+        assertFalse(ConnectionHandler.isKeepAlive(request("HTTP/1.0", Map.of())));
+        assertTrue(ConnectionHandler.isKeepAlive(request("HTTP/1.0", Map.of("connection", List.of("Keep-Alive")))));
+    }
+
+    private static HttpRequest request(String version, Map<String, List<String>> headers) {
+        return new HttpRequest.Builder()
+                .setMethod("GET")
+                .setPath("/ping")
+                .setHttpVersion(version)
+                .setHeaders(headers)
+                .build();
+    }
+
+    /**
+     * Read a response's headers, up to and including the blank line.
+     */
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0;
+        while (matched < 4) {
+            int c = in.read();
+            if (c == -1) {
+                throw new IOException("Connection closed mid-response");
+            }
+            head.write(c);
+            matched = (c == "\r\n\r\n".charAt(matched)) ? matched + 1 : (c == '\r' ? 1 : 0);
+        }
+        return head.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read one response: headers up to the blank line, then Content-Length bytes.
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        String headers = readHead(in);
+        int contentLength = 0;
+        for (String line : headers.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        return headers + new String(in.readNBytes(contentLength), StandardCharsets.UTF_8);
+    }
+}
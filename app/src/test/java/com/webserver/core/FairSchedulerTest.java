@@ -0,0 +1,182 @@
+package com.webserver.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.http.RequestProcessor.RouteHandler;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.ConfigLoader;
+
+class FairSchedulerTest {
+
+    private static final int NOISY = 1;
+    private static final int QUIET = 2;
+
+    @Test
+    void testQuietTenantP99StaysFlatUnderNoisyNeighbour() throws Exception {
+        // one shared queue (both tenants' requests are FIFO with each other)...
+        long sharedP99 = quietTenantP99(new FairScheduler(fixedLimit(4), Map.of(), 1, 1000, 10_000), NOISY);
+        // ...versus a queue per tenant
+        long fairP99 = quietTenantP99(new FairScheduler(fixedLimit(4), Map.of(), 1, 1000, 10_000), QUIET);
+
+        // 32 noisy requests always waiting for 4 slots of 5 ms: a FIFO wait is ~40 ms,
+        // a fair one is at most the next free slot
+        assertTrue(fairP99 < sharedP99 / 2, "fair p99 " + fairP99 + " ms vs shared p99 " + sharedP99 + " ms");
+    }
+
+    @Test
+    void testBackloggedTenantsShareSlotsByWeight() throws Exception {
+        FairScheduler scheduler = new FairScheduler(fixedLimit(1), Map.of(10, 3.0, 20, 1.0), 1, 1000, 10_000);
+        AtomicInteger heavy = new AtomicInteger();
+        AtomicInteger light = new AtomicInteger();
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(startLoop(scheduler, 10, 2, stop, heavy));
+            threads.add(startLoop(scheduler, 20, 2, stop, light));
+        }
+        Thread.sleep(500);
+        stop.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        double ratio = heavy.get() / (double) Math.max(1, light.get());
+        assertTrue(ratio > 2 && ratio < 4.5, "heavy " + heavy + " vs light " + light);
+    }
+
+    @Test
+    void testFullTenantQueueIsRejected() {
+        AdaptiveLimiter limiter = fixedLimit(1);
+        FairScheduler scheduler = new FairScheduler(limiter, Map.of(), 1, 0, 10_000);
+        assertTrue(scheduler.acquire(NOISY));
+        // the only slot is taken and no queueing is allowed
+        assertFalse(scheduler.acquire(NOISY));
+        scheduler.release(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(scheduler.acquire(NOISY));
+    }
+
+    @Test
+    void testConfiguredServerServesQuietTenantAheadOfBacklog() throws Exception {
+        // dispatched the way Server runs the default executor: a virtual thread
+        // per connection, so requests wait in the scheduler, not for a thread
+        ConfigLoader config = new ConfigLoader() {
+            @Override
+            public int getLimiterMaxLimit() {
+                return 20; // latency is flat, so the limit would otherwise grow past the backlog
+            }
+        };
+        assertEquals("virtual", config.getExecutor());
+        ServerContext context = new ServerContext(config, null);
+        context.getProcessor().addRoute("/app_1/work", slowRoute());
+        context.getProcessor().addRoute("/app_2/work", slowRoute());
+        RequestDispatcher dispatcher = new RequestDispatcher(context.getProcessor(), context.getScheduler(),
+                context.getLimits(), appId -> appId, 1);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Long> latencies = new ArrayList<>();
+        try (ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor()) {
+            // far more noisy connections than the limit has slots
+            for (int i = 0; i < 100; i++) {
+                connections.execute(() -> {
+                    while (!stop.get()) {
+                        dispatcher.dispatch(new HttpRequest("GET", "/app_1/work", Map.of(), "", null));
+                    }
+                });
+            }
+            Thread.sleep(100);
+            for (int i = 0; i < 30; i++) {
+                long start = System.nanoTime();
+                assertEquals(200, dispatcher.dispatch(new HttpRequest("GET", "/app_2/work", Map.of(), "", null))
+                        .getStatusCode());
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            stop.set(true);
+        }
+
+        // FIFO behind 100 noisy requests for 20 slots of 10 ms would be ~50 ms;
+        // fair, the quiet tenant waits for the next free slot at most
+        Collections.sort(latencies);
+        long p90 = latencies.get(26);
+        assertTrue(p90 < 35, "quiet tenant p90 " + p90 + " ms");
+    }
+
+    private static RouteHandler slowRoute() {
+        return request -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new HttpResponse.Builder().setStatusCode(200).setBody("done").build();
+        };
+    }
+
+    /**
+     * p99 latency (wait + 5 ms of work) of 50 sequential requests from the
+     * given tenant while 32 threads of the noisy tenant keep the queue full.
+     */
+    private static long quietTenantP99(FairScheduler scheduler, int quietTenant) throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> noisy = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            noisy.add(startLoop(scheduler, NOISY, 5, stop, new AtomicInteger()));
+        }
+        Thread.sleep(100);
+
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            long start = System.nanoTime();
+            assertTrue(scheduler.acquire(quietTenant));
+            Thread.sleep(5);
+            scheduler.release(System.nanoTime() - start);
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            Thread.sleep(10);
+        }
+
+        stop.set(true);
+        for (Thread t : noisy) {
+            t.join();
+        }
+        Collections.sort(latencies);
+        return latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+    }
+
+    private static Thread startLoop(FairScheduler scheduler, int tenant, long workMillis,
+                                    AtomicBoolean stop, AtomicInteger served) {
+        Thread thread = new Thread(() -> {
+            while (!stop.get()) {
+                if (scheduler.acquire(tenant)) {
+                    try {
+                        Thread.sleep(workMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        scheduler.release(TimeUnit.MILLISECONDS.toNanos(workMillis));
+                    }
+                    served.incrementAndGet();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    // min == max, so latency never moves the limit
+    private static AdaptiveLimiter fixedLimit(int limit) {
+        return new AdaptiveLimiter(limit, limit, limit);
+    }
+}
@@ -0,0 +1,278 @@
+package com.webserver.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpResponse;
+import com.webserver.util.ConfigLoader;
+
+class NioServerTest {
+
+    private static final byte[] STREAMED = new byte[1024 * 1024 + 17];
+
+    private NioServer server;
+    private ExecutorService handlerPool;
+    private ServerContext context;
+    private int port;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        context = new ServerContext(new ConfigLoader(), null);
+        context.getProcessor().addRoute("/ping", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .addHeader("Content-Type", "text/plain")
+                .setBody("pong")
+                .build());
+        context.getProcessor().addRoute("/echo", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setRawBody(req.getRawBody())
+                .build());
+        context.getProcessor().addRoute("/stream", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setBodySource(() -> new ByteArrayInputStream(STREAMED), -1)
+                .build());
+        context.getProcessor().addRoute("/boom", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setBodySource(() -> {
+                    throw new IllegalStateException("body source bug");
+                }, -1)
+                .build());
+        file = Files.createTempFile("served", ".bin");
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(bytes);
+        Files.write(file, bytes);
+        context.getProcessor().addRoute("/file", req -> new HttpResponse.Builder()
+                .setStatusCode(200)
+                .setBodyFile(file, Files.size(file))
+                .build());
+        handlerPool = Executors.newFixedThreadPool(4);
+        server = new NioServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, context, handlerPool);
+        port = server.getPort();
+        Thread acceptor = new Thread(server::start);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.stop();
+        handlerPool.shutdownNow();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testKeepAliveServesSeveralRequestsOnOneConnection() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String first = new String(readResponse(in), StandardCharsets.US_ASCII);
+            assertTrue(first.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(first.contains("Connection: keep-alive"));
+            assertTrue(first.endsWith("pong"));
+
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String second = new String(readResponse(in), StandardCharsets.US_ASCII);
+            assertTrue(second.contains("Connection: close"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testPipelinedRequestsAnsweredInOrder() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            StringBuilder pipeline = new StringBuilder();
+            for (String word : new String[] {"one", "two", "three"}) {
+                pipeline.append("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: ")
+                        .append(word.length()).append("\r\n\r\n").append(word);
+            }
+            out.write(pipeline.toString().getBytes(StandardCharsets.US_ASCII));
+
+            assertTrue(new String(readResponse(in), StandardCharsets.US_ASCII).endsWith("one"));
+            assertTrue(new String(readResponse(in), StandardCharsets.US_ASCII).endsWith("two"));
+            assertTrue(new String(readResponse(in), StandardCharsets.US_ASCII).endsWith("three"));
+        }
+    }
+
+    @Test
+    void testLargeBodiesSurvivePartialReadsAndWrites() throws Exception {
+        // far bigger than the read buffer and the socket send buffer
+        byte[] body = new byte[4 * 1024 * 1024];
+        Arrays.fill(body, (byte) 'x');
+        body[body.length - 1] = 'y';
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            // trickle the body in so it arrives over many reads
+            for (int off = 0; off < body.length; off += 256 * 1024) {
+                out.write(body, off, Math.min(256 * 1024, body.length - off));
+                out.flush();
+            }
+
+            // a slow reader leaves the server with a full send buffer
+            Thread.sleep(200);
+            byte[] response = readResponse(in);
+            byte[] echoed = Arrays.copyOfRange(response, response.length - body.length, response.length);
+            assertArrayEquals(body, echoed);
+        }
+    }
+
+    @Test
+    void testStreamedBodyIsSentChunkedAndKeepsTheConnection() throws IOException {
+        Arrays.fill(STREAMED, (byte) 's');
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /stream HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String head = new String(readResponse(in), StandardCharsets.US_ASCII);
+            assertTrue(head.contains("Transfer-Encoding: chunked"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                int size = Integer.parseInt(readLine(in), 16);
+                body.write(in.readNBytes(size));
+                assertEquals("", readLine(in));
+                if (size == 0) {
+                    break;
+                }
+            }
+            assertArrayEquals(STREAMED, body.toByteArray());
+
+            // the connection is free for the next request once the last chunk is out
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(new String(readResponse(in), StandardCharsets.US_ASCII).endsWith("pong"));
+        }
+    }
+
+    @Test
+    void testFileBodyIsTransferredToTheSocket() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /file HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            // a slow reader: the transfer has to wait for the socket to drain
+            Thread.sleep(200);
+            byte[] response = readResponse(in);
+            byte[] expected = Files.readAllBytes(file);
+            assertArrayEquals(expected, Arrays.copyOfRange(response, response.length - expected.length, response.length));
+
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(new String(readResponse(in), StandardCharsets.US_ASCII).endsWith("pong"));
+        }
+    }
+
+    @Test
+    void testUnexpectedFailureGets500AndTheConnectionIsClosed() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write("GET /boom HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String response = new String(readResponse(in), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 500 Internal Server Error"));
+            assertTrue(response.contains("Connection: close"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testRequestOverTheLimitGets413WithoutBeingBuffered() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            // answered from the head, with the start of the body still unread
+            out.write("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 2000000000\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(new byte[16 * 1024]);
+            Thread.sleep(100);
+            // a client still sending its body: a closed socket answers that with a reset
+            out.write(new byte[16 * 1024]);
+            Thread.sleep(100);
+            String response = new String(readResponse(in), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 413"));
+            assertTrue(response.contains("Connection: close"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testAmbiguousFramingClosesTheConnection() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n0\r\n\r\n"
+                    + "GET /smuggled HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            assertTrue(new String(readResponse(in), StandardCharsets.US_ASCII).contains("Connection: close"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c == -1) {
+                throw new IOException("Connection closed mid-line");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Read one response: headers up to the blank line, then Content-Length bytes.
+     */
+    private static byte[] readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int matched = 0;
+        while (matched < 4) {
+            int c = in.read();
+            if (c == -1) {
+                throw new IOException("Connection closed mid-response");
+            }
+            head.write(c);
+            matched = (c == "\r\n\r\n".charAt(matched)) ? matched + 1 : (c == '\r' ? 1 : 0);
+        }
+        int contentLength = 0;
+        for (String line : head.toString(StandardCharsets.US_ASCII).split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        head.write(in.readNBytes(contentLength));
+        return head.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+package com.webserver.core;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.util.ConfigLoader;
+import com.webserver.util.DB;
+
+class ServerContextTest {
+
+    private ServerContext context;
+
+    @BeforeEach
+    void setUp() {
+        context = new ServerContext(new ConfigLoader(), null);
+    }
+
+    @Test
+    void testApiRoutesDefinedOnce() {
+        assertTrue(context.getProcessor().hasRoute("/api/metrics"));
+        assertTrue(context.getProcessor().hasRoute("/api/tenants"));
+
+        // handlers share the context's processor instead of building their own
+        new ConnectionHandler(new Socket(), context);
+        new ConnectionHandler(new Socket(), context);
+        assertTrue(context.getProcessor().hasRoute("/api/metrics"));
+    }
+
+    @Test
+    void testAppRoutesRegisteredAndRemovedIncrementally() {
+        DB.App app = new DB.App();
+        app.appId = 2002;
+        app.routes = new ArrayList<>(List.of("/app_2002/index.html", "/app_2002/assets/css/styles.css"));
+
+        context.getRoutes().registerAppRoutes(List.of(app));
+        assertTrue(context.getProcessor().hasRoute("/app_2002/index.html"));
+        assertTrue(context.getProcessor().hasRoute("/app_2002/assets/css/styles.css"));
+
+        // re-registering (e.g. a second upload of the same file) is harmless
+        context.getRoutes().registerAppFileRoute(2002, "/index.html");
+
+        context.getRoutes().unregisterAppRoutes(app);
+        assertFalse(context.getProcessor().hasRoute("/app_2002/index.html"));
+        assertFalse(context.getProcessor().hasRoute("/app_2002/assets/css/styles.css"));
+    }
+
+    @Test
+    void testSyncDropsAppsAndFilesNoLongerListed() {
+        DB.App kept = new DB.App();
+        kept.appId = 2004;
+        kept.tenantId = 7;
+        kept.routes = new ArrayList<>(List.of("/app_2004/index.html", "/app_2004/old.js"));
+        DB.App deleted = new DB.App();
+        deleted.appId = 2005;
+        deleted.tenantId = 8;
+        deleted.routes = new ArrayList<>(List.of("/app_2005/index.html"));
+        ApiRoutes routes = context.getRoutes();
+        routes.registerAppRoutes(List.of(kept, deleted));
+
+        // as listed after another instance deleted 2005, re-uploaded 2004 without old.js and added 2006
+        DB.App reuploaded = new DB.App();
+        reuploaded.appId = 2004;
+        reuploaded.tenantId = 7;
+        reuploaded.routes = new ArrayList<>(List.of("/app_2004/index.html", "/app_2004/new.js"));
+        DB.App added = new DB.App();
+        added.appId = 2006;
+        added.tenantId = 9;
+        added.routes = new ArrayList<>(List.of("/app_2006/index.html"));
+        routes.syncAppRoutes(List.of(reuploaded, added));
+
+        assertTrue(context.getProcessor().hasRoute("/app_2004/index.html"));
+        assertTrue(context.getProcessor().hasRoute("/app_2004/new.js"));
+        assertFalse(context.getProcessor().hasRoute("/app_2004/old.js"));
+        assertFalse(context.getProcessor().hasRoute("/app_2005/index.html"));
+        assertTrue(context.getProcessor().hasRoute("/app_2006/index.html"));
+        assertEquals(7, routes.tenantOf(2004));
+        assertEquals(0, routes.tenantOf(2005));
+        assertEquals(9, routes.tenantOf(2006));
+
+        // 2005's paths are no longer answered as an app's: looked up like any other
+        long fastNotFound = context.getProcessor().getFastNotFound();
+        context.getProcessor().process(new HttpRequest("GET", "/app_2005/index.html", Map.of(), "", null));
+        assertEquals(fastNotFound, context.getProcessor().getFastNotFound());
+    }
+
+    @Test
+    void testUnknownFileOfKnownAppIsNotFoundWithoutLookup() {
+        DB.App app = new DB.App();
+        app.appId = 2003;
+        app.routes = new ArrayList<>(List.of("/app_2003/index.html"));
+        context.getRoutes().registerAppRoutes(List.of(app));
+        HttpRequest probe = new HttpRequest("GET", "/app_2003/.env", Map.of(), "", null);
+
+        assertEquals(404, context.getProcessor().process(probe).getStatusCode());
+        assertEquals(1, context.getProcessor().getFastNotFound());
+
+        // once the app is gone, its paths are looked up like any other
+        context.getRoutes().unregisterAppRoutes(app);
+        assertEquals(404, context.getProcessor().process(probe).getStatusCode());
+        assertEquals(1, context.getProcessor().getFastNotFound());
+    }
+
+    @Test
+    void testLimitStaysWithinAFixedPool() {
+        ConfigLoader platform = new ConfigLoader() {
+            @Override
+            public String getExecutor() {
+                return "platform";
+            }
+
+            @Override
+            public int getMaxThreads() {
+                return 10;
+            }
+
+            @Override
+            public int getLimiterInitialLimit() {
+                return 20;
+            }
+        };
+        // at most 10 requests can be in flight: a limit of 20 could never act
+        assertEquals(10, new ServerContext(platform, null).getLimiter().getLimit());
+    }
+}
@@ -0,0 +1,85 @@
+package com.webserver.core;
+
+import com.webserver.http.RequestProcessor;
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class TenantLimitsTest {
+
+    @Test
+    void testBucketAllowsBurstThenReportsWait() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryTake(1));
+        }
+        long wait = bucket.tryTake(1);
+        // one token comes back every 100 ms
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100), "wait " + wait);
+        // a refused take takes nothing, so the wait does not grow
+        long again = bucket.tryTake(1);
+        assertTrue(again > 0 && again <= wait, "wait " + again + " after " + wait);
+    }
+
+    @Test
+    void testUnconfiguredTenantIsUnlimited() {
+        TenantLimits limits = new TenantLimits(Map.of(1, 1.0), 0, Map.of(), 0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limits.tryRequest(2));
+        }
+        assertNull(limits.bandwidth(2));
+        OutputStream out = new ByteArrayOutputStream();
+        assertSame(out, limits.shape(2, out));
+    }
+
+    @Test
+    void testTenantOverRateGets429WithRetryAfter() {
+        TenantLimits limits = new TenantLimits(Map.of(5, 2.0), 0, Map.of(), 0);
+        FairScheduler scheduler = new FairScheduler(new AdaptiveLimiter(10, 10, 10), Map.of(), 1, 10, 1000);
+        RequestDispatcher dispatcher = new RequestDispatcher(
+                new RequestProcessor(null), scheduler, limits, appId -> appId == 7 ? 5 : 0, 1);
+
+        assertEquals(302, dispatcher.dispatch(get("/app_7/")).getStatusCode());
+        assertEquals(302, dispatcher.dispatch(get("/app_7/")).getStatusCode());
+        HttpResponse limited = dispatcher.dispatch(get("/app_7/"));
+        assertEquals(429, limited.getStatusCode());
+        assertEquals(List.of("1"), limited.getHeaders().get("Retry-After"));
+
+        // other tenants are not affected
+        assertEquals(302, dispatcher.dispatch(get("/app_8/")).getStatusCode());
+    }
+
+    @Test
+    void testShapedOutputKeepsToByteRate() throws Exception {
+        int rate = 128 * 1024;
+        TenantLimits limits = new TenantLimits(Map.of(), 0, Map.of(3, (double) rate), 0);
+        assertNotNull(limits.bandwidth(3));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream shaped = limits.shape(3, sink);
+
+        // the first second's worth goes out as a burst, the next 64 KB at 128 KB/s
+        long start = System.nanoTime();
+        shaped.write(new byte[rate + 64 * 1024]);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(rate + 64 * 1024, sink.size());
+        assertTrue(elapsedMillis >= 450 && elapsedMillis < 2000, "took " + elapsedMillis + " ms");
+    }
+
+    private static HttpRequest get(String path) {
+        return new HttpRequest.Builder().setMethod("GET").setPath(path).setHeaders(new HashMap<>()).build();
+    }
+}
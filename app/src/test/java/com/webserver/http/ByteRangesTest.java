@@ -0,0 +1,144 @@
+package com.webserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.FileService;
+
+public class ByteRangesTest {
+
+    @Test
+    void testParseRanges() {
+        assertEquals(List.of(new ByteRanges.Range(0, 99)), ByteRanges.parse("bytes=0-99", 1000));
+        assertEquals(List.of(new ByteRanges.Range(900, 999)), ByteRanges.parse("bytes=900-", 1000));
+        assertEquals(List.of(new ByteRanges.Range(950, 999)), ByteRanges.parse("bytes=-50", 1000));
+        // past the end is cut to the end; a suffix longer than the body is all of it
+        assertEquals(List.of(new ByteRanges.Range(990, 999)), ByteRanges.parse("bytes=990-5000", 1000));
+        assertEquals(List.of(new ByteRanges.Range(0, 999)), ByteRanges.parse("bytes=-5000", 1000));
+        // sorted, overlapping and adjacent ones merged
+        assertEquals(List.of(new ByteRanges.Range(0, 199), new ByteRanges.Range(500, 599)),
+                ByteRanges.parse("bytes=500-599, 100-199, 0-150", 1000));
+    }
+
+    @Test
+    void testInvalidRangesSendTheWholeBody() {
+        assertNull(ByteRanges.parse(null, 1000));
+        assertNull(ByteRanges.parse("items=0-5", 1000));
+        assertNull(ByteRanges.parse("bytes=abc", 1000));
+        assertNull(ByteRanges.parse("bytes=5-1", 1000));
+        assertNull(ByteRanges.parse("bytes=" + "1-1,".repeat(ByteRanges.MAX_RANGES + 1), 1000));
+    }
+
+    @Test
+    void testUnsatisfiableRanges() {
+        assertTrue(ByteRanges.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    void testIfRange() {
+        long modified = 1_760_000_000_000L;
+        assertTrue(ByteRanges.ifRangeMatches(null, null, -1));
+        assertTrue(ByteRanges.ifRangeMatches("\"v1\"", "\"v1\"", modified));
+        assertFalse(ByteRanges.ifRangeMatches("\"v1\"", "\"v2\"", modified));
+        assertFalse(ByteRanges.ifRangeMatches("W/\"v1\"", "W/\"v1\"", modified));
+        assertTrue(ByteRanges.ifRangeMatches("Thu, 09 Oct 2025 08:53:20 GMT", null, modified));
+        assertFalse(ByteRanges.ifRangeMatches("Thu, 09 Oct 2025 08:53:21 GMT", null, modified));
+        assertFalse(ByteRanges.ifRangeMatches("yesterday", null, modified));
+    }
+
+    @Test
+    void testMultipartOpensOnlyTheRanges() throws Exception {
+        byte[] body = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+        StringBuilder opened = new StringBuilder();
+        ByteRanges.Multipart multipart = new ByteRanges.Multipart(ByteRanges.parse("bytes=2-4,-3", body.length),
+                body.length, "text/plain", (start, length) -> {
+                    opened.append(start).append('+').append(length).append(' ');
+                    return new ByteArrayInputStream(body, (int) start, (int) length);
+                });
+        String boundary = multipart.contentType().substring(multipart.contentType().indexOf("boundary=") + 9);
+
+        byte[] sent;
+        try (InputStream in = multipart.open()) {
+            sent = in.readAllBytes();
+        }
+        String expected = "--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 2-4/20\r\n\r\n234" +
+                "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 17-19/20\r\n\r\nhij" +
+                "\r\n--" + boundary + "--\r\n";
+        assertEquals(expected, new String(sent, StandardCharsets.US_ASCII));
+        assertEquals(multipart.length(), sent.length);
+        assertEquals("2+3 17+3 ", opened.toString());
+    }
+
+    @Test
+    void testMultipartFromAnOpenFileClosesItWithTheBody() throws Exception {
+        Path file = Files.createTempFile("parts", ".txt");
+        try {
+            Files.writeString(file, "0123456789abcdefghij");
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteRanges.Multipart multipart = new ByteRanges.Multipart(ByteRanges.parse("bytes=2-4,-3", 20),
+                    20, "text/plain", channel);
+            String sent;
+            try (InputStream in = multipart.open()) {
+                sent = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+            }
+            assertTrue(sent.contains("bytes 2-4/20\r\n\r\n234\r\n"));
+            assertTrue(sent.contains("bytes 17-19/20\r\n\r\nhij\r\n"));
+            assertFalse(channel.isOpen());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testWebrootFileRange() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot");
+        Path file = webRoot.resolve("video.mp4");
+        try {
+            Files.writeString(file, "0123456789".repeat(10_000));
+            RequestProcessor processor = new RequestProcessor(new FileService(webRoot.toString()));
+
+            HttpResponse partial = processor.process(get("/video.mp4", Map.of("Range", List.of("bytes=50000-50009"))));
+            assertEquals(206, partial.getStatusCode());
+            assertEquals("bytes 50000-50009/100000", partial.getHeaders().first("Content-Range"));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ResponseWriter().write(out, partial, false);
+            assertTrue(out.toString(StandardCharsets.US_ASCII).endsWith("\r\n\r\n0123456789"));
+
+            HttpResponse outside = processor.process(get("/video.mp4", Map.of("Range", List.of("bytes=200000-"))));
+            assertEquals(416, outside.getStatusCode());
+            assertEquals("bytes */100000", outside.getHeaders().first("Content-Range"));
+
+            // If-Range that no longer matches: the whole file
+            HttpResponse changed = processor.process(get("/video.mp4", Map.of("Range", List.of("bytes=0-9"),
+                    "If-Range", List.of("\"stale\""))));
+            assertEquals(200, changed.getStatusCode());
+            assertEquals(100_000, changed.getBodyLength());
+            assertEquals("bytes", changed.getHeaders().first("Accept-Ranges"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(webRoot);
+        }
+    }
+
+    private static HttpRequest get(String path, Map<String, List<String>> headers) {
+        return new HttpRequest("GET", path, headers, "", null);
+    }
+}
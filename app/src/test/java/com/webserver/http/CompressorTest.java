@@ -0,0 +1,169 @@
+package com.webserver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.FileService;
+
+public class CompressorTest {
+
+    private static final String JSON = "{\"performanceData\":[" + "{\"t\":1760000000,\"cpu\":0.42},".repeat(200) + "{}]}";
+
+    private final Compressor compressor = new Compressor(6, 1024, 1 << 20);
+
+    @Test
+    void testAcceptEncoding() {
+        assertTrue(Compressor.accepts("gzip, deflate, br", "gzip"));
+        assertTrue(Compressor.accepts("br;q=1.0, gzip;q=0.5", "gzip"));
+        assertFalse(Compressor.accepts("gzip;q=0, br", "gzip"));
+        assertTrue(Compressor.accepts("*", "br"));
+        assertFalse(Compressor.accepts("*;q=0", "gzip"));
+        assertFalse(Compressor.accepts("identity", "gzip"));
+        assertFalse(Compressor.accepts(null, "gzip"));
+    }
+
+    @Test
+    void testJsonResponseIsGzipped() throws Exception {
+        HttpResponse response = json().addHeader("ETag", "\"v1\"").build();
+
+        HttpResponse encoded = compressor.encode(get(Map.of("Accept-Encoding", List.of("gzip, br"))), response);
+        assertEquals("gzip", encoded.getHeaders().first("Content-Encoding"));
+        assertEquals("Accept-Encoding", encoded.getHeaders().first("Vary"));
+        assertEquals("W/\"v1\"", encoded.getHeaders().first("ETag"));
+        assertTrue(encoded.getRawBody().length < JSON.length() / 4);
+        assertEquals(JSON, gunzip(new ByteArrayInputStream(encoded.getRawBody())));
+        assertTrue(compressor.getRatio() < 0.25);
+
+        // not accepted: sent as it is, but still varies
+        HttpResponse plain = compressor.encode(get(Map.of()), response);
+        assertNull(plain.getHeaders().first("Content-Encoding"));
+        assertEquals("Accept-Encoding", plain.getHeaders().first("Vary"));
+        assertEquals(JSON, plain.getBody());
+    }
+
+    @Test
+    void testSmallAndIncompressibleResponsesAreLeftAlone() {
+        HttpRequest request = get(Map.of("Accept-Encoding", List.of("gzip")));
+        HttpResponse small = new HttpResponse.Builder().addHeader("Content-Type", "application/json").setBody("{}").build();
+        assertSame(small, compressor.encode(request, small));
+
+        HttpResponse image = new HttpResponse.Builder().addHeader("Content-Type", "image/png")
+                .setRawBody(new byte[4096]).build();
+        assertSame(image, compressor.encode(request, image));
+    }
+
+    @Test
+    void testStreamedResponseIsGzippedAsItIsRead() throws Exception {
+        byte[] body = JSON.getBytes(StandardCharsets.UTF_8);
+        HttpResponse response = new HttpResponse.Builder()
+                .addHeader("Content-Type", "application/javascript")
+                .setBodySource(() -> new ByteArrayInputStream(body), body.length)
+                .build();
+
+        HttpResponse encoded = compressor.encode(get(Map.of("Accept-Encoding", List.of("gzip"))), response);
+        assertEquals(-1, encoded.getBodyLength());
+        try (InputStream in = encoded.getBodySource().open()) {
+            assertEquals(JSON, gunzip(in));
+        }
+    }
+
+    @Test
+    void testStaticFilesAreCompressedOnceAndPrecompressedSiblingsPreferred() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot");
+        Path script = webRoot.resolve("app.js");
+        Path brotli = webRoot.resolve("app.js.br");
+        Path staleGzip = webRoot.resolve("app.js.gz");
+        try {
+            Files.writeString(staleGzip, "stale");
+            Files.setLastModifiedTime(staleGzip, FileTime.fromMillis(1_000_000_000_000L));
+            Files.writeString(script, JSON);
+            RequestProcessor processor = new RequestProcessor(new FileService(webRoot.toString()), null, compressor);
+            HttpRequest gzip = new HttpRequest("GET", "/app.js", Map.of("Accept-Encoding", List.of("gzip")), "", null);
+
+            HttpResponse first = processor.process(gzip);
+            assertEquals("gzip", first.getHeaders().first("Content-Encoding"));
+            assertEquals(JSON, gunzip(new ByteArrayInputStream(first.getRawBody())));
+            assertTrue(first.getHeaders().first("ETag").startsWith("W/\""));
+            HttpResponse second = processor.process(gzip);
+            assertSame(first.getRawBody(), second.getRawBody());
+            assertEquals(1, compressor.getCacheMisses());
+            assertEquals(1, compressor.getCacheHits());
+
+            // revalidating the gzip variant: 304 with its weak tag
+            HttpResponse revalidated = processor.process(new HttpRequest("GET", "/app.js",
+                    Map.of("Accept-Encoding", List.of("gzip"), "If-None-Match", List.of(first.getHeaders().first("ETag"))),
+                    "", null));
+            assertEquals(304, revalidated.getStatusCode());
+            assertEquals(first.getHeaders().first("ETag"), revalidated.getHeaders().first("ETag"));
+
+            Files.write(brotli, new byte[] {1, 2, 3});
+            HttpResponse br = processor.process(new HttpRequest("GET", "/app.js",
+                    Map.of("Accept-Encoding", List.of("gzip, br")), "", null));
+            assertEquals("br", br.getHeaders().first("Content-Encoding"));
+            assertEquals(brotli, br.getBodyFile());
+
+            HttpResponse identity = processor.process(new HttpRequest("GET", "/app.js", Map.of(), "", null));
+            assertNull(identity.getHeaders().first("Content-Encoding"));
+            assertEquals("Accept-Encoding", identity.getHeaders().first("Vary"));
+            assertArrayEquals(JSON.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(identity.getBodyFile()));
+        } finally {
+            Files.deleteIfExists(script);
+            Files.deleteIfExists(brotli);
+            Files.deleteIfExists(staleGzip);
+            Files.delete(webRoot);
+        }
+    }
+
+    @Test
+    void testFileWithoutAnETagIsNotCached() throws Exception {
+        Path file = Files.createTempFile("app", ".js");
+        try {
+            Files.writeString(file, JSON);
+            HttpRequest gzip = get(Map.of("Accept-Encoding", List.of("gzip")));
+            assertTrue(compressor.cachesGzip("application/javascript", JSON.length()));
+
+            assertNull(compressor.encodeFile(gzip, file, null));
+            assertNull(compressor.encodeFile(gzip, file, null));
+            assertEquals(0, compressor.getCacheMisses());
+
+            Compressor.Variant tagged = compressor.encodeFile(gzip, file, "\"v1\"");
+            assertEquals(JSON, gunzip(new ByteArrayInputStream(tagged.bytes())));
+            assertSame(tagged.bytes(), compressor.encodeFile(gzip, file, "\"v1\"").bytes());
+            assertEquals(1, compressor.getCacheMisses());
+            assertNull(compressor.encodeFile(get(Map.of()), file, "\"v1\""));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static HttpResponse.Builder json() {
+        return new HttpResponse.Builder().addHeader("Content-Type", "application/json").setBody(JSON);
+    }
+
+    private static HttpRequest get(Map<String, List<String>> headers) {
+        return new HttpRequest("GET", "/api/metrics", headers, "", null);
+    }
+
+    private static String gunzip(InputStream gzip) throws Exception {
+        try (InputStream in = new GZIPInputStream(gzip)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.webserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpRequest;
+import com.webserver.model.HttpResponse;
+import com.webserver.util.FileService;
+
+public class ConditionalTest {
+
+    private static final long MODIFIED = 1_760_000_000_000L; // Thu, 09 Oct 2025 08:53:20 GMT
+
+    @Test
+    void testHttpDate() {
+        assertEquals("Thu, 09 Oct 2025 08:53:20 GMT", Conditional.httpDate(MODIFIED));
+    }
+
+    @Test
+    void testIfNoneMatch() {
+        assertTrue(Conditional.notModified(get(Map.of("If-None-Match", List.of("\"a\", \"b\""))), "\"b\"", MODIFIED));
+        assertTrue(Conditional.notModified(get(Map.of("If-None-Match", List.of("W/\"b\""))), "\"b\"", MODIFIED));
+        assertTrue(Conditional.notModified(get(Map.of("If-None-Match", List.of("*"))), "\"b\"", MODIFIED));
+        assertFalse(Conditional.notModified(get(Map.of("If-None-Match", List.of("\"a\""))), "\"b\"", MODIFIED));
+        // If-None-Match decides, even when If-Modified-Since alone would say 304
+        assertFalse(Conditional.notModified(get(Map.of("If-None-Match", List.of("\"a\""),
+                "If-Modified-Since", List.of("Thu, 09 Oct 2025 08:53:20 GMT"))), "\"b\"", MODIFIED));
+    }
+
+    @Test
+    void testIfModifiedSince() {
+        assertTrue(Conditional.notModified(get(Map.of("If-Modified-Since", List.of("Thu, 09 Oct 2025 08:53:20 GMT"))), null, MODIFIED));
+        assertFalse(Conditional.notModified(get(Map.of("If-Modified-Since", List.of("Thu, 09 Oct 2025 08:53:19 GMT"))), null, MODIFIED));
+        assertFalse(Conditional.notModified(get(Map.of("If-Modified-Since", List.of("not a date"))), null, MODIFIED));
+        assertFalse(Conditional.notModified(get(Map.of()), "\"b\"", MODIFIED));
+    }
+
+    @Test
+    void testWebrootRevalidationIs304WithoutABody() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot");
+        Path file = webRoot.resolve("app.js");
+        try {
+            Files.writeString(file, "console.log('hello');");
+            RequestProcessor processor = new RequestProcessor(new FileService(webRoot.toString()));
+
+            HttpResponse first = processor.process(new HttpRequest("GET", "/app.js", Map.of(), "", null));
+            assertEquals(200, first.getStatusCode());
+            String etag = first.getHeaders().first("ETag");
+            assertTrue(etag != null && etag.startsWith("\""));
+            String lastModified = first.getHeaders().first("Last-Modified");
+
+            HttpResponse again = processor.process(new HttpRequest("GET", "/app.js",
+                    Map.of("If-None-Match", List.of(etag)), "", null));
+            assertEquals(304, again.getStatusCode());
+            assertEquals(etag, again.getHeaders().first("ETag"));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ResponseWriter().write(out, again, true);
+            assertEquals("HTTP/1.1 304 Not Modified\r\nConnection: keep-alive\r\nETag: " + etag +
+                    "\r\nLast-Modified: " + lastModified + "\r\n\r\n", out.toString(StandardCharsets.US_ASCII));
+
+            HttpResponse since = processor.process(new HttpRequest("GET", "/app.js",
+                    Map.of("If-Modified-Since", List.of(lastModified)), "", null));
+            assertEquals(304, since.getStatusCode());
+
+            Files.writeString(file, "console.log('changed');");
+            HttpResponse changed = processor.process(new HttpRequest("GET", "/app.js",
+                    Map.of("If-None-Match", List.of(etag)), "", null));
+            assertEquals(200, changed.getStatusCode());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(webRoot);
+        }
+    }
+
+    private static HttpRequest get(Map<String, List<String>> headers) {
+        return new HttpRequest("GET", "/", headers, "", null);
+    }
+}
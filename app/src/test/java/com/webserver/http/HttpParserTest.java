@@ -1,12 +1,18 @@
 package com.webserver.http;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 import com.webserver.model.HttpRequest;
@@ -73,4 +79,204 @@ class HttpParserTest {
 
         assertThrows(IllegalArgumentException.class, () -> parser.parse(inputStream));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPipelinedRequestsParsedFromBufferedBytes() throws Exception {
+        String requests =
+            "POST /submit HTTP/1.1\r\n" +
+            "Content-Length: 5\r\n" +
+            "\r\n" +
+            "hello" +
+            "GET /second HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "\r\n";
+
+        InputStream inputStream = new ByteArrayInputStream(requests.getBytes());
+        HttpParser parser = new HttpParser();
+
+        HttpRequest first = parser.parse(inputStream);
+        assertEquals("/submit", first.getPath());
+        assertEquals("hello", first.getTextBody());
+        // the second request came in the same read and is waiting in the buffer
+        assertTrue(parser.hasBufferedInput());
+
+        HttpRequest second = parser.parse(inputStream);
+        assertEquals("/second", second.getPath());
+        assertFalse(parser.hasBufferedInput());
+
+        // clean end of stream between requests
+        assertNull(parser.parse(inputStream));
+    }
+
+    @Test
+    void testTryParseWaitsForCompleteRequest() throws Exception {
+        HttpParser parser = new HttpParser();
+        byte[] full = ("POST /submit HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello").getBytes(StandardCharsets.US_ASCII);
+
+        // headers complete but body still in flight: nothing consumed
+        ByteBuffer partial = ByteBuffer.wrap(full, 0, full.length - 2);
+        assertNull(parser.tryParse(partial));
+        assertEquals(0, partial.position());
+
+        ByteBuffer complete = ByteBuffer.wrap(full);
+        HttpRequest request = parser.tryParse(complete);
+        assertNotNull(request);
+        assertEquals("hello", request.getTextBody());
+        assertFalse(complete.hasRemaining());
+    }
+
+    @Test
+    void testHeadersMatchInAnyCaseAndKeepRepeats() throws Exception {
+        String request =
+            "POST /submit HTTP/1.1\r\n" +
+            "content-length: 2\r\n" +
+            "Accept:  text/html \r\n" +
+            "Cookie: a=1\r\n" +
+            "COOKIE: b=2\r\n" +
+            "NoColonHere\r\n" +
+            "\r\n" +
+            "ok";
+
+        HttpRequest httpRequest = new HttpParser().parse(new ByteArrayInputStream(request.getBytes()));
+
+        assertEquals("ok", httpRequest.getTextBody());
+        assertEquals(List.of("text/html"), httpRequest.getHeaders().get("ACCEPT"));
+        assertEquals(List.of("a=1", "b=2"), httpRequest.getHeaders("cookie"));
+        assertTrue(httpRequest.getHeaders().containsKey("Content-Length"));
+        assertNull(httpRequest.getHeaders().get("Host"));
+        // iteration groups repeats in arrival order (well-known names in their usual spelling)
+        assertEquals(List.of("Content-Length", "Accept", "Cookie"), List.copyOf(httpRequest.getHeaders().keySet()));
+    }
+
+    @Test
+    void testTryParseFromDirectBuffer() throws Exception {
+        byte[] bytes = ("GET /a?b=c HTTP/1.0\r\nConnection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        HttpRequest request = new HttpParser().tryParse(direct);
+        assertEquals("/a?b=c", request.getPath());
+        assertEquals("HTTP/1.0", request.getHttpVersion());
+        assertEquals("keep-alive", request.getFirstHeader("connection").orElseThrow());
+        assertFalse(direct.hasRemaining());
+    }
+
+    @Test
+    void testInvalidContentLengthRejected() {
+        String request = "POST /submit HTTP/1.1\r\nContent-Length: -5\r\n\r\n";
+        HttpParser parser = new HttpParser();
+        assertThrows(IOException.class, () -> parser.parse(new ByteArrayInputStream(request.getBytes())));
+    }
+
+    @Test
+    void testChunkedBodyIsDecodedAsStream() throws Exception {
+        String requests =
+            "POST /upload HTTP/1.1\r\n" +
+            "Transfer-Encoding: chunked\r\n" +
+            "\r\n" +
+            "5;ext=1\r\nhello\r\n" +
+            "7\r\n, world\r\n" +
+            "0\r\n" +
+            "X-Checksum: abc\r\n" +
+            "\r\n" +
+            "GET /next HTTP/1.1\r\n\r\n";
+
+        HttpParser parser = new HttpParser();
+        InputStream input = new ByteArrayInputStream(requests.getBytes(StandardCharsets.US_ASCII));
+        HttpRequest request = parser.parse(input);
+
+        assertEquals("hello, world", new String(request.getBodyStream().readAllBytes(), StandardCharsets.US_ASCII));
+        assertEquals(12, parser.getBodyLength());
+        assertTrue(parser.hasBufferedInput());
+        assertEquals("/next", parser.parse(input).getPath());
+    }
+
+    @Test
+    void testStreamedBodyMaterialisesLazily() throws Exception {
+        String requests =
+            "POST /a HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello" +
+            "POST /b HTTP/1.1\r\nContent-Length: 5\r\n\r\nworld";
+
+        HttpParser parser = new HttpParser();
+        InputStream input = new ByteArrayInputStream(requests.getBytes(StandardCharsets.US_ASCII));
+        HttpRequest first = parser.parse(input);
+        // existing handlers still get the whole body as bytes and text
+        assertEquals("hello", first.getTextBody());
+        assertEquals(5, first.getRawBody().length);
+
+        // a body nobody reads is skipped when the next request is parsed
+        assertEquals("/b", parser.parse(input).getPath());
+        HttpRequest unread = parser.parse(new ByteArrayInputStream(
+                "PUT /c HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(parser.skipBody(2)); // 3 bytes left is more than 2
+        assertTrue(parser.skipBody(3));
+        assertNull(parser.parse(new ByteArrayInputStream(new byte[0])));
+        assertEquals("/c", unread.getPath());
+    }
+
+    @Test
+    void testTryParseWaitsForLastChunk() throws Exception {
+        HttpParser parser = new HttpParser();
+        byte[] full = ("POST /u HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        ByteBuffer partial = ByteBuffer.wrap(full, 0, full.length - 2);
+        assertNull(parser.tryParse(partial));
+        assertEquals(0, partial.position());
+
+        ByteBuffer complete = ByteBuffer.wrap(full);
+        assertEquals("abcde", parser.tryParse(complete).getTextBody());
+        assertFalse(complete.hasRemaining());
+    }
+
+    @Test
+    void testUnsupportedTransferEncodingRejected() {
+        String request = "POST /u HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n";
+        HttpParser parser = new HttpParser();
+        assertThrows(IOException.class, () -> parser.parse(new ByteArrayInputStream(request.getBytes())));
+    }
+
+    @Test
+    void testTryParseRejectsRequestsOverTheLimit() throws Exception {
+        HttpParser parser = new HttpParser();
+        // refused from the Content-Length alone, before any of the body is in
+        ByteBuffer declared = ByteBuffer.wrap("POST /u HTTP/1.1\r\nContent-Length: 2000000000\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        assertThrows(HttpParser.RequestTooLargeException.class, () -> parser.tryParse(declared, 1024));
+
+        // a chunked body as soon as what is buffered of it passes the limit
+        String head = "POST /u HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n";
+        ByteBuffer endless = ByteBuffer.wrap((head + "400\r\n" + "x".repeat(1024))
+                .getBytes(StandardCharsets.US_ASCII));
+        assertThrows(HttpParser.RequestTooLargeException.class, () -> parser.tryParse(endless, 1024));
+
+        ByteBuffer small = ByteBuffer.wrap((head + "3\r\nabc\r\n0\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        assertEquals("abc", parser.tryParse(small, 1024).getTextBody());
+    }
+
+    @Test
+    void testConflictingContentLengthsRejected() throws Exception {
+        String conflicting = "POST /u HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 30\r\n\r\nabc";
+        assertThrows(IOException.class, () -> new HttpParser().parse(new ByteArrayInputStream(conflicting.getBytes())));
+        assertThrows(IOException.class, () -> new HttpParser().tryParse(ByteBuffer.wrap(conflicting.getBytes())));
+
+        // the same value twice is only redundant
+        String repeated = "POST /u HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 3\r\n\r\nabc";
+        assertEquals("abc", new HttpParser().tryParse(ByteBuffer.wrap(repeated.getBytes())).getTextBody());
+    }
+
+    @Test
+    void testChunkedWithContentLengthRequiresClose() throws Exception {
+        HttpParser parser = new HttpParser();
+        InputStream in = new ByteArrayInputStream(("POST /u HTTP/1.1\r\nContent-Length: 5\r\n"
+                + "Transfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n"
+                + "GET /next HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        HttpRequest ambiguous = parser.parse(in);
+        assertEquals("abc", ambiguous.getTextBody()); // read as chunked
+        assertTrue(parser.isCloseRequired());
+
+        parser.parse(in);
+        assertFalse(parser.isCloseRequired());
+    }
+}
@@ -0,0 +1,347 @@
+package com.webserver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.webserver.model.HttpResponse;
+
+class ResponseWriterTest {
+
+    @Test
+    void testSmallResponseIsOneWrite() throws Exception {
+        HttpResponse response = new HttpResponse.Builder()
+                .setStatusCode(404)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("X-Note", "café")
+                .setBody("{\"error\":\"not found: café\"}")
+                .build();
+        RecordingStream out = new RecordingStream();
+
+        new ResponseWriter().write(out, response, true);
+
+        assertEquals(1, out.writes.size());
+        String body = "{\"error\":\"not found: café\"}";
+        String expected = "HTTP/1.1 404 Not Found\r\n" +
+                "Content-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n" +
+                "Connection: keep-alive\r\n" +
+                "Content-Type: application/json\r\n" +
+                "X-Note: café\r\n" +
+                "\r\n" + body;
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testHandlerHeadersAndUnknownStatus() throws Exception {
+        HttpResponse response = new HttpResponse.Builder()
+                .setStatusCode(599)
+                .setStatusMessage("Custom Failure")
+                .addHeader("content-length", "0")
+                .addHeader("Connection", "upgrade")
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new ResponseWriter().write(out, response, false);
+
+        assertEquals("HTTP/1.1 599 Custom Failure\r\ncontent-length: 0\r\nConnection: upgrade\r\n\r\n",
+                out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testLargeBodyFillsTheFirstWrite() throws Exception {
+        byte[] body = new byte[100_000];
+        Arrays.fill(body, (byte) 'x');
+        HttpResponse response = new HttpResponse.Builder().setRawBody(body).build();
+        RecordingStream out = new RecordingStream();
+        ResponseWriter writer = new ResponseWriter();
+
+        writer.write(out, response, true);
+        writer.write(out, response, false); // the buffer is reused
+
+        assertEquals(4, out.writes.size());
+        assertEquals(ResponseWriter.COALESCE_LIMIT, (int) out.writes.get(0));
+        byte[] bytes = out.toByteArray();
+        String head = "HTTP/1.1 200 OK\r\nContent-Length: 100000\r\nConnection: close\r\n\r\n";
+        int second = bytes.length - body.length - head.length();
+        assertEquals(head, new String(bytes, second, head.length(), StandardCharsets.US_ASCII));
+        assertArrayEquals(body, Arrays.copyOfRange(bytes, second + head.length(), bytes.length));
+    }
+
+    @Test
+    void testEncodeGivesHeadAndBodyForAGatheringWrite() throws Exception {
+        HttpResponse response = new HttpResponse.Builder()
+                .setStatusCode(201)
+                .setBody("created")
+                .build();
+
+        ByteBuffer[] buffers = new ResponseWriter().encode(response, true);
+
+        assertEquals(2, buffers.length);
+        assertEquals("HTTP/1.1 201 Created\r\nContent-Length: 7\r\nConnection: keep-alive\r\n\r\n",
+                StandardCharsets.US_ASCII.decode(buffers[0]).toString());
+        assertEquals("created", StandardCharsets.UTF_8.decode(buffers[1]).toString());
+    }
+
+    @Test
+    void testStreamedBodyWithLength() throws Exception {
+        byte[] body = new byte[40_000];
+        Arrays.fill(body, (byte) 'y');
+        TrackingStream source = new TrackingStream(body);
+        HttpResponse response = new HttpResponse.Builder()
+                .setBodySource(() -> source, body.length)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(body.length, new ResponseWriter().write(out, response, true));
+
+        byte[] bytes = out.toByteArray();
+        String head = "HTTP/1.1 200 OK\r\nContent-Length: 40000\r\nConnection: keep-alive\r\n\r\n";
+        assertEquals(head, new String(bytes, 0, head.length(), StandardCharsets.US_ASCII));
+        assertArrayEquals(body, Arrays.copyOfRange(bytes, head.length(), bytes.length));
+        assertTrue(source.closed);
+    }
+
+    @Test
+    void testStreamedBodyOfUnknownLengthIsChunked() throws Exception {
+        byte[] body = new byte[ResponseWriter.STREAM_CHUNK + 5];
+        Arrays.fill(body, (byte) 'z');
+        HttpResponse response = new HttpResponse.Builder()
+                .addHeader("Content-Type", "text/plain")
+                .setBodySource(() -> new ByteArrayInputStream(body), -1)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new ResponseWriter().write(out, response, false);
+
+        String z = "z";
+        String expected = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n" +
+                "Content-Type: text/plain\r\n\r\n" +
+                "4000\r\n" + z.repeat(ResponseWriter.STREAM_CHUNK) + "\r\n" +
+                "5\r\nzzzzz\r\n" +
+                "0\r\n\r\n";
+        assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testChunkedBodyNeverCarriesTheHandlersContentLength() throws Exception {
+        HttpResponse response = new HttpResponse.Builder()
+                .addHeader("Content-Type", "text/plain")
+                .addHeader("content-length", "5")
+                .setBodySource(() -> new ByteArrayInputStream("hello".getBytes(StandardCharsets.US_ASCII)), -1)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new ResponseWriter().write(out, response, false);
+
+        assertEquals("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n" +
+                "Content-Type: text/plain\r\n\r\n5\r\nhello\r\n0\r\n\r\n", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testStreamedBodyShorterThanItsLengthFails() {
+        TrackingStream source = new TrackingStream(new byte[10]);
+        HttpResponse response = new HttpResponse.Builder()
+                .setBodySource(() -> source, 20)
+                .build();
+
+        assertThrows(IOException.class, () -> new ResponseWriter().write(new ByteArrayOutputStream(), response, true));
+        assertTrue(source.closed);
+    }
+
+    @Test
+    void testStreamedBodyInChunksForAChannel() throws Exception {
+        byte[] body = new byte[3 * ResponseWriter.STREAM_CHUNK];
+        HttpResponse response = new HttpResponse.Builder()
+                .setBodySource(() -> new ByteArrayInputStream(body), body.length)
+                .build();
+        ResponseWriter writer = new ResponseWriter();
+
+        ByteBuffer[] first = writer.encode(response, true);
+        long sent = first[1].remaining();
+        int chunks = 1;
+        while (writer.hasMoreBody()) {
+            ByteBuffer[] next = writer.nextChunk();
+            sent += next[0].remaining();
+            chunks++;
+        }
+
+        assertEquals(body.length, sent);
+        assertEquals(3, chunks);
+        assertFalse(writer.hasMoreBody());
+    }
+
+    @Test
+    void testFileBodyIsTransferredAfterTheHead() throws Exception {
+        Path file = Files.createTempFile("body", ".txt");
+        try {
+            Files.writeString(file, "file contents\n".repeat(5000));
+            HttpResponse response = new HttpResponse.Builder()
+                    .addHeader("Content-Type", "text/plain")
+                    .setBodyFile(file, Files.size(file))
+                    .build();
+            String expected = "HTTP/1.1 200 OK\r\nContent-Length: " + Files.size(file) + "\r\n" +
+                    "Connection: keep-alive\r\nContent-Type: text/plain\r\n\r\n" + Files.readString(file);
+            ResponseWriter writer = new ResponseWriter();
+
+            // to the socket's channel, once the head is flushed
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(Files.size(file), writer.write(out, Channels.newChannel(out), response, true));
+            assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+            assertFalse(writer.hasFileBody());
+
+            // no channel: copied through the stream
+            out.reset();
+            writer.write(out, response, true);
+            assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testFileShorterThanItsLengthFails() throws Exception {
+        Path file = Files.createTempFile("body", ".txt");
+        try {
+            Files.writeString(file, "short");
+            HttpResponse response = new HttpResponse.Builder().setBodyFile(file, 100).build();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            assertThrows(IOException.class, () -> new ResponseWriter().write(out, Channels.newChannel(out), response, true));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testBufferBodyIsWrittenAndReleased() throws Exception {
+        byte[] body = "mapped contents\n".repeat(5000).getBytes(StandardCharsets.US_ASCII);
+        int[] released = new int[1];
+        HttpResponse response = new HttpResponse.Builder()
+                .addHeader("Content-Type", "text/plain")
+                .setBodyBuffer(ByteBuffer.wrap(body), () -> released[0]++)
+                .build();
+        String expected = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n" +
+                "Connection: keep-alive\r\nContent-Type: text/plain\r\n\r\n" +
+                new String(body, StandardCharsets.US_ASCII);
+        ResponseWriter writer = new ResponseWriter();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(body.length, writer.write(out, Channels.newChannel(out), response, true));
+        assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+        assertEquals(1, released[0]);
+
+        // no channel: copied through the writer's buffer
+        out.reset();
+        writer.write(out, response, true);
+        assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+        assertEquals(2, released[0]);
+
+        // encoded for a gathering write: released once, however often release() is called
+        ByteBuffer[] parts = writer.encode(response, true);
+        assertEquals(2, parts.length);
+        assertEquals(body.length, parts[1].remaining());
+        writer.release();
+        writer.release();
+        assertEquals(3, released[0]);
+    }
+
+    @Test
+    void testStreamedBodyMemoryDoesNotGrowWithSize() throws Exception {
+        long size = 64L * 1024 * 1024;
+        HttpResponse response = new HttpResponse.Builder()
+                .setBodySource(() -> new ZeroStream(size), size)
+                .build();
+        ResponseWriter writer = new ResponseWriter();
+        OutputStream sink = OutputStream.nullOutputStream();
+        writer.write(sink, response, true); // warm up
+
+        long start = allocatedBytes();
+        long sent = writer.write(sink, response, true);
+        long allocated = allocatedBytes() - start;
+
+        assertEquals(size, sent);
+        assertTrue(allocated < 1024 * 1024, allocated / 1024 + " KB allocated streaming a " + size / (1024 * 1024) + " MB body");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    // an InputStream that notes whether it was closed
+    private static final class TrackingStream extends ByteArrayInputStream {
+        boolean closed;
+
+        TrackingStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // 'size' zero bytes, generated as they are read
+    private static final class ZeroStream extends InputStream {
+        private long left;
+
+        ZeroStream(long size) {
+            this.left = size;
+        }
+
+        @Override
+        public int read() {
+            if (left == 0) {
+                return -1;
+            }
+            left--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (left == 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, left);
+            Arrays.fill(b, off, off + n, (byte) 0);
+            left -= n;
+            return n;
+        }
+    }
+
+    // a ByteArrayOutputStream that remembers the size of each write
+    private static final class RecordingStream extends ByteArrayOutputStream {
+        final List<Integer> writes = new ArrayList<>();
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.add(len);
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void write(int b) {
+            writes.add(1);
+            super.write(b);
+        }
+    }
+}
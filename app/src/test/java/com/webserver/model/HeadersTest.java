@@ -0,0 +1,102 @@
+package com.webserver.model;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class HeadersTest {
+
+    @Test
+    void testLookupsIgnoreCase() {
+        Headers headers = new Headers()
+                .add("content-type", "text/plain")
+                .add("X-Request-Id", "abc")
+                .add("Set-Cookie", "a=1")
+                .add("SET-COOKIE", "b=2");
+
+        assertEquals("text/plain", headers.first("Content-Type"));
+        assertEquals("abc", headers.first("x-request-id"));
+        assertEquals(List.of("a=1", "b=2"), headers.all("set-cookie"));
+        assertTrue(headers.containsKey("CONTENT-TYPE"));
+        assertNull(headers.first("Host"));
+        assertEquals(4, headers.count());
+        assertEquals(3, headers.size());
+        // entries keep the spelling they were added with
+        assertEquals("content-type", headers.name(0));
+    }
+
+    @Test
+    void testSetReplacesEveryValue() {
+        Headers headers = new Headers()
+                .add("Vary", "Origin")
+                .add("X-One", "1")
+                .add("vary", "Accept")
+                .add("Cache-Control", "no-cache");
+
+        headers.set("VARY", "Accept-Encoding");
+        assertEquals(List.of("Accept-Encoding"), headers.all("Vary"));
+        assertEquals("1", headers.first("X-One"));
+        assertEquals("no-cache", headers.first("cache-control"));
+        assertFalse(headers.removeAll("X-Two"));
+        assertTrue(headers.removeAll("x-one"));
+        assertEquals(2, headers.count());
+    }
+
+    @Test
+    void testParsedHeadersDecodeOnDemand() {
+        byte[] block = "Host: example.com\r\nX-Trace: t1\r\nhost: other\r\n".getBytes(StandardCharsets.US_ASCII);
+        int[] ranges = {0, 4, 6, 17, 19, 26, 28, 30, 32, 36, 38, 43};
+        Headers headers = new Headers(block, ranges, 3);
+
+        assertEquals("example.com", headers.first("HOST"));
+        assertEquals(List.of("example.com", "other"), headers.all("Host"));
+        assertEquals("t1", headers.first("x-trace"));
+        assertEquals("Host", headers.name(2)); // well-known names come back in their usual spelling
+
+        // a parsed request can still be added to, and removed from
+        headers.add("X-Added", "yes");
+        assertTrue(headers.removeAll("host"));
+        assertEquals("t1", headers.value(0));
+        assertEquals("yes", headers.first("X-ADDED"));
+    }
+
+    @Test
+    void testLookupDoesNotAllocate() {
+        Headers headers = new Headers();
+        for (String name : new String[] {"Host", "Connection", "Accept", "User-Agent", "Accept-Encoding",
+                "Accept-Language", "Cookie", "Referer", "Sec-Fetch-Mode", "Sec-Fetch-Site"}) {
+            headers.add(name, "value");
+        }
+        // warm up, then count
+        long found = 0;
+        for (int i = 0; i < 20_000; i++) {
+            found += lookups(headers);
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            found += lookups(headers);
+        }
+        long allocated = allocatedBytes() - start;
+        assertTrue(found > 0);
+        assertTrue(allocated < 10_000, allocated + " bytes allocated by 400,000 lookups");
+    }
+
+    private static int lookups(Headers headers) {
+        int found = 0;
+        found += headers.first("connection") != null ? 1 : 0;
+        found += headers.contains("Content-Length") ? 1 : 0;
+        found += headers.first("sec-fetch-site") != null ? 1 : 0;
+        found += headers.contains("X-Missing") ? 1 : 0;
+        return found;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,77 @@
+package com.webserver.model;
+
+import com.webserver.http.HttpParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class HttpRequestTest {
+
+    @Test
+    void testTextBodyUsesContentTypeCharset() {
+        byte[] latin1 = {'c', 'a', 'f', (byte) 0xE9};
+        assertEquals("café", request("text/plain; charset=ISO-8859-1", latin1).getTextBody());
+        assertEquals("café", request("text/plain; Charset=\"iso-8859-1\"; format=flowed", latin1).getTextBody());
+
+        byte[] utf8 = "café".getBytes(StandardCharsets.UTF_8);
+        assertEquals("café", request("application/json", utf8).getTextBody());
+        assertEquals("café", request("text/plain; charset=no-such-charset", utf8).getTextBody());
+        assertEquals("café", request(null, utf8).getTextBody());
+    }
+
+    @Test
+    void testUploadBodyIsHeldOnceUntilTextIsAsked() throws Exception {
+        int size = 8 * 1024 * 1024;
+        byte[] zip = new byte[size];
+        new Random(42).nextBytes(zip); // binary: not valid UTF-8
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.write(("POST /api/apps/1/upload HTTP/1.1\r\nContent-Type: application/zip\r\n" +
+                "Content-Length: " + size + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        wire.write(zip);
+        ByteArrayInputStream input = new ByteArrayInputStream(wire.toByteArray());
+
+        // now: parsing and taking the bytes, as a byte[] handler does
+        long start = allocatedBytes();
+        HttpRequest request = new HttpParser().parse(input);
+        byte[] raw = request.getRawBody();
+        long bytesOnly = allocatedBytes() - start;
+
+        // before: the parser also decoded every body to a String up front
+        start = allocatedBytes();
+        String text = request.getTextBody();
+        long withText = bytesOnly + allocatedBytes() - start;
+
+        assertEquals(size, raw.length);
+        assertTrue(text.length() > 0);
+        assertTrue(bytesOnly < size * 1.25, "bytes only: " + bytesOnly / 1024 + " KB for a " + size / 1024 + " KB body");
+        assertTrue(withText > size * 2.5, "bytes and text: " + withText / 1024 + " KB for a " + size / 1024 + " KB body");
+    }
+
+    private static HttpRequest request(String contentType, byte[] body) {
+        Map<String, List<String>> headers = new HashMap<>();
+        if (contentType != null) {
+            headers.put("Content-Type", List.of(contentType));
+        }
+        return new HttpRequest.Builder()
+                .setMethod("POST")
+                .setPath("/submit")
+                .setHeaders(headers)
+                .setTextBody(null)
+                .setRawBody(body)
+                .build();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
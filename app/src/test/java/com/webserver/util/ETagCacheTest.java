@@ -0,0 +1,59 @@
+package com.webserver.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+
+public class ETagCacheTest {
+
+    @Test
+    void testETagIsHashedOncePerFileVersion() throws Exception {
+        Path file = Files.createTempFile("etag", ".css");
+        try {
+            ETagCache cache = new ETagCache();
+            FileTime modified = FileTime.fromMillis(1_700_000_000_000L);
+            Files.writeString(file, "body { color: red; }");
+            Files.setLastModifiedTime(file, modified);
+            String first = cache.etag(file, attributes(file));
+            assertTrue(first.matches("\"[0-9a-f]{32}\""), first);
+
+            // same size and time: the cached tag, the file is not read again
+            Files.writeString(file, "body { color: rgb; }");
+            Files.setLastModifiedTime(file, modified);
+            assertEquals(first, cache.etag(file, attributes(file)));
+
+            // a new version is hashed again
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_700_000_001_000L));
+            String second = cache.etag(file, attributes(file));
+            assertFalse(first.equals(second));
+            assertEquals(1, cache.size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSameContentHasTheSameETag() throws Exception {
+        Path a = Files.createTempFile("a", ".js");
+        Path b = Files.createTempFile("b", ".js");
+        try {
+            Files.writeString(a, "console.log(1);");
+            Files.writeString(b, "console.log(1);");
+            ETagCache cache = new ETagCache();
+            assertEquals(cache.etag(a, attributes(a)), cache.etag(b, attributes(b)));
+        } finally {
+            Files.delete(a);
+            Files.delete(b);
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws Exception {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
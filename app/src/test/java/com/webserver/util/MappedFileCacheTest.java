@@ -0,0 +1,103 @@
+package com.webserver.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+public class MappedFileCacheTest {
+
+    @Test
+    void testLargeFileIsMappedOnceAndShared() throws Exception {
+        Path file = Files.createTempFile("mapped", ".bin");
+        try {
+            Files.writeString(file, "x".repeat(4096));
+            MappedFileCache cache = new MappedFileCache(1024, 1 << 20);
+
+            MappedFileCache.Mapping first = cache.acquire(file);
+            MappedFileCache.Mapping second = cache.acquire(file);
+            assertNotNull(first);
+            assertSame(first, second);
+            assertEquals(1, cache.getMappedFiles());
+            assertEquals(4096, cache.getMappedBytes());
+            assertEquals("x".repeat(4096), text(first.body()));
+
+            // released by both responses, still cached for the next one
+            first.release();
+            second.release();
+            assertEquals(4096, cache.getMappedBytes());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testSmallFilesAndMappingOffAreNotMapped() throws Exception {
+        Path file = Files.createTempFile("small", ".bin");
+        try {
+            Files.writeString(file, "small");
+            assertNull(new MappedFileCache(1024, 1 << 20).acquire(file));
+            assertNull(new MappedFileCache(0, 1 << 20).acquire(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testChangedFileIsMappedAgain() throws Exception {
+        Path file = Files.createTempFile("changed", ".bin");
+        try {
+            Files.writeString(file, "a".repeat(2048));
+            MappedFileCache cache = new MappedFileCache(1024, 1 << 20);
+            MappedFileCache.Mapping old = cache.acquire(file);
+
+            Files.writeString(file, "b".repeat(3072));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            MappedFileCache.Mapping fresh = cache.acquire(file);
+
+            assertNotSame(old, fresh);
+            assertEquals("b".repeat(3072), text(fresh.body()));
+            // the old mapping stays until the response sending it lets go
+            assertEquals(2048 + 3072, cache.getMappedBytes());
+            old.release();
+            assertEquals(3072, cache.getMappedBytes());
+            fresh.release();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvictedOverBudget() throws Exception {
+        Path a = Files.createTempFile("a", ".bin");
+        Path b = Files.createTempFile("b", ".bin");
+        try {
+            Files.writeString(a, "a".repeat(3000));
+            Files.writeString(b, "b".repeat(3000));
+            MappedFileCache cache = new MappedFileCache(1024, 4096);
+
+            cache.acquire(a).release();
+            cache.acquire(b).release();
+
+            assertEquals(1, cache.getMappedFiles());
+            assertEquals(3000, cache.getMappedBytes());
+        } finally {
+            Files.delete(a);
+            Files.delete(b);
+        }
+    }
+
+    private static String text(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
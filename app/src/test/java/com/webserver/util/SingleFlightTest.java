@@ -0,0 +1,124 @@
+package com.webserver.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(5_000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = pool.submit(() -> flight.run("2002/index.html", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "<h1>hello</h1>";
+            }));
+            loading.await();
+            assertEquals(List.of("2002/index.html"), flight.getInFlightKeys());
+
+            List<Future<String>> waiters = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                waiters.add(pool.submit(() -> flight.run("2002/index.html", () -> {
+                    loads.incrementAndGet();
+                    return "loaded again";
+                })));
+            }
+            while (flight.getCoalesced() < 20) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals("<h1>hello</h1>", leader.get());
+            for (Future<String> waiter : waiters) {
+                assertEquals("<h1>hello</h1>", waiter.get());
+            }
+        }
+        assertEquals(1, loads.get());
+        assertTrue(flight.getInFlightKeys().isEmpty());
+
+        // done: the next caller loads afresh
+        assertEquals("again", flight.run("2002/index.html", () -> "again"));
+    }
+
+    @Test
+    void testWaitersShareTheLeadersFailure() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(5_000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = pool.submit(() -> flight.run("key", () -> {
+                loading.countDown();
+                await(release);
+                throw new IOException("storage unavailable");
+            }));
+            loading.await();
+            Future<String> waiter = pool.submit(() -> flight.run("key", () -> "never run"));
+            while (flight.getCoalesced() < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals("storage unavailable", unwrap(waiter).getMessage());
+            assertEquals("storage unavailable", unwrap(leader).getMessage());
+        }
+    }
+
+    @Test
+    void testWaiterGivesUpAfterTimeout() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(50);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = pool.submit(() -> flight.run("key", () -> {
+                loading.countDown();
+                await(release);
+                return "slow";
+            }));
+            loading.await();
+
+            assertThrows(IOException.class, () -> flight.run("key", () -> "never run"));
+            assertEquals(1, flight.getTimedOut());
+            release.countDown();
+            assertEquals("slow", leader.get());
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static IOException unwrap(Future<?> future) {
+        try {
+            future.get();
+        } catch (Exception e) {
+            if (e.getCause() instanceof IOException io) {
+                return io;
+            }
+        }
+        throw new AssertionError("expected an IOException");
+    }
+}
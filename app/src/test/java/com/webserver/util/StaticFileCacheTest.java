@@ -0,0 +1,165 @@
+package com.webserver.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class StaticFileCacheTest {
+
+    @Test
+    void testSmallFileIsReadOnceAndServedFromMemory() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot");
+        try {
+            Files.writeString(webRoot.resolve("index.html"), "<h1>hello</h1>");
+            StaticFileCache cache = new StaticFileCache(new FileService(webRoot.toString()), 1 << 20, 1024);
+
+            StaticFileCache.Entry first = cache.lookup("/index.html");
+            assertEquals("<h1>hello</h1>", new String(first.content(), StandardCharsets.UTF_8));
+            assertEquals(14, first.size());
+            assertEquals("text/html", first.mimeType());
+            assertEquals(ETagCache.etagOf(first.content()), first.etag());
+            assertSame(first, cache.lookup("/index.html"));
+            assertSame(first, cache.lookup("/"));
+            assertEquals(14, cache.getResidentBytes());
+
+            assertThrows(IOException.class, () -> cache.lookup("/missing.html"));
+        } finally {
+            delete(webRoot);
+        }
+    }
+
+    @Test
+    void testChangedFileIsReloadedWithoutWatcher() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot");
+        try {
+            Path page = webRoot.resolve("page.txt");
+            Files.writeString(page, "old");
+            StaticFileCache cache = new StaticFileCache(new FileService(webRoot.toString()), 1 << 20, 1024);
+            StaticFileCache.Entry old = cache.lookup("/page.txt");
+
+            Files.writeString(page, "newer");
+            Files.setLastModifiedTime(page, FileTime.fromMillis(old.lastModified() + 5000));
+            StaticFileCache.Entry current = cache.lookup("/page.txt");
+            assertNotSame(old, current);
+            assertEquals("newer", new String(current.content(), StandardCharsets.UTF_8));
+            assertNotEquals(old.etag(), current.etag());
+            assertEquals(5, cache.getResidentBytes());
+        } finally {
+            delete(webRoot);
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedContentsAreEvictedAndLargeFilesKeepMetadataOnly() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot");
+        try {
+            Files.writeString(webRoot.resolve("a.txt"), "aaaa");
+            Files.writeString(webRoot.resolve("b.txt"), "bbbb");
+            Files.writeString(webRoot.resolve("c.txt"), "cccc");
+            Files.writeString(webRoot.resolve("large.txt"), "x".repeat(100));
+            StaticFileCache cache = new StaticFileCache(new FileService(webRoot.toString()), 10, 8);
+
+            StaticFileCache.Entry a = cache.lookup("/a.txt");
+            cache.lookup("/b.txt");
+            Thread.sleep(1);
+            assertSame(a, cache.lookup("/a.txt"));
+            cache.lookup("/c.txt");
+            assertEquals(8, cache.getResidentBytes());
+            assertSame(a, cache.lookup("/a.txt"));
+            assertEquals(2, cache.size());
+
+            StaticFileCache.Entry large = cache.lookup("/large.txt");
+            assertNull(large.content());
+            assertEquals(100, large.size());
+            assertNotNull(large.etag());
+            assertSame(large, cache.lookup("/large.txt"));
+            assertEquals(8, cache.getResidentBytes());
+        } finally {
+            delete(webRoot);
+        }
+    }
+
+    @Test
+    void testWatcherInvalidatesModifiedFiles() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot").toAbsolutePath().normalize();
+        StaticFileCache cache = new StaticFileCache(new FileService(webRoot.toString()), 1 << 20, 1024);
+        try {
+            Path nested = Files.createDirectories(webRoot.resolve("css"));
+            Files.writeString(nested.resolve("site.css"), "a{}");
+            cache.watch(webRoot);
+            assertEquals("a{}", text(cache.lookup("/css/site.css")));
+
+            Files.writeString(nested.resolve("site.css"), "b{}");
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (!"b{}".equals(text(cache.lookup("/css/site.css"))) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals("b{}", text(cache.lookup("/css/site.css")));
+
+            Files.delete(nested.resolve("site.css"));
+            deadline = System.currentTimeMillis() + 15_000;
+            while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(cache.size() == 0);
+            assertThrows(IOException.class, () -> cache.lookup("/css/site.css"));
+        } finally {
+            cache.close();
+            delete(webRoot);
+        }
+    }
+
+    @Test
+    void testMissingPathsAreRememberedWhileWatchedUntilTheWebrootChanges() throws Exception {
+        Path webRoot = Files.createTempDirectory("webroot").toAbsolutePath().normalize();
+        StaticFileCache cache = new StaticFileCache(new FileService(webRoot.toString()), 1 << 20, 1024, 100);
+        try {
+            // not watched: a miss is looked up every time
+            assertThrows(IOException.class, () -> cache.lookup("/.env"));
+            assertFalse(cache.isMissing("/.env"));
+
+            cache.watch(webRoot);
+            assertThrows(IOException.class, () -> cache.lookup("/.env"));
+            assertTrue(cache.isMissing("/.env"));
+            assertTrue(cache.isMissing(".env"));
+            assertEquals(1, cache.getMissingPaths());
+
+            Files.writeString(webRoot.resolve(".env.example"), "KEY=");
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (cache.isMissing("/.env") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertFalse(cache.isMissing("/.env"));
+        } finally {
+            cache.close();
+            delete(webRoot);
+        }
+    }
+
+    private static String text(StaticFileCache.Entry entry) {
+        return new String(entry.content(), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}